@@ -0,0 +1,407 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Baum Welch
+ * Re-estimates a supervised model from untagged text, by expectation maximization. Each iteration streams the text from
+ * disk and, for each sentence, finds the expected number of times each tag starts the sentence, follows each other tag,
+ * and is seen with each word (from the forward and backward scores, as in ForwardBackward). The new model gives each
+ * transition and observation the log of its expected count over the total for its tag.
+ * <p>
+ * The expectation step runs in parallel: the text is read in shards of sentences, and each shard is scored on the
+ * fork-join pool into an accumulator of its own while it runs, so nothing is shared while scoring. There is one
+ * accumulator for each worker of the pool, lent to one shard at a time, and only as many shards are scored (or read
+ * ahead) at once, so neither the text nor the counts grow with the length of the text. The maximization step merges the
+ * accumulators and normalizes.
+ * <p>
+ * The vocabulary and tag dictionary of the supervised model are kept: the expected counts of a known word only go to the
+ * tags it was seen with, and the words never seen in training share the observation column for unknown words (which is
+ * learned too, once any unknown words have been seen). The supervised counts (if the model retained them) are added to
+ * the expected counts with a weight, which keeps the re-estimated model from drifting too far from the tagged data.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class BaumWelch
+{
+    // The number of sentences in each shard scored on its own task.
+    static final int SHARD_SIZE = 512;
+
+    private final int tagCount;
+    private final String[] tags;
+    private final String[] words;
+    private final double unseenPenalty;
+
+    // The candidate tags of each word (by the word IDs of the models), and where each word's counts are kept.
+    private final int[][] candidates;
+    private final int[] rowStarts;
+
+    // The supervised counts, times the weight, in the layout of an accumulator (all zero if there were no counts).
+    private final Accumulator prior;
+
+    private CompiledModel model;
+    private double logLikelihood;
+    private long sentences;
+
+    // The number of accumulators the latest iteration used (at most the parallelism of the pool, however long the text).
+    private int accumulatorCount;
+
+    /**
+     * Accumulator - The expected counts (and the log likelihood) added up by one thread.
+     */
+    private final class Accumulator
+    {
+        private final double[] start = new double[tagCount];
+        private final double[] transitions = new double[tagCount * tagCount];
+        private final double[] observations = new double[rowStarts[words.length]];
+        private final double[] unknown = new double[tagCount];
+        private double logLikelihood;
+        private long sentences;
+
+        /**
+         * Merge - Adds the counts of another accumulator to this one.
+         */
+        void merge(Accumulator other)
+        {
+            add(start, other.start);
+            add(transitions, other.transitions);
+            add(observations, other.observations);
+            add(unknown, other.unknown);
+            logLikelihood += other.logLikelihood;
+            sentences += other.sentences;
+        }
+
+        private void add(double[] into, double[] from)
+        {
+            for (int i = 0; i < into.length; i += 1)
+                into[i] += from[i];
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param supervised       The model trained on tagged text (if it retained its counts, they are used as a prior).
+     * @param unseenPenalty    The log probability given to an observation never seen in training.
+     * @param supervisedWeight How many times to count each supervised count, against the expected counts.
+     */
+    public BaumWelch(HiddenMarkovModel supervised, double unseenPenalty, double supervisedWeight)
+    {
+        model = new CompiledModel(supervised, unseenPenalty);
+        this.unseenPenalty = unseenPenalty;
+
+        tagCount = model.getTagCount();
+        tags = new String[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            tags[t] = model.getTag(t);
+
+        words = model.words();
+        candidates = new int[words.length][];
+        rowStarts = new int[words.length + 1];
+        for (int w = 0; w < words.length; w += 1)
+        {
+            candidates[w] = model.candidateTags(w);
+            rowStarts[w + 1] = rowStarts[w] + candidates[w].length;
+        }
+
+        // Laying the supervised counts out as an accumulator.
+        prior = new Accumulator();
+        CountTable counts = supervised.getCounts();
+
+        if (counts != null && supervisedWeight > 0)
+        {
+            for (int to = 0; to < tagCount; to += 1)
+            {
+                prior.start[to] = supervisedWeight * counts.getTransitionCount(CompiledModel.START, tags[to]);
+                for (int from = 0; from < tagCount; from += 1)
+                    prior.transitions[from * tagCount + to] = supervisedWeight
+                            * counts.getTransitionCount(tags[from], tags[to]);
+            }
+
+            for (int w = 0; w < words.length; w += 1)
+            {
+                for (int c = 0; c < candidates[w].length; c += 1)
+                    prior.observations[rowStarts[w] + c] = supervisedWeight
+                            * counts.getObservationCount(tags[candidates[w][c]], words[w]);
+            }
+        }
+    }
+
+    /**
+     * Getter - Model (the model after the latest iteration, or the supervised model before any)
+     */
+    public CompiledModel getModel()
+    {
+        return model;
+    }
+
+    /**
+     * Getter - Log Likelihood of the text under the model before the latest iteration.
+     */
+    public double getLogLikelihood()
+    {
+        return logLikelihood;
+    }
+
+    /**
+     * Getter - Sentences scored in the latest iteration (those that no path could reach the end of are skipped).
+     */
+    public long getSentences()
+    {
+        return sentences;
+    }
+
+    /**
+     * Getter - Accumulator Count (the number of accumulators of expected counts used by the latest iteration)
+     */
+    int getAccumulatorCount()
+    {
+        return accumulatorCount;
+    }
+
+    /**
+     * Train - Runs a number of iterations over an untagged file.
+     *
+     * @param untaggedFile The file of sentences (one per line, with the words separated by spaces).
+     * @param iterations   The number of iterations.
+     * @return The re-estimated model.
+     */
+    public CompiledModel train(String untaggedFile, int iterations) throws IOException
+    {
+        for (int i = 0; i < iterations; i += 1)
+            iterate(untaggedFile);
+
+        return model;
+    }
+
+    /**
+     * Iterate - Runs one expectation step (in parallel, streaming the file) and one maximization step.
+     *
+     * @param untaggedFile The file of sentences (one per line, with the words separated by spaces).
+     * @return The re-estimated model.
+     */
+    public CompiledModel iterate(String untaggedFile) throws IOException
+    {
+        CompiledModel current = model;
+
+        /* Making one accumulator for each worker of the pool. Each shard borrows one while it is scored, and no more shards
+        are in flight than there are accumulators, so there is always one free. The shards are run on the pool itself
+        (rather than the default executor of runAsync, which starts a thread for every task when the parallelism is 1).
+         */
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int workers = Math.max(1, pool.getParallelism());
+
+        List<Accumulator> accumulators = new ArrayList<>(workers);
+        Queue<Accumulator> free = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < workers; i += 1)
+        {
+            Accumulator accumulator = new Accumulator();
+            accumulators.add(accumulator);
+            free.add(accumulator);
+        }
+
+        Deque<CompletableFuture<Void>> inFlight = new ArrayDeque<>();
+
+        try (TokenReader reader = new TokenReader(untaggedFile))
+        {
+            Iterator<List<String>> lines = reader.iterator();
+
+            while (lines.hasNext())
+            {
+                List<List<String>> shard = new ArrayList<>(SHARD_SIZE);
+                while (shard.size() < SHARD_SIZE && lines.hasNext())
+                    shard.add(lines.next());
+
+                inFlight.add(CompletableFuture.runAsync(() ->
+                {
+                    Accumulator accumulator = free.poll();
+                    try
+                    {
+                        for (List<String> sentence : shard)
+                            expect(current, sentence, accumulator);
+                    }
+
+                    finally
+                    {
+                        free.add(accumulator);
+                    }
+                }, pool));
+
+                // Waiting for the oldest shard once every accumulator may be in use.
+                if (inFlight.size() >= workers)
+                    inFlight.removeFirst().join();
+            }
+        }
+
+        while (!inFlight.isEmpty())
+            inFlight.removeFirst().join();
+
+        // The maximization step: merging the accumulators into the prior, and normalizing.
+        Accumulator total = new Accumulator();
+        total.merge(prior);
+        for (Accumulator accumulator : accumulators)
+            total.merge(accumulator);
+
+        logLikelihood = total.logLikelihood;
+        sentences = total.sentences;
+        accumulatorCount = accumulators.size();
+        model = maximize(total);
+        return model;
+    }
+
+    /**
+     * Expect - Helper function that adds the expected counts of one sentence to an accumulator.
+     */
+    private void expect(CompiledModel current, List<String> sentence, Accumulator accumulator)
+    {
+        int n = sentence.size();
+        double[] startScores = current.startScores();
+        double[][] transitions = current.transitions();
+
+        int[] ids = new int[n];
+        int[][] states = new int[n][];
+        double[][] columns = new double[n][];
+        for (int i = 0; i < n; i += 1)
+        {
+            ids[i] = current.getWordId(sentence.get(i));
+            states[i] = ids[i] < 0 ? current.candidateTags(-1) : candidates[ids[i]];
+            columns[i] = ids[i] < 0 ? current.unknownEmissions() : current.emissionColumn(ids[i]);
+        }
+
+        double[][] forward = new double[n][tagCount];
+        double[][] backward = new double[n][tagCount];
+        double[] terms = new double[tagCount];
+
+        for (int t : states[0])
+            forward[0][t] = startScores[t] + columns[0][t];
+
+        for (int i = 1; i < n; i += 1)
+        {
+            for (int next : states[i])
+            {
+                int count = 0;
+                for (int previous : states[i - 1])
+                    terms[count++] = forward[i - 1][previous] + transitions[previous][next];
+
+                forward[i][next] = ForwardBackward.logSumExp(terms, count) + columns[i][next];
+            }
+        }
+
+        for (int i = n - 2; i >= 0; i -= 1)
+        {
+            for (int previous : states[i])
+            {
+                int count = 0;
+                for (int next : states[i + 1])
+                    terms[count++] = transitions[previous][next] + columns[i + 1][next] + backward[i + 1][next];
+
+                backward[i][previous] = ForwardBackward.logSumExp(terms, count);
+            }
+        }
+
+        int count = 0;
+        for (int t : states[n - 1])
+            terms[count++] = forward[n - 1][t];
+
+        double logZ = ForwardBackward.logSumExp(terms, count);
+        if (logZ == Double.NEGATIVE_INFINITY)
+            return;
+
+        accumulator.logLikelihood += logZ;
+        accumulator.sentences += 1;
+
+        // The expected counts of each tag at each word (and of starting the sentence).
+        for (int i = 0; i < n; i += 1)
+        {
+            int[] wordStates = states[i];
+            for (int c = 0; c < wordStates.length; c += 1)
+            {
+                int t = wordStates[c];
+                double posterior = Math.exp(forward[i][t] + backward[i][t] - logZ);
+
+                if (ids[i] < 0)
+                    accumulator.unknown[t] += posterior;
+                else
+                    accumulator.observations[rowStarts[ids[i]] + c] += posterior;
+
+                if (i == 0)
+                    accumulator.start[t] += posterior;
+            }
+        }
+
+        // The expected counts of each transition between neighbouring words.
+        for (int i = 0; i < n - 1; i += 1)
+        {
+            for (int previous : states[i])
+            {
+                double left = forward[i][previous] - logZ;
+                if (left == Double.NEGATIVE_INFINITY)
+                    continue;
+
+                for (int next : states[i + 1])
+                {
+                    double right = transitions[previous][next] + columns[i + 1][next] + backward[i + 1][next];
+                    accumulator.transitions[previous * tagCount + next] += Math.exp(left + right);
+                }
+            }
+        }
+    }
+
+    /**
+     * Maximize - Helper function that builds the model whose log probabilities are the normalized expected counts.
+     */
+    private CompiledModel maximize(Accumulator total)
+    {
+        double[] startScores = normalize(total.start, 0);
+
+        double[][] transitions = new double[tagCount][];
+        for (int from = 0; from < tagCount; from += 1)
+            transitions[from] = normalize(total.transitions, from * tagCount);
+
+        // The total expected count of each tag, over the known words and the unknown ones.
+        double[] tagTotals = total.unknown.clone();
+        for (int w = 0; w < words.length; w += 1)
+        {
+            for (int c = 0; c < candidates[w].length; c += 1)
+                tagTotals[candidates[w][c]] += total.observations[rowStarts[w] + c];
+        }
+
+        double[][] emissions = new double[words.length][tagCount];
+        for (int w = 0; w < words.length; w += 1)
+        {
+            Arrays.fill(emissions[w], unseenPenalty);
+            for (int c = 0; c < candidates[w].length; c += 1)
+            {
+                int t = candidates[w][c];
+                double count = total.observations[rowStarts[w] + c];
+                emissions[w][t] = count > 0 ? Math.log(count / tagTotals[t]) : Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        // Unknown words keep the unseen penalty for any tag they were never expected to have.
+        double[] unknownEmissions = new double[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            unknownEmissions[t] = total.unknown[t] > 0 ? Math.log(total.unknown[t] / tagTotals[t]) : unseenPenalty;
+
+        return new CompiledModel(tags, words, startScores, transitions, emissions, unknownEmissions, unseenPenalty);
+    }
+
+    /**
+     * Normalize - Helper function that turns T counts (from an offset) into log probabilities, with negative infinity
+     * for a count of zero (and for every entry, if all are zero).
+     */
+    private double[] normalize(double[] counts, int offset)
+    {
+        double sum = 0.0;
+        for (int t = 0; t < tagCount; t += 1)
+            sum += counts[offset + t];
+
+        double[] scores = new double[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            scores[t] = counts[offset + t] > 0 ? Math.log(counts[offset + t] / sum) : Double.NEGATIVE_INFINITY;
+
+        return scores;
+    }
+}
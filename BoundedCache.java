@@ -0,0 +1,513 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded Cache
+ * A concurrent cache that holds at most a fixed number of entries, evicting by one of two policies:
+ * <ul>
+ *     <li>LRU evicts the entry that was used least recently.</li>
+ *     <li>TINY_LFU (W-TinyLFU) keeps a small LRU window for new entries in front of a segmented LRU main area, and only
+ *     lets an entry leave the window for the main area if it has been used more often (according to a small frequency
+ *     sketch) than the entry the main area would evict. This keeps frequent entries from being flushed out by a burst
+ *     of entries that are only seen once.</li>
+ * </ul>
+ * The cache is split into segments by the hash of the key, each with its own lock, so that threads using different
+ * keys rarely wait for each other. The hits, misses and evictions are counted for the statistics.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class BoundedCache<K, V>
+{
+    /**
+     * Policy - How entries are chosen for eviction.
+     */
+    public enum Policy
+    {
+        LRU, TINY_LFU
+    }
+
+    // The number of segments for a large cache (small caches have one, so that the bound is exact).
+    private static final int SEGMENTS = 16;
+
+    private final int capacity;
+    private final Policy policy;
+    private final Segment<K, V>[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param capacity The largest number of entries (at least 1).
+     * @param policy   The eviction policy.
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(int capacity, Policy policy)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid Capacity: " + capacity);
+
+        this.capacity = capacity;
+        this.policy = policy;
+
+        int count = capacity >= 16 * SEGMENTS ? SEGMENTS : 1;
+        int segmentCapacity = (capacity + count - 1) / count;
+
+        segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i += 1)
+            segments[i] = policy == Policy.LRU ? new LruSegment<>(segmentCapacity) : new TinyLfuSegment<>(segmentCapacity);
+    }
+
+    /**
+     * Getter - Capacity
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Getter - Policy
+     */
+    public Policy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * Get - The value for a key, or null if it is not in the cache.
+     */
+    public V get(K key)
+    {
+        return get(key, value -> true);
+    }
+
+    /**
+     * Get - The value for a key, if it is in the cache and still valid. An invalid value is removed, and counted as a
+     * miss.
+     *
+     * @param key   The key.
+     * @param valid Whether a cached value may still be used.
+     */
+    public V get(K key, Predicate<V> valid)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+
+        synchronized (segment)
+        {
+            value = segment.get(key);
+            if (value != null && !valid.test(value))
+            {
+                segment.remove(key);
+                value = null;
+            }
+        }
+
+        if (value == null)
+            misses.increment();
+        else
+            hits.increment();
+
+        return value;
+    }
+
+    /**
+     * Put - Adds (or replaces) the value for a key, evicting an entry if the cache is full.
+     */
+    public void put(K key, V value)
+    {
+        Segment<K, V> segment = segmentFor(key);
+
+        int evicted;
+        synchronized (segment)
+        {
+            evicted = segment.put(key, value);
+        }
+
+        evictions.add(evicted);
+    }
+
+    /**
+     * Clear - Removes every entry (the statistics are kept).
+     */
+    public void clear()
+    {
+        for (Segment<K, V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Getter - Size (the number of entries in the cache)
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Segment<K, V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Getter - Hits
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Getter - Misses
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Getter - Evictions
+     */
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * Getter - Hit Rate (the fraction of lookups that were hits)
+     */
+    public double getHitRate()
+    {
+        long lookups = hits.sum() + misses.sum();
+        return lookups == 0 ? 0.0 : (double) hits.sum() / lookups;
+    }
+
+    /**
+     * Reset Statistics - Sets the hits, misses and evictions back to zero.
+     */
+    public void resetStatistics()
+    {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * To String - A one-line summary of the statistics.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%s cache: %d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions", policy,
+                size(), capacity, getHits(), getMisses(), 100 * getHitRate(), getEvictions());
+    }
+
+    /**
+     * Segment For - Helper function that gives the segment of a key, spreading the bits of its hash.
+     */
+    private Segment<K, V> segmentFor(K key)
+    {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash * 0x9E3779B9 >>> 16) & (segments.length - 1)];
+    }
+
+    /**
+     * Segment - One part of the cache, always used while holding its lock.
+     */
+    private abstract static class Segment<K, V>
+    {
+        abstract V get(K key);
+
+        /**
+         * Put - Adds the value for a key, returning the number of entries evicted.
+         */
+        abstract int put(K key, V value);
+
+        abstract void remove(K key);
+
+        abstract void clear();
+
+        abstract int size();
+    }
+
+    /**
+     * LRU Segment - A LinkedHashMap in access order, which evicts its eldest entry when it is over capacity.
+     */
+    private static final class LruSegment<K, V> extends Segment<K, V>
+    {
+        private final int capacity;
+        private final LinkedHashMap<K, V> entries;
+
+        LruSegment(int capacity)
+        {
+            this.capacity = capacity;
+            entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        @Override
+        V get(K key)
+        {
+            return entries.get(key);
+        }
+
+        @Override
+        int put(K key, V value)
+        {
+            entries.put(key, value);
+
+            if (entries.size() <= capacity)
+                return 0;
+
+            Iterator<K> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            return 1;
+        }
+
+        @Override
+        void remove(K key)
+        {
+            entries.remove(key);
+        }
+
+        @Override
+        void clear()
+        {
+            entries.clear();
+        }
+
+        @Override
+        int size()
+        {
+            return entries.size();
+        }
+    }
+
+    /**
+     * TinyLFU Segment
+     * A window LRU (1% of the capacity) for new entries, and a main area split into probation (20%) and protected (80%)
+     * LRUs. An entry used again while in probation is moved to protected. When the window is full, its eldest entry is
+     * admitted to the main area only if the frequency sketch has seen it more often than the eldest entry in probation.
+     * The sketch counts accesses (calls to get) only, so an entry looked up once and then put is counted once.
+     * Each LinkedHashMap is kept in insertion order, and an entry is moved to the most recent end by removing and adding
+     * it again.
+     */
+    private static final class TinyLfuSegment<K, V> extends Segment<K, V>
+    {
+        private final int windowCapacity;
+        private final int protectedCapacity;
+        private final int mainCapacity;
+
+        private final LinkedHashMap<K, V> window = new LinkedHashMap<>();
+        private final LinkedHashMap<K, V> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, V> protectedArea = new LinkedHashMap<>();
+
+        private final FrequencySketch sketch;
+
+        TinyLfuSegment(int capacity)
+        {
+            windowCapacity = Math.max(1, capacity / 100);
+            mainCapacity = Math.max(0, capacity - windowCapacity);
+            protectedCapacity = mainCapacity * 4 / 5;
+            sketch = new FrequencySketch(capacity);
+        }
+
+        @Override
+        V get(K key)
+        {
+            // Counting every access, hit or miss (a put follows a miss, so it is not counted again).
+            sketch.increment(key.hashCode());
+
+            V value = window.remove(key);
+            if (value != null)
+            {
+                window.put(key, value);
+                return value;
+            }
+
+            value = protectedArea.remove(key);
+            if (value != null)
+            {
+                protectedArea.put(key, value);
+                return value;
+            }
+
+            // Promoting an entry used again from probation to protected, demoting the eldest protected entry if needed.
+            value = probation.remove(key);
+            if (value != null)
+            {
+                protectedArea.put(key, value);
+                if (protectedArea.size() > protectedCapacity)
+                {
+                    Map.Entry<K, V> eldest = removeEldest(protectedArea);
+                    probation.put(eldest.getKey(), eldest.getValue());
+                }
+            }
+
+            return value;
+        }
+
+        @Override
+        int put(K key, V value)
+        {
+            // Replacing the value of an entry already in the cache, where it is.
+            if (window.containsKey(key))
+            {
+                window.put(key, value);
+                return 0;
+            }
+
+            if (probation.containsKey(key))
+            {
+                probation.put(key, value);
+                return 0;
+            }
+
+            if (protectedArea.containsKey(key))
+            {
+                protectedArea.put(key, value);
+                return 0;
+            }
+
+            window.put(key, value);
+            if (window.size() <= windowCapacity)
+                return 0;
+
+            // Moving the eldest window entry to probation if there is room in the main area.
+            Map.Entry<K, V> candidate = removeEldest(window);
+            if (probation.size() + protectedArea.size() < mainCapacity)
+            {
+                probation.put(candidate.getKey(), candidate.getValue());
+                return 0;
+            }
+
+            // Otherwise, keeping whichever of the candidate and the probation victim is used more often.
+            LinkedHashMap<K, V> victims = probation.isEmpty() ? protectedArea : probation;
+            if (victims.isEmpty())
+                return 1;
+
+            K victim = victims.keySet().iterator().next();
+            if (sketch.frequency(candidate.getKey().hashCode()) > sketch.frequency(victim.hashCode()))
+            {
+                victims.remove(victim);
+                probation.put(candidate.getKey(), candidate.getValue());
+            }
+
+            return 1;
+        }
+
+        @Override
+        void remove(K key)
+        {
+            if (window.remove(key) == null && probation.remove(key) == null)
+                protectedArea.remove(key);
+        }
+
+        @Override
+        void clear()
+        {
+            window.clear();
+            probation.clear();
+            protectedArea.clear();
+        }
+
+        @Override
+        int size()
+        {
+            return window.size() + probation.size() + protectedArea.size();
+        }
+
+        /**
+         * Remove Eldest - Helper function that removes and returns the least recent entry of a map (not empty).
+         */
+        private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map)
+        {
+            Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+            Map.Entry<K, V> eldest = iterator.next();
+            iterator.remove();
+            return Map.entry(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Frequency Sketch
+     * A count-min sketch of how often each hash has been seen: four rows of small counters (at most 15), each hash
+     * counted in one counter of each row, and the estimate being the smallest of those counters. Once ten times the
+     * capacity has been counted, every counter is halved, so that the sketch favours recent use.
+     */
+    private static final class FrequencySketch
+    {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int samples;
+
+        FrequencySketch(int capacity)
+        {
+            int width = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+            counters = new byte[ROWS][width];
+            mask = width - 1;
+            sampleSize = 10 * Math.max(16, capacity);
+        }
+
+        void increment(int hash)
+        {
+            for (int row = 0; row < ROWS; row += 1)
+            {
+                int index = index(hash, row);
+                if (counters[row][index] < MAX_COUNT)
+                    counters[row][index] += 1;
+            }
+
+            samples += 1;
+            if (samples >= sampleSize)
+                age();
+        }
+
+        int frequency(int hash)
+        {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < ROWS; row += 1)
+                frequency = Math.min(frequency, counters[row][index(hash, row)]);
+
+            return frequency;
+        }
+
+        private int index(int hash, int row)
+        {
+            int mixed = hash * SEEDS[row];
+            return (mixed ^ mixed >>> 15) & mask;
+        }
+
+        private void age()
+        {
+            for (byte[] row : counters)
+            {
+                for (int i = 0; i < row.length; i += 1)
+                    row[i] >>= 1;
+            }
+
+            samples /= 2;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bulk Tagger
+ * Tags a whole file of sentences (one a line) into another file, as a pipeline of three stages running at once: a reader
+ * thread splits the input into batches of lines, a pool of workers tags the batches, and the writer (the calling thread)
+ * writes each line as "word/TAG word/TAG ...", in the same order as the input.
+ * <p>
+ * The input is read through a memory-mapped TokenReader, and the output through a large buffered writer, so that the
+ * tagging, not the reading or writing, sets the pace. Memory stays bounded however large the file is: at most a fixed
+ * number of batches may be read but not yet written, so the reader waits when the workers or the writer fall behind
+ * (and the workers wait when there is nothing to tag). Since the writer holds back the batches that are finished out of
+ * order, this also bounds the batches it holds.
+ * <p>
+ * An empty line of input gives an empty line of output, so line i of the output is always the tags of line i of the
+ * input. If any stage fails, the others are stopped and the failure is thrown by tagFile.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class BulkTagger
+{
+    // The default number of lines in a batch, and the default number of batches read but not yet written for each worker.
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int DEFAULT_BATCHES_PER_WORKER = 4;
+
+    // The size of the output buffer.
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final Function<List<String>, List<String>> tagger;
+    private final int workers;
+    private final int batchSize;
+    private final int maxBatches;
+
+    /**
+     * Batch - Consecutive lines of the input, with their number in the order of the input and (once tagged) their tags.
+     * The batch with no lines marks the end of the input.
+     */
+    private static final class Batch
+    {
+        private final long sequence;
+        private final List<List<String>> lines;
+        private List<List<String>> tags;
+
+        Batch(long sequence, List<List<String>> lines)
+        {
+            this.sequence = sequence;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * Constructor - Uses a worker for each processor, and the default batch size and number of batches.
+     *
+     * @param tagger The tagger (for example, ViterbiTagger::tagSentence), which must be safe to call from many threads.
+     */
+    public BulkTagger(Function<List<String>, List<String>> tagger)
+    {
+        this(tagger, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE,
+                DEFAULT_BATCHES_PER_WORKER * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param tagger     The tagger, which must be safe to call from many threads.
+     * @param workers    The number of worker threads.
+     * @param batchSize  The number of lines in a batch.
+     * @param maxBatches The largest number of batches that may be read but not yet written (at least the workers).
+     */
+    public BulkTagger(Function<List<String>, List<String>> tagger, int workers, int batchSize, int maxBatches)
+    {
+        if (workers < 1 || batchSize < 1 || maxBatches < workers)
+            throw new IllegalArgumentException("Invalid Pipeline: " + workers + " Workers, Batches Of " + batchSize
+                    + ", " + maxBatches + " Batches");
+
+        this.tagger = tagger;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    /**
+     * Tag File
+     * Tags every line of the input file, writing the tagged lines to the output file (which is replaced if it exists).
+     *
+     * @param inputFile  The file path of the sentences, one a line, with the words separated by spaces or tabs.
+     * @param outputFile The file path to write the tagged sentences to.
+     * @return The number of lines tagged.
+     */
+    public long tagFile(String inputFile, String outputFile) throws IOException
+    {
+        // The batches read but not yet written (each read takes a permit, and each write gives one back).
+        Semaphore permits = new Semaphore(maxBatches);
+
+        // The batches waiting to be tagged (with a marker for each worker at the end), and the tagged batches.
+        BlockingQueue<Batch> untagged = new ArrayBlockingQueue<>(maxBatches + workers);
+        BlockingQueue<Batch> tagged = new ArrayBlockingQueue<>(maxBatches + 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 1, runnable -> {
+            Thread thread = new Thread(runnable, "BulkTagger");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (TokenReader input = new TokenReader(inputFile);
+             BufferedWriter output = new BufferedWriter(Files.newBufferedWriter(Path.of(outputFile),
+                     StandardCharsets.UTF_8), WRITE_BUFFER_SIZE))
+        {
+            List<Future<?>> stages = new ArrayList<>();
+            stages.add(executor.submit(() -> read(input, permits, untagged, tagged)));
+            for (int i = 0; i < workers; i += 1)
+                stages.add(executor.submit(() -> work(untagged, tagged)));
+
+            long lines = write(output, permits, tagged, stages);
+
+            // Checking that every stage finished cleanly.
+            for (Future<?> stage : stages)
+                stage.get();
+
+            return lines;
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted While Tagging " + inputFile, e);
+        }
+
+        catch (ExecutionException e)
+        {
+            throw failure(e.getCause());
+        }
+
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read - The reader stage, which splits the input into batches, waiting for a permit before reading each batch. At
+     * the end, it hands each worker a marker, and the writer an empty batch numbered after the last one.
+     */
+    private Void read(TokenReader input, Semaphore permits, BlockingQueue<Batch> untagged,
+                      BlockingQueue<Batch> tagged) throws IOException, InterruptedException
+    {
+        long sequence = 0;
+        boolean more = true;
+
+        while (more)
+        {
+            permits.acquire();
+
+            List<List<String>> lines = new ArrayList<>(batchSize);
+            while (lines.size() < batchSize)
+            {
+                List<String> line = input.nextLine();
+                if (line == null)
+                {
+                    more = false;
+                    break;
+                }
+
+                lines.add(line);
+            }
+
+            if (lines.isEmpty())
+            {
+                permits.release();
+                break;
+            }
+
+            untagged.put(new Batch(sequence, lines));
+            sequence += 1;
+        }
+
+        for (int i = 0; i < workers; i += 1)
+            untagged.put(new Batch(-1, null));
+
+        tagged.put(new Batch(sequence, null));
+        return null;
+    }
+
+    /**
+     * Work - A worker stage, which tags batches until it is handed the marker for the end of the input.
+     */
+    private Void work(BlockingQueue<Batch> untagged, BlockingQueue<Batch> tagged) throws InterruptedException
+    {
+        while (true)
+        {
+            Batch batch = untagged.take();
+            if (batch.lines == null)
+                return null;
+
+            List<List<String>> tags = new ArrayList<>(batch.lines.size());
+            for (List<String> line : batch.lines)
+                tags.add(line.isEmpty() ? line : tagger.apply(line));
+
+            batch.tags = tags;
+            tagged.put(batch);
+        }
+    }
+
+    /**
+     * Write - The writer stage, which writes the tagged batches in order, holding back those that finish early, until it
+     * reaches the end of the input. While waiting, it checks that no other stage has failed.
+     *
+     * @return The number of lines written.
+     */
+    private long write(BufferedWriter output, Semaphore permits, BlockingQueue<Batch> tagged, List<Future<?>> stages)
+            throws IOException, InterruptedException, ExecutionException
+    {
+        Map<Long, Batch> waiting = new HashMap<>();
+        long nextSequence = 0;
+        long lines = 0;
+
+        while (true)
+        {
+            Batch batch = waiting.remove(nextSequence);
+
+            // Waiting for the next batch, checking now and then for a stage that has failed.
+            while (batch == null)
+            {
+                Batch received = tagged.poll(100, TimeUnit.MILLISECONDS);
+                if (received == null)
+                {
+                    for (Future<?> stage : stages)
+                    {
+                        if (stage.isDone())
+                            stage.get();
+                    }
+                }
+
+                else if (received.sequence == nextSequence)
+                    batch = received;
+                else
+                    waiting.put(received.sequence, received);
+            }
+
+            // The empty batch numbered after the last one marks the end of the input.
+            if (batch.lines == null)
+            {
+                output.flush();
+                return lines;
+            }
+
+            for (int i = 0; i < batch.lines.size(); i += 1)
+            {
+                writeLine(output, batch.lines.get(i), batch.tags.get(i));
+                lines += 1;
+            }
+
+            permits.release();
+            nextSequence += 1;
+        }
+    }
+
+    /**
+     * Write Line - Helper function that writes one line as "word/TAG word/TAG ...".
+     */
+    private static void writeLine(BufferedWriter output, List<String> words, List<String> tags) throws IOException
+    {
+        for (int i = 0; i < words.size(); i += 1)
+        {
+            if (i > 0)
+                output.write(' ');
+
+            output.write(words.get(i));
+            output.write('/');
+            output.write(tags.get(i));
+        }
+
+        output.newLine();
+    }
+
+    /**
+     * Failure - Helper function that gives back the failure of a stage as an IOException (or rethrows it, if it is an
+     * unchecked exception or an error).
+     */
+    private static IOException failure(Throwable cause)
+    {
+        if (cause instanceof IOException)
+            return (IOException) cause;
+        if (cause instanceof UncheckedIOException)
+            return ((UncheckedIOException) cause).getCause();
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+
+        return new IOException(cause);
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact Model
+ * A copy of a CompiledModel that takes far less memory for a large vocabulary. The words are kept in an off-heap
+ * Vocabulary, and the observations are kept in compressed sparse rows: for each word, only the tags it was seen with and
+ * their scores, one word after another in three flat arrays (the start of each word's row, the tags, and the scores).
+ * This is the tag dictionary and the observation scores in one, since the tags of a word's row are exactly its candidate
+ * tags. Everything else (the tags, the transitions and the observation column for unknown words) is shared with the
+ * CompiledModel.
+ * <p>
+ * The scores are the same doubles, and the tagSentence method scores the same candidate tags in the same order as
+ * CompiledModel.tagSentence, so both give exactly the same tags (for a CompiledModel without an UnknownWordModel, which
+ * is not carried over: unknown words are scored with the observation column for unknown words).
+ * <p>
+ * A CompactModel is made by converting a whole CompiledModel (trained, or loaded from a snapshot by load), so building one
+ * still takes the memory of the CompiledModel for a moment: it is meant for converting a model offline (or once, at
+ * startup) and then tagging with the compact copy alone. The tagger used by ViterbiAlgorithm and ViterbiTagger is the
+ * CompiledModel, which the ModelRegistry publishes and the snapshots save, so a CompactModel is used by tagging with it
+ * directly.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class CompactModel
+{
+    private final String[] tags;
+    private final Vocabulary vocabulary;
+
+    // The transitions from the start tag and between tags, and the observation column for unknown words (as before).
+    private final double[] startScores;
+    private final double[][] transitions;
+    private final double[] unknownEmissions;
+    private final int[] allTags;
+
+    // The row of word w is [rowStarts[w], rowStarts[w + 1]) of rowTags and rowScores, with the tags in increasing order.
+    private final int[] rowStarts;
+    private final short[] rowTags;
+    private final double[] rowScores;
+
+    /**
+     * Constructor - Compacts a compiled model.
+     */
+    public CompactModel(CompiledModel model)
+    {
+        int tagCount = model.getTagCount();
+        tags = new String[tagCount];
+        allTags = new int[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+        {
+            tags[t] = model.getTag(t);
+            allTags[t] = t;
+        }
+
+        startScores = model.startScores();
+        transitions = model.transitions();
+        unknownEmissions = model.unknownEmissions();
+        vocabulary = new Vocabulary(model.words());
+
+        // Counting the entries of every row first, so that the flat arrays can be allocated at their final size.
+        int wordCount = vocabulary.size();
+        int[] originalIds = new int[wordCount];
+        rowStarts = new int[wordCount + 1];
+
+        for (int w = 0; w < wordCount; w += 1)
+        {
+            originalIds[w] = model.getWordId(vocabulary.getWord(w));
+            rowStarts[w + 1] = rowStarts[w] + model.candidateTags(originalIds[w]).length;
+        }
+
+        rowTags = new short[rowStarts[wordCount]];
+        rowScores = new double[rowStarts[wordCount]];
+
+        for (int w = 0; w < wordCount; w += 1)
+        {
+            double[] column = model.emissionColumn(originalIds[w]);
+            int entry = rowStarts[w];
+
+            for (int t : model.candidateTags(originalIds[w]))
+            {
+                rowTags[entry] = (short) t;
+                rowScores[entry] = column[t];
+                entry += 1;
+            }
+        }
+
+    }
+
+    /**
+     * Load - Compacts the model saved in a snapshot file (see ModelSnapshot), keeping only the compact copy.
+     *
+     * @param filename The path of the snapshot file.
+     */
+    public static CompactModel load(String filename) throws IOException
+    {
+        return new CompactModel(ModelSnapshot.load(filename));
+    }
+
+    /**
+     * Getter - Number Of Tags
+     */
+    public int getTagCount()
+    {
+        return tags.length;
+    }
+
+    /**
+     * Getter - Vocabulary
+     */
+    public Vocabulary getVocabulary()
+    {
+        return vocabulary;
+    }
+
+    /**
+     * Getter - Number Of Observations (the number of (word, tag) pairs seen in training)
+     */
+    public int getObservationCount()
+    {
+        return rowTags.length;
+    }
+
+    /**
+     * Tag Sentence
+     * The Viterbi algorithm as in CompiledModel.tagSentence, reading the candidate tags and observation scores of each
+     * known word from its row.
+     *
+     * @param sentence The sentence to tag with parts of speech.
+     */
+    public List<String> tagSentence(List<String> sentence)
+    {
+        // An empty sentence has no tags (and nothing to decode).
+        if (sentence.isEmpty())
+            return List.of();
+
+        int n = sentence.size();
+        int tagCount = tags.length;
+
+        DecoderBuffers buffers = DecoderBuffers.forThread(tags.length);
+        double[] currentScores = buffers.currentScores;
+        double[] nextScores = buffers.nextScores;
+        short[] backPointers = buffers.backPointers(n);
+
+        // The candidate tags of the current and next words.
+        int[] currentStates = buffers.currentStates;
+        int[] nextStates = buffers.nextStates;
+        int word = vocabulary.getId(sentence.get(0));
+        int currentCount = fillStates(word, currentStates);
+
+        // Handling the first observation, which can only come from the start state.
+        for (int c = 0; c < currentCount; c += 1)
+        {
+            int current = currentStates[c];
+            currentScores[current] = startScores[current] + emission(word, c, current);
+        }
+
+        for (int i = 1; i < n; i += 1)
+        {
+            word = vocabulary.getId(sentence.get(i));
+            int nextCount = fillStates(word, nextStates);
+            int offset = i * tagCount;
+
+            for (int x = 0; x < nextCount; x += 1)
+            {
+                int next = nextStates[x];
+                double bestScore = Double.NEGATIVE_INFINITY;
+                int bestState = currentStates[0];
+
+                for (int c = 0; c < currentCount; c += 1)
+                {
+                    int current = currentStates[c];
+                    double score = currentScores[current] + transitions[current][next];
+                    if (score > bestScore)
+                    {
+                        bestScore = score;
+                        bestState = current;
+                    }
+                }
+
+                nextScores[next] = bestScore + emission(word, x, next);
+                backPointers[offset + next] = (short) bestState;
+            }
+
+            double[] temp = currentScores;
+            currentScores = nextScores;
+            nextScores = temp;
+
+            int[] tempStates = currentStates;
+            currentStates = nextStates;
+            nextStates = tempStates;
+            currentCount = nextCount;
+        }
+
+        // Finding the best last state, according to the final scores.
+        int lastState = currentStates[0];
+        for (int c = 0; c < currentCount; c += 1)
+        {
+            if (currentScores[currentStates[c]] > currentScores[lastState])
+                lastState = currentStates[c];
+        }
+
+        String[] path = new String[n];
+        for (int i = n - 1; i >= 0; i -= 1)
+        {
+            path[i] = tags[lastState];
+            lastState = backPointers[i * tagCount + lastState];
+        }
+
+        return Arrays.asList(path);
+    }
+
+    /**
+     * Fill States - Helper function that copies the candidate tags of a word ID (every tag for -1) into an array, returning how many.
+     */
+    private int fillStates(int word, int[] states)
+    {
+        if (word < 0)
+        {
+            System.arraycopy(allTags, 0, states, 0, allTags.length);
+            return allTags.length;
+        }
+
+        int start = rowStarts[word];
+        int count = rowStarts[word + 1] - start;
+        for (int i = 0; i < count; i += 1)
+            states[i] = rowTags[start + i];
+
+        return count;
+    }
+
+    /**
+     * Emission - Helper function that gives the observation score of the index-th candidate tag of a word ID.
+     */
+    private double emission(int word, int index, int tag)
+    {
+        return word < 0 ? unknownEmissions[tag] : rowScores[rowStarts[word] + index];
+    }
+}
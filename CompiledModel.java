@@ -0,0 +1,627 @@
+import java.util.*;
+
+/**
+ * Compiled Model
+ * A frozen, array-based copy of a trained HiddenMarkovModel. Every tag and every word seen in training is interned to
+ * an integer ID, the transitions are stored as a dense T x T matrix of log probabilities, and the observations are
+ * stored as one column of T log probabilities per word.
+ * <p>
+ * With the model in this form, the Viterbi algorithm only ever reads from primitive arrays by index, rather than
+ * hashing Strings and unboxing Doubles for every edge of the lattice. Transitions never seen in training are given a
+ * score of negative infinity (the same as not following them at all), and observations never seen in training are given
+ * the unseen penalty.
+ * <p>
+ * For each word seen in training, the model also keeps a tag dictionary: the list of tags the word was seen with. Since
+ * any other tag would cost the unseen penalty, the lattice for a known word is restricted to those tags, and only words
+ * never seen in training are tried with every tag. A model may instead be given an UnknownWordModel, which scores each
+ * unknown word by its suffix and shape, and restricts it to the tags it is likely to have.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class CompiledModel
+{
+    // The tag before the start of the sentence.
+    static final String START = "#";
+
+    // The tags (parts of speech) indexed by ID, and the reverse mapping from tag to ID.
+    private final String[] tags;
+    private final Map<String, Integer> tagIds;
+
+    // The mapping from word to ID, used to find the observation column for a word.
+    private final Map<String, Integer> wordIds;
+
+    /* The startScores hold the transition from "#" to each tag, and the transitions hold the transition from each tag
+    (row) to each tag (column). Missing transitions are negative infinity.
+     */
+    private final double[] startScores;
+    private final double[][] transitions;
+
+    /* The emissions hold one column for each word (indexed by word ID), giving the observation score for each tag. The
+    unknownEmissions column is used for any word that was never seen in training.
+     */
+    private final double[][] emissions;
+    private final double[] unknownEmissions;
+
+    // The log probability given to an observation never seen in training.
+    private final double unseenPenalty;
+
+    /* The tag dictionary holds, for each word ID, the IDs of the tags the word was seen with (in increasing order). The
+    allTags array holds every tag ID, and is used for words never seen in training.
+     */
+    private final int[][] allowedTags;
+    private final int[] allTags;
+
+    // The model of the observations of words never seen in training (null to give them the unseen penalty for every tag).
+    private final UnknownWordModel unknownWordModel;
+
+    /**
+     * Constructor - Compiles the transitionMap and observationMap of a trained model into arrays.
+     *
+     * @param markovModel   The trained Hidden Markov Model.
+     * @param unseenPenalty The log probability given to an observation never seen in training.
+     */
+    public CompiledModel(HiddenMarkovModel markovModel, double unseenPenalty)
+    {
+        Map<String, Map<String, Double>> transitionMap = markovModel.getTransitionMap();
+        Map<String, Map<String, Double>> observationMap = markovModel.getObservationMap();
+
+        // Collecting every tag (other than the start tag), sorted so that the IDs are the same from run to run.
+        SortedSet<String> tagSet = new TreeSet<>(observationMap.keySet());
+        for (Map<String, Double> map : transitionMap.values())
+            tagSet.addAll(map.keySet());
+        tagSet.addAll(transitionMap.keySet());
+        tagSet.remove(START);
+
+        tags = tagSet.toArray(new String[0]);
+        tagIds = new HashMap<>();
+        for (int i = 0; i < tags.length; i += 1)
+            tagIds.put(tags[i], i);
+
+        // Filling in the transitions, leaving negative infinity for anything never seen.
+        startScores = new double[tags.length];
+        transitions = new double[tags.length][tags.length];
+        Arrays.fill(startScores, Double.NEGATIVE_INFINITY);
+        for (double[] row : transitions)
+            Arrays.fill(row, Double.NEGATIVE_INFINITY);
+
+        for (String state : transitionMap.keySet())
+        {
+            double[] row = state.equals(START) ? startScores : transitions[tagIds.get(state)];
+
+            for (Map.Entry<String, Double> entry : transitionMap.get(state).entrySet())
+                row[tagIds.get(entry.getKey())] = entry.getValue();
+        }
+
+        // Interning the words, giving each an observation column filled with the unseen penalty to begin with.
+        wordIds = new HashMap<>();
+        List<double[]> columns = new ArrayList<>();
+
+        for (String state : observationMap.keySet())
+        {
+            int tag = tagIds.get(state);
+
+            for (Map.Entry<String, Double> entry : observationMap.get(state).entrySet())
+            {
+                Integer word = wordIds.get(entry.getKey());
+
+                // If the word has not been seen yet, create a new column for it.
+                if (word == null)
+                {
+                    word = columns.size();
+                    wordIds.put(entry.getKey(), word);
+
+                    double[] column = new double[tags.length];
+                    Arrays.fill(column, unseenPenalty);
+                    columns.add(column);
+                }
+
+                columns.get(word)[tag] = entry.getValue();
+            }
+        }
+
+        emissions = columns.toArray(new double[0][]);
+        unknownEmissions = new double[tags.length];
+        Arrays.fill(unknownEmissions, unseenPenalty);
+        this.unseenPenalty = unseenPenalty;
+
+        allTags = new int[tags.length];
+        allowedTags = buildTagDictionary();
+        unknownWordModel = null;
+    }
+
+    /**
+     * Constructor - Builds a model directly from its arrays (for example, when loading a ModelSnapshot).
+     *
+     * @param tags             The tags, indexed by ID.
+     * @param words            The words, indexed by ID.
+     * @param startScores      The transition scores from the start tag.
+     * @param transitions      The transition scores, indexed by [from tag][to tag].
+     * @param emissions        The observation columns, indexed by [word][tag].
+     * @param unknownEmissions The observation column for words never seen in training.
+     * @param unseenPenalty    The log probability given to an observation never seen in training.
+     */
+    CompiledModel(String[] tags, String[] words, double[] startScores, double[][] transitions, double[][] emissions,
+                  double[] unknownEmissions, double unseenPenalty)
+    {
+        this.tags = tags;
+        this.startScores = startScores;
+        this.transitions = transitions;
+        this.emissions = emissions;
+        this.unknownEmissions = unknownEmissions;
+        this.unseenPenalty = unseenPenalty;
+
+        tagIds = new HashMap<>();
+        for (int i = 0; i < tags.length; i += 1)
+            tagIds.put(tags[i], i);
+
+        wordIds = new HashMap<>(2 * words.length);
+        for (int i = 0; i < words.length; i += 1)
+            wordIds.put(words[i], i);
+
+        allTags = new int[tags.length];
+        allowedTags = buildTagDictionary();
+        unknownWordModel = null;
+    }
+
+    /**
+     * Constructor - Helper constructor that shares every array of another model, with a different unknown word model.
+     */
+    private CompiledModel(CompiledModel model, UnknownWordModel unknownWordModel)
+    {
+        tags = model.tags;
+        tagIds = model.tagIds;
+        wordIds = model.wordIds;
+        startScores = model.startScores;
+        transitions = model.transitions;
+        emissions = model.emissions;
+        unknownEmissions = model.unknownEmissions;
+        unseenPenalty = model.unseenPenalty;
+        allowedTags = model.allowedTags;
+        allTags = model.allTags;
+        this.unknownWordModel = unknownWordModel;
+    }
+
+    /**
+     * With Unknown Word Model
+     * A model with the same scores as this one, except that words never seen in training are scored (and their candidate
+     * tags chosen) by an UnknownWordModel, rather than given the unseen penalty for every tag.
+     *
+     * @param unknownWordModel The unknown word model (null for the unseen penalty), which must use this model's tag IDs.
+     */
+    public CompiledModel withUnknownWordModel(UnknownWordModel unknownWordModel)
+    {
+        return new CompiledModel(this, unknownWordModel);
+    }
+
+    /**
+     * Getter - Unknown Word Model (null if words never seen in training are given the unseen penalty)
+     */
+    public UnknownWordModel getUnknownWordModel()
+    {
+        return unknownWordModel;
+    }
+
+    /**
+     * Build Tag Dictionary
+     * Helper function that fills in allTags, and finds the tags each word was seen with (those whose observation score is
+     * not the unseen penalty).
+     */
+    private int[][] buildTagDictionary()
+    {
+        // The back pointers are stored as shorts, which limits the number of tags.
+        if (tags.length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Too Many Tags: " + tags.length);
+
+        for (int t = 0; t < tags.length; t += 1)
+            allTags[t] = t;
+
+        int[][] dictionary = new int[emissions.length][];
+        int[] seen = new int[tags.length];
+
+        for (int w = 0; w < emissions.length; w += 1)
+        {
+            int count = 0;
+            for (int t = 0; t < tags.length; t += 1)
+            {
+                if (emissions[w][t] != unseenPenalty)
+                {
+                    seen[count] = t;
+                    count += 1;
+                }
+            }
+
+            dictionary[w] = Arrays.copyOf(seen, count);
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * Getter - Number Of Tags
+     */
+    public int getTagCount()
+    {
+        return tags.length;
+    }
+
+    /**
+     * Getter - Tag (by ID)
+     */
+    public String getTag(int id)
+    {
+        return tags[id];
+    }
+
+    /**
+     * Getter - Number Of Words
+     */
+    public int getWordCount()
+    {
+        return emissions.length;
+    }
+
+    /**
+     * Getter - Unseen Penalty
+     */
+    public double getUnseenPenalty()
+    {
+        return unseenPenalty;
+    }
+
+    /**
+     * Getter - Tag ID, or -1 if the tag was never seen in training.
+     */
+    public int getTagId(String tag)
+    {
+        Integer id = tagIds.get(tag);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Getter - Word ID, or -1 if the word was never seen in training.
+     */
+    public int getWordId(String word)
+    {
+        Integer id = wordIds.get(word);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Getter - Words, indexed by ID.
+     */
+    String[] words()
+    {
+        String[] words = new String[emissions.length];
+        for (Map.Entry<String, Integer> entry : wordIds.entrySet())
+            words[entry.getValue()] = entry.getKey();
+
+        return words;
+    }
+
+    /**
+     * Getter - Transition scores from the start tag (indexed by tag ID).
+     */
+    double[] startScores()
+    {
+        return startScores;
+    }
+
+    /**
+     * Getter - Transition scores, indexed by [from tag][to tag].
+     */
+    double[][] transitions()
+    {
+        return transitions;
+    }
+
+    /**
+     * Getter - Observation column (indexed by tag ID) for a given word ID.
+     */
+    double[] emissionColumn(int wordId)
+    {
+        return emissions[wordId];
+    }
+
+    /**
+     * Getter - Observation column (indexed by tag ID) for words never seen in training.
+     */
+    double[] unknownEmissions()
+    {
+        return unknownEmissions;
+    }
+
+    /**
+     * Getter - Candidate tag IDs for a given word ID (the tags it was seen with, or every tag for an unknown word, -1).
+     */
+    int[] candidateTags(int wordId)
+    {
+        return wordId < 0 ? allTags : allowedTags[wordId];
+    }
+
+    /**
+     * Getter - Candidate tag IDs for a word, given its ID: the tags it was seen with, or for an unknown word (-1) the
+     * candidates of the unknown word model (or every tag, if there is none).
+     */
+    int[] candidateTags(int wordId, String word)
+    {
+        if (wordId >= 0)
+            return allowedTags[wordId];
+
+        return unknownWordModel == null ? allTags : unknownWordModel.estimate(word).candidates();
+    }
+
+    /**
+     * Getter - Observation column (indexed by tag ID) for a word, given its ID: its own column, or for an unknown word
+     * (-1) the scores of the unknown word model (or the unseen penalty for every tag, if there is none).
+     */
+    double[] emissionColumn(int wordId, String word)
+    {
+        if (wordId >= 0)
+            return emissions[wordId];
+
+        return unknownWordModel == null ? unknownEmissions : unknownWordModel.estimate(word).scores();
+    }
+
+    /**
+     * Getter - Observation column (indexed by tag ID) for a given word.
+     */
+    double[] emissionColumn(String word)
+    {
+        return emissionColumn(getWordId(word), word);
+    }
+
+    /**
+     * Tag Sentence
+     * The Viterbi algorithm over primitive arrays. The score for each tag at observation i is the best (over the tags at
+     * observation i-1) of the previous score plus the transition, plus the observation score of word i in that tag. Only
+     * the candidate tags of each word (from the tag dictionary) are scored.
+     * <p>
+     * The score arrays and back pointers are the calling thread's DecoderBuffers, so nothing is allocated for each word
+     * (only the path that is returned).
+     *
+     * @param sentence The sentence to tag with parts of speech (an empty sentence gives an empty list of tags).
+     */
+    public List<String> tagSentence(List<String> sentence)
+    {
+        // An empty sentence has no tags (and nothing to decode).
+        if (sentence.isEmpty())
+            return List.of();
+
+        int n = sentence.size();
+        int tagCount = tags.length;
+
+        // Only the scores of the current and next states (the candidate tags of each word) are ever read.
+        DecoderBuffers buffers = DecoderBuffers.forThread(tags.length);
+        double[] currentScores = buffers.currentScores;
+        double[] nextScores = buffers.nextScores;
+
+        // For observation i and tag t, backPointers[i * T + t] is the best previous tag (unused for the first one).
+        short[] backPointers = buffers.backPointers(n);
+
+        // Handling the first observation, which can only come from the start state.
+        int word = getWordId(sentence.get(0));
+        int[] currentStates = candidateTags(word, sentence.get(0));
+        double[] column = emissionColumn(word, sentence.get(0));
+
+        for (int current : currentStates)
+            currentScores[current] = startScores[current] + column[current];
+
+        // Counting the unknown words and the states expanded, as the sentence is decoded.
+        int unknownWords = word < 0 ? 1 : 0;
+        long statesExpanded = 1;
+
+        // Cycling through the rest of the words in the sentence.
+        for (int i = 1; i < n; i += 1)
+        {
+            word = getWordId(sentence.get(i));
+            int[] nextStates = candidateTags(word, sentence.get(i));
+            column = emissionColumn(word, sentence.get(i));
+            int offset = i * tagCount;
+
+            if (word < 0)
+                unknownWords += 1;
+            statesExpanded += currentStates.length;
+
+            for (int next : nextStates)
+            {
+                double bestScore = Double.NEGATIVE_INFINITY;
+                int bestState = currentStates[0];
+
+                // Finding the best previous state for the next state.
+                for (int current : currentStates)
+                {
+                    double score = currentScores[current] + transitions[current][next];
+                    if (score > bestScore)
+                    {
+                        bestScore = score;
+                        bestState = current;
+                    }
+                }
+
+                nextScores[next] = bestScore + column[next];
+                backPointers[offset + next] = (short) bestState;
+            }
+
+            // Swapping the arrays, so that the next scores become the current scores.
+            double[] temp = currentScores;
+            currentScores = nextScores;
+            nextScores = temp;
+            currentStates = nextStates;
+        }
+
+        // Finding the best last state, according to the final scores.
+        int lastState = currentStates[0];
+        for (int current : currentStates)
+        {
+            if (currentScores[current] > currentScores[lastState])
+                lastState = current;
+        }
+
+        buffers.unknownWords = unknownWords;
+        buffers.statesExpanded = statesExpanded;
+        return findPath(backPointers, n, lastState);
+    }
+
+    /**
+     * Tag Sentence (Beam)
+     * The Viterbi algorithm with beam pruning. After each observation, only the best beamWidth states, and only those
+     * within beamThreshold of the best state, are kept and expanded to the next observation, so each observation costs
+     * beamWidth x T rather than T x T. Since a pruned state might have been on the best path, this can be less accurate
+     * than the exact algorithm. As in the exact algorithm, only the candidate tags of each word are scored, using the
+     * calling thread's DecoderBuffers.
+     *
+     * @param sentence      The sentence to tag with parts of speech (an empty sentence gives an empty list of tags).
+     * @param beamWidth     The number of states kept after each observation (0 or less keeps every state).
+     * @param beamThreshold How far (in log probability) below the best state a state may be and still be kept.
+     */
+    public List<String> tagSentence(List<String> sentence, int beamWidth, double beamThreshold)
+    {
+        // An empty sentence has no tags (and nothing to decode).
+        if (sentence.isEmpty())
+            return List.of();
+
+        int n = sentence.size();
+        int tagCount = tags.length;
+
+        if (beamWidth <= 0 || beamWidth > tagCount)
+            beamWidth = tagCount;
+
+        DecoderBuffers buffers = DecoderBuffers.forThread(tags.length);
+        double[] currentScores = buffers.currentScores;
+        double[] nextScores = buffers.nextScores;
+        short[] backPointers = buffers.backPointers(n);
+
+        // The states kept after the current observation (the first beamWidth entries of the array).
+        int[] beam = buffers.beam;
+
+        // Handling the first observation, which can only come from the start state.
+        int word = getWordId(sentence.get(0));
+        int[] states = candidateTags(word, sentence.get(0));
+        double[] column = emissionColumn(word, sentence.get(0));
+
+        for (int state : states)
+            currentScores[state] = startScores[state] + column[state];
+
+        int beamSize = prune(currentScores, states, beam, beamWidth, beamThreshold);
+
+        // Counting the unknown words and the states expanded (only those in the beam), as the sentence is decoded.
+        int unknownWords = word < 0 ? 1 : 0;
+        long statesExpanded = 1;
+
+        // Cycling through the rest of the words in the sentence, only coming from the states in the beam.
+        for (int i = 1; i < n; i += 1)
+        {
+            word = getWordId(sentence.get(i));
+            states = candidateTags(word, sentence.get(i));
+            column = emissionColumn(word, sentence.get(i));
+            int offset = i * tagCount;
+
+            if (word < 0)
+                unknownWords += 1;
+            statesExpanded += beamSize;
+
+            for (int next : states)
+            {
+                double bestScore = Double.NEGATIVE_INFINITY;
+                int bestState = beam[0];
+
+                for (int b = 0; b < beamSize; b += 1)
+                {
+                    int current = beam[b];
+                    double score = currentScores[current] + transitions[current][next];
+                    if (score > bestScore)
+                    {
+                        bestScore = score;
+                        bestState = current;
+                    }
+                }
+
+                nextScores[next] = bestScore + column[next];
+                backPointers[offset + next] = (short) bestState;
+            }
+
+            double[] temp = currentScores;
+            currentScores = nextScores;
+            nextScores = temp;
+
+            beamSize = prune(currentScores, states, beam, beamWidth, beamThreshold);
+        }
+
+        buffers.unknownWords = unknownWords;
+        buffers.statesExpanded = statesExpanded;
+
+        // The best last state is the first state in the beam.
+        return findPath(backPointers, n, beam[0]);
+    }
+
+    /**
+     * Last Unknown Words - The number of unknown words in the last sentence tagged by the calling thread (with any model
+     * of this many tags, since the buffers are shared, so it is read right after tagging).
+     */
+    int lastUnknownWords()
+    {
+        return DecoderBuffers.forThread(tags.length).unknownWords;
+    }
+
+    /**
+     * Last States Expanded - The number of states expanded to the next observation (with the start state, and after
+     * any beam pruning) in the last sentence tagged by the calling thread.
+     */
+    long lastStatesExpanded()
+    {
+        return DecoderBuffers.forThread(tags.length).statesExpanded;
+    }
+
+    /**
+     * Find Path - Helper function that follows the back pointers from the last state to the first, giving the tags.
+     */
+    private List<String> findPath(short[] backPointers, int n, int lastState)
+    {
+        String[] path = new String[n];
+        for (int i = n - 1; i >= 0; i -= 1)
+        {
+            path[i] = tags[lastState];
+            lastState = backPointers[i * tags.length + lastState];
+        }
+
+        return Arrays.asList(path);
+    }
+
+    /**
+     * Prune - Helper function that fills the beam with the best of the given states (best first), up to the beam width
+     * and only within the threshold of the best score.
+     *
+     * @return The number of states in the beam (always at least one).
+     */
+    private static int prune(double[] scores, int[] states, int[] beam, int beamWidth, double threshold)
+    {
+        int beamSize = 0;
+        int capacity = Math.min(beamWidth, states.length);
+
+        // Keeping the beam sorted from best to worst, inserting each state that belongs in it.
+        for (int t : states)
+        {
+            double score = scores[t];
+            if (beamSize == capacity && score <= scores[beam[beamSize - 1]])
+                continue;
+
+            int position = beamSize == capacity ? beamSize - 1 : beamSize;
+            while (position > 0 && score > scores[beam[position - 1]])
+            {
+                beam[position] = beam[position - 1];
+                position -= 1;
+            }
+
+            beam[position] = t;
+            beamSize = Math.min(beamSize + 1, capacity);
+        }
+
+        // Cutting off the states that are too far below the best one (or were never reached).
+        double cutoff = scores[beam[0]] - threshold;
+        int kept = 1;
+        while (kept < beamSize && scores[beam[kept]] >= cutoff && scores[beam[kept]] > Double.NEGATIVE_INFINITY)
+            kept += 1;
+
+        return kept;
+    }
+}
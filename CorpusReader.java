@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Corpus Reader
+ * Streams a pair of aligned files (one with the sentences, one with the tags) as TaggedSentences, reading line i of both
+ * files together. Both files are read through a memory-mapped TokenReader, so only one sentence is held at a time.
+ * <p>
+ * Lines that are empty in both files are skipped. A line whose number of words does not match its number of tags is
+ * reported and skipped, and the files must have the same number of lines.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class CorpusReader implements Iterable<TaggedSentence>, AutoCloseable
+{
+    private final TokenReader sentencesInput;
+    private final TokenReader tagsInput;
+
+    /**
+     * Constructor - Opens the sentences and tags files.
+     *
+     * @param sentencesFile The file path for the sentences.
+     * @param tagsFile      The file path for the tags.
+     */
+    public CorpusReader(String sentencesFile, String tagsFile) throws IOException
+    {
+        sentencesInput = new TokenReader(sentencesFile);
+
+        try
+        {
+            tagsInput = new TokenReader(tagsFile);
+        }
+
+        // Making sure the sentences file is not left open if the tags file cannot be opened.
+        catch (IOException e)
+        {
+            sentencesInput.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Next Sentence - Reads the next aligned pair of lines.
+     *
+     * @return The next TaggedSentence, or null at the end of the files.
+     */
+    public TaggedSentence nextSentence() throws IOException
+    {
+        while (true)
+        {
+            List<String> words = sentencesInput.nextLine();
+            List<String> tags = tagsInput.nextLine();
+
+            // Both files should end on the same line.
+            if (words == null || tags == null)
+            {
+                if (words != tags)
+                    throw new IOException("Sentences and tags files have different numbers of lines");
+
+                return null;
+            }
+
+            // Skipping any lines that are empty in both files.
+            if (words.isEmpty() && tags.isEmpty())
+                continue;
+
+            // Checking to make sure that there is one tag for every word.
+            if (words.size() != tags.size())
+            {
+                System.err.println("Invalid Input - Mismatched Line " + sentencesInput.getLineNumber());
+                continue;
+            }
+
+            return new TaggedSentence(words, tags);
+        }
+    }
+
+    /**
+     * Iterator - Iterates over the remaining sentences in the files.
+     */
+    @Override
+    public Iterator<TaggedSentence> iterator()
+    {
+        return new Iterator<>()
+        {
+            private TaggedSentence next = advance();
+
+            private TaggedSentence advance()
+            {
+                try
+                {
+                    return nextSentence();
+                }
+
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            @Override
+            public TaggedSentence next()
+            {
+                if (next == null)
+                    throw new NoSuchElementException();
+
+                TaggedSentence sentence = next;
+                next = advance();
+                return sentence;
+            }
+        };
+    }
+
+    /**
+     * Stream - A sequential Stream over the remaining sentences in the files.
+     */
+    public Stream<TaggedSentence> stream()
+    {
+        int characteristics = Spliterator.ORDERED | Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), characteristics), false);
+    }
+
+    /**
+     * Close - Closes both files.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            sentencesInput.close();
+        }
+
+        finally
+        {
+            tagsInput.close();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Count Table
+ * The raw training counts for a Hidden Markov Model, kept in primitive arrays rather than Maps of boxed Doubles. Tags
+ * and words are interned to integer IDs as they are seen, the transitions are counted in a (from tag, to tag) matrix,
+ * and the observations are counted in one row per word (indexed by tag).
+ * <p>
+ * Count tables are mergeable, so a corpus can be split into shards, each shard counted into its own table on its own
+ * thread, and the tables reduced into one by merging. Since each table has its own IDs, merging maps the IDs of the other
+ * table through its tag and word Strings.
+ * <p>
+ * Each count is an int, to keep the observation rows small, and is added to with Math.addExact, so a count that would
+ * pass Integer.MAX_VALUE (after merging many shards of a very large corpus) throws an ArithmeticException rather than
+ * silently wrapping around to a negative count. The totals for each tag are longs.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class CountTable
+{
+    // The number of sentences in each shard counted by countShards.
+    static final int SHARD_SIZE = 2048;
+
+    // The tag before the start of the sentence, which always has ID 0.
+    private static final String START = "#";
+
+    // The tags and words, indexed by ID, and the reverse mappings from tag and word to ID.
+    private final List<String> tags = new ArrayList<>();
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private final List<String> words = new ArrayList<>();
+    private final Map<String, Integer> wordIds = new HashMap<>();
+
+    // The transition counts, indexed by [from tag][to tag], grown as new tags are seen.
+    private int[][] transitionCounts = new int[16][16];
+
+    /* The observation counts, indexed by [word][tag]. Each row is only as long as the largest tag ID seen with that word
+    (plus one), so tags seen after the row was created are treated as zero.
+     */
+    private int[][] observationCounts = new int[1024][];
+
+    // The total number of transitions out of each tag, and the total number of words tagged with each tag.
+    private long[] transitionTotals = new long[16];
+    private long[] observationTotals = new long[16];
+
+    /**
+     * Count Consumer - Receives each non-zero count in a table, as (outer key, inner key, count).
+     */
+    public interface CountConsumer
+    {
+        void accept(String outer, String inner, int count);
+    }
+
+    /**
+     * Constructor - Creates an empty table, containing only the start tag.
+     */
+    public CountTable()
+    {
+        tagId(START);
+    }
+
+    /**
+     * Getter - Number Of Tags (including the start tag)
+     */
+    public int getTagCount()
+    {
+        return tags.size();
+    }
+
+    /**
+     * Getter - Number Of Words
+     */
+    public int getWordCount()
+    {
+        return words.size();
+    }
+
+    /**
+     * Add Sentence - Counts the observations and transitions of a tagged sentence.
+     *
+     * @return Whether the sentence was counted (it is not if its words and tags do not match up).
+     */
+    public boolean add(TaggedSentence sentence)
+    {
+        // Checking to make sure that the size of both lists is the same and is at least 1.
+        if (sentence.getTags().isEmpty() || sentence.getTags().size() != sentence.getWords().size())
+        {
+            System.err.println("Invalid Input - Incorrect Training Data");
+            return false;
+        }
+
+        addObservations(sentence.getTags(), sentence.getWords());
+        addTransitions(sentence.getTags());
+        return true;
+    }
+
+    /**
+     * Add Observations - Counts each (tag, word) pair, where the lists are the same size.
+     */
+    public void addObservations(List<String> partsOfSpeech, List<String> sentence)
+    {
+        for (int i = 0; i < partsOfSpeech.size(); i += 1)
+            addObservation(tagId(partsOfSpeech.get(i)), wordId(sentence.get(i)), 1);
+    }
+
+    /**
+     * Add Transitions - Counts each transition in a sentence, starting from the start tag.
+     */
+    public void addTransitions(List<String> partsOfSpeech)
+    {
+        int previous = 0;
+
+        for (String state : partsOfSpeech)
+        {
+            int current = tagId(state);
+            transitionCounts[previous][current] = Math.addExact(transitionCounts[previous][current], 1);
+            transitionTotals[previous] += 1;
+            previous = current;
+        }
+    }
+
+    /**
+     * Merge - Adds every count in another table into this one.
+     *
+     * @param other The table to merge in (which is not changed).
+     * @return This table, so that merging can be used as a reduction.
+     * @throws ArithmeticException If a count would overflow an int (leaving this table partly merged).
+     */
+    public CountTable merge(CountTable other)
+    {
+        // Mapping the tag IDs of the other table to the tag IDs of this table.
+        int[] tagMapping = new int[other.tags.size()];
+        for (int t = 0; t < tagMapping.length; t += 1)
+            tagMapping[t] = tagId(other.tags.get(t));
+
+        for (int from = 0; from < tagMapping.length; from += 1)
+        {
+            int[] row = transitionCounts[tagMapping[from]];
+            for (int to = 0; to < tagMapping.length; to += 1)
+                row[tagMapping[to]] = Math.addExact(row[tagMapping[to]], other.transitionCounts[from][to]);
+
+            transitionTotals[tagMapping[from]] += other.transitionTotals[from];
+        }
+
+        // Adding the observation counts, word by word.
+        for (int w = 0; w < other.words.size(); w += 1)
+        {
+            int word = wordId(other.words.get(w));
+            int[] row = other.observationCounts[w];
+
+            for (int t = 0; t < row.length; t += 1)
+            {
+                if (row[t] != 0)
+                    addObservation(tagMapping[t], word, row[t]);
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Getter - Transition Count from one tag to another (zero if either tag was never seen).
+     */
+    public int getTransitionCount(String from, String to)
+    {
+        Integer fromId = tagIds.get(from);
+        Integer toId = tagIds.get(to);
+        return fromId == null || toId == null ? 0 : transitionCounts[fromId][toId];
+    }
+
+    /**
+     * Getter - Transition Total (the number of transitions out of a tag)
+     */
+    public long getTransitionTotal(String from)
+    {
+        Integer id = tagIds.get(from);
+        return id == null ? 0 : transitionTotals[id];
+    }
+
+    /**
+     * Getter - Observation Count of a word with a tag (zero if either was never seen).
+     */
+    public int getObservationCount(String tag, String word)
+    {
+        Integer tagId = tagIds.get(tag);
+        Integer wordId = wordIds.get(word);
+
+        if (tagId == null || wordId == null)
+            return 0;
+
+        int[] row = observationCounts[wordId];
+        return tagId < row.length ? row[tagId] : 0;
+    }
+
+    /**
+     * Getter - Observation Total (the number of words tagged with a tag)
+     */
+    public long getObservationTotal(String tag)
+    {
+        Integer id = tagIds.get(tag);
+        return id == null ? 0 : observationTotals[id];
+    }
+
+    /**
+     * For Each Transition - Passes each non-zero transition count to the consumer, as (from tag, to tag, count).
+     */
+    public void forEachTransition(CountConsumer consumer)
+    {
+        for (int from = 0; from < tags.size(); from += 1)
+        {
+            for (int to = 0; to < tags.size(); to += 1)
+            {
+                if (transitionCounts[from][to] != 0)
+                    consumer.accept(tags.get(from), tags.get(to), transitionCounts[from][to]);
+            }
+        }
+    }
+
+    /**
+     * For Each Observation - Passes each non-zero observation count to the consumer, as (tag, word, count).
+     */
+    public void forEachObservation(CountConsumer consumer)
+    {
+        for (int w = 0; w < words.size(); w += 1)
+        {
+            int[] row = observationCounts[w];
+
+            for (int t = 0; t < row.length; t += 1)
+            {
+                if (row[t] != 0)
+                    consumer.accept(tags.get(t), words.get(w), row[t]);
+            }
+        }
+    }
+
+    /**
+     * Add Transitions To - Adds the transition counts into a Map in the form of the HiddenMarkovModel transitionMap.
+     */
+    public void addTransitionsTo(Map<String, Map<String, Double>> transitionMap)
+    {
+        forEachTransition((from, to, count) -> addTo(transitionMap, from, to, count));
+    }
+
+    /**
+     * Add Observations To - Adds the observation counts into a Map in the form of the HiddenMarkovModel observationMap.
+     */
+    public void addObservationsTo(Map<String, Map<String, Double>> observationMap)
+    {
+        forEachObservation((tag, word, count) -> addTo(observationMap, tag, word, count));
+    }
+
+    /**
+     * Count Shards
+     * Splits a stream of sentences into shards of SHARD_SIZE sentences and counts each shard into its own table on the
+     * fork-join pool, merging the tables as they finish. Only a few shards are read ahead of the counting, so the whole
+     * stream never needs to be in memory.
+     *
+     * @param sentences The tagged sentences (for example, from a CorpusReader).
+     * @return The merged table of counts.
+     */
+    public static CountTable countShards(Iterator<TaggedSentence> sentences)
+    {
+        int maxInFlight = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+        Deque<CompletableFuture<CountTable>> inFlight = new ArrayDeque<>();
+        CountTable result = new CountTable();
+
+        while (sentences.hasNext())
+        {
+            // Reading the next shard.
+            List<TaggedSentence> shard = new ArrayList<>(SHARD_SIZE);
+            while (shard.size() < SHARD_SIZE && sentences.hasNext())
+                shard.add(sentences.next());
+
+            // Counting the shard in the background.
+            inFlight.add(CompletableFuture.supplyAsync(() ->
+            {
+                CountTable table = new CountTable();
+                for (TaggedSentence sentence : shard)
+                    table.add(sentence);
+
+                return table;
+            }));
+
+            // Merging the oldest shard if too many are being counted at once.
+            if (inFlight.size() >= maxInFlight)
+                result.merge(inFlight.removeFirst().join());
+        }
+
+        // Merging the rest of the shards.
+        while (!inFlight.isEmpty())
+            result.merge(inFlight.removeFirst().join());
+
+        return result;
+    }
+
+    /**
+     * Tag ID - Helper function that interns a tag, growing the transition matrix if the tag is new.
+     */
+    private int tagId(String tag)
+    {
+        Integer id = tagIds.get(tag);
+        if (id != null)
+            return id;
+
+        id = tags.size();
+        tags.add(tag);
+        tagIds.put(tag, id);
+
+        // Doubling the transition matrix when it is full.
+        if (id == transitionCounts.length)
+        {
+            int[][] grown = new int[2 * id][2 * id];
+            for (int i = 0; i < id; i += 1)
+                System.arraycopy(transitionCounts[i], 0, grown[i], 0, id);
+
+            transitionCounts = grown;
+            transitionTotals = Arrays.copyOf(transitionTotals, 2 * id);
+            observationTotals = Arrays.copyOf(observationTotals, 2 * id);
+        }
+
+        return id;
+    }
+
+    /**
+     * Word ID - Helper function that interns a word, growing the observation rows if the word is new.
+     */
+    private int wordId(String word)
+    {
+        Integer id = wordIds.get(word);
+        if (id != null)
+            return id;
+
+        id = words.size();
+        words.add(word);
+        wordIds.put(word, id);
+
+        if (id == observationCounts.length)
+            observationCounts = Arrays.copyOf(observationCounts, 2 * id);
+
+        observationCounts[id] = new int[0];
+        return id;
+    }
+
+    /**
+     * Add Observation - Helper function that adds to the count of a (tag, word) pair, growing the row if needed.
+     */
+    private void addObservation(int tag, int word, int count)
+    {
+        int[] row = observationCounts[word];
+
+        if (tag >= row.length)
+        {
+            row = Arrays.copyOf(row, tags.size());
+            observationCounts[word] = row;
+        }
+
+        row[tag] = Math.addExact(row[tag], count);
+        observationTotals[tag] += count;
+    }
+
+    /**
+     * Add To - Helper function that adds a count to an entry of a nested Map.
+     */
+    private static void addTo(Map<String, Map<String, Double>> map, String outer, String inner, double count)
+    {
+        map.computeIfAbsent(outer, key -> new HashMap<>()).merge(inner, count, Double::sum);
+    }
+}
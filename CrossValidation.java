@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Cross Validation
+ * Estimates how well models trained on a corpus tag new sentences, by k-fold cross-validation: the tagged sentences are
+ * dealt into k folds (sentence i into fold i % k), and for each fold a model is trained on the other folds and evaluated
+ * on that fold. The folds are trained and evaluated concurrently on the fork-join pool (each evaluation itself being
+ * split across the pool), and their evaluations are merged into one.
+ * <p>
+ * Several unseen penalties (or prune thresholds of the UnknownWordModel) can be compared in one run: the counts of a
+ * model do not depend on them, so each fold is trained once and then compiled and evaluated with each, rather than
+ * trained again for each. The folds may also be run one after another (for comparison).
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class CrossValidation
+{
+    /**
+     * Load Corpus - Reads every tagged sentence of a pair of files into memory (the folds are taken from it many times).
+     *
+     * @param sentencesFile The file path for the sentences.
+     * @param tagsFile      The file path for the tags.
+     */
+    public static List<TaggedSentence> loadCorpus(String sentencesFile, String tagsFile) throws IOException
+    {
+        List<TaggedSentence> corpus = new ArrayList<>();
+        try (CorpusReader reader = new CorpusReader(sentencesFile, tagsFile))
+        {
+            for (TaggedSentence sentence : reader)
+                corpus.add(sentence);
+        }
+
+        return corpus;
+    }
+
+    /**
+     * Cross Validate - Cross-validates models with one unseen penalty.
+     *
+     * @param corpus        The tagged sentences.
+     * @param folds         The number of folds (at least 2).
+     * @param unseenPenalty The log probability given to an observation never seen in training.
+     * @return The evaluations of every fold, merged.
+     */
+    public static Evaluation crossValidate(List<TaggedSentence> corpus, int folds, double unseenPenalty)
+    {
+        return crossValidate(corpus, folds, new double[]{unseenPenalty}).get(0);
+    }
+
+    /**
+     * Cross Validate - Cross-validates models with each of several unseen penalties, training each fold only once.
+     *
+     * @param corpus          The tagged sentences.
+     * @param folds           The number of folds (at least 2).
+     * @param unseenPenalties The unseen penalties to compare.
+     * @return The evaluations of every fold, merged, for each unseen penalty (in the same order).
+     */
+    public static List<Evaluation> crossValidate(List<TaggedSentence> corpus, int folds, double[] unseenPenalties)
+    {
+        return crossValidate(corpus, folds, markovModel ->
+        {
+            List<CompiledModel> models = new ArrayList<>(unseenPenalties.length);
+            for (double unseenPenalty : unseenPenalties)
+                models.add(new CompiledModel(markovModel, unseenPenalty));
+
+            return models;
+        }, false, true);
+    }
+
+    /**
+     * Cross Validate Prune Thresholds
+     * Cross-validates models with an UnknownWordModel at each of several prune thresholds, training each fold (and
+     * building its UnknownWordModel) only once.
+     *
+     * @param corpus          The tagged sentences.
+     * @param folds           The number of folds (at least 2).
+     * @param unseenPenalty   The log probability given to an observation never seen in training.
+     * @param pruneThresholds The prune thresholds of the UnknownWordModel to compare.
+     * @param concurrent      Whether to run the folds concurrently, rather than one after another.
+     * @return The evaluations of every fold, merged, for each prune threshold (in the same order).
+     */
+    public static List<Evaluation> crossValidatePruneThresholds(List<TaggedSentence> corpus, int folds,
+                                                                double unseenPenalty, double[] pruneThresholds,
+                                                                boolean concurrent)
+    {
+        return crossValidate(corpus, folds, markovModel ->
+        {
+            CompiledModel compiledModel = new CompiledModel(markovModel, unseenPenalty);
+            UnknownWordModel unknownWordModel = new UnknownWordModel(compiledModel, markovModel.getCounts());
+
+            List<CompiledModel> models = new ArrayList<>(pruneThresholds.length);
+            for (double pruneThreshold : pruneThresholds)
+                models.add(compiledModel.withUnknownWordModel(unknownWordModel.withPruneThreshold(pruneThreshold)));
+
+            return models;
+        }, true, concurrent);
+    }
+
+    /**
+     * Cross Validate - Helper function that trains a model on every fold but one, compiles it into each of the models to
+     * compare, and evaluates them on that fold, merging the evaluations of every fold for each model.
+     *
+     * @param compile      Compiles the trained model of a fold into each of the models to compare (always as many).
+     * @param retainCounts Whether the trained models keep their counts (which an UnknownWordModel is built from).
+     * @param concurrent   Whether to run the folds concurrently, rather than one after another on this thread.
+     */
+    private static List<Evaluation> crossValidate(List<TaggedSentence> corpus, int folds,
+                                                  Function<HiddenMarkovModel, List<CompiledModel>> compile,
+                                                  boolean retainCounts, boolean concurrent)
+    {
+        if (folds < 2 || folds > corpus.size())
+            throw new IllegalArgumentException("Invalid Number Of Folds: " + folds + " For " + corpus.size()
+                    + " Sentences");
+
+        List<Fold> tasks = new ArrayList<>(folds);
+        for (int fold = 0; fold < folds; fold += 1)
+            tasks.add(new Fold(corpus, folds, fold, compile, retainCounts));
+
+        // Training and evaluating the folds concurrently, or one at a time.
+        List<List<Evaluation>> foldEvaluations = new ArrayList<>(folds);
+        if (concurrent)
+        {
+            ForkJoinPool.commonPool().invoke(new RecursiveTask<Void>()
+            {
+                @Override
+                protected Void compute()
+                {
+                    ForkJoinTask.invokeAll(tasks);
+                    return null;
+                }
+            });
+
+            for (Fold task : tasks)
+                foldEvaluations.add(task.join());
+        }
+
+        else
+        {
+            for (Fold task : tasks)
+                foldEvaluations.add(task.compute());
+        }
+
+        int modelCount = foldEvaluations.get(0).size();
+        List<Evaluation> results = new ArrayList<>(modelCount);
+        for (int i = 0; i < modelCount; i += 1)
+        {
+            List<Evaluation> evaluations = new ArrayList<>(folds);
+            for (List<Evaluation> evaluation : foldEvaluations)
+                evaluations.add(evaluation.get(i));
+
+            results.add(Evaluation.merge(evaluations));
+        }
+
+        return results;
+    }
+
+    /**
+     * Fold - A fork-join task that trains a model on every fold but one, and evaluates it on that one as each of the
+     * models compared.
+     */
+    private static final class Fold extends RecursiveTask<List<Evaluation>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<TaggedSentence> corpus;
+        private final int folds;
+        private final int fold;
+        private final Function<HiddenMarkovModel, List<CompiledModel>> compile;
+        private final boolean retainCounts;
+
+        Fold(List<TaggedSentence> corpus, int folds, int fold, Function<HiddenMarkovModel, List<CompiledModel>> compile,
+             boolean retainCounts)
+        {
+            this.corpus = corpus;
+            this.folds = folds;
+            this.fold = fold;
+            this.compile = compile;
+            this.retainCounts = retainCounts;
+        }
+
+        @Override
+        protected List<Evaluation> compute()
+        {
+            // Dealing the sentences into the training set and this fold.
+            List<TaggedSentence> training = new ArrayList<>(corpus.size());
+            List<List<String>> observations = new ArrayList<>();
+            List<List<String>> testTags = new ArrayList<>();
+
+            for (int i = 0; i < corpus.size(); i += 1)
+            {
+                TaggedSentence sentence = corpus.get(i);
+                if (i % folds == fold)
+                {
+                    observations.add(sentence.getWords());
+                    testTags.add(sentence.getTags());
+                }
+
+                else
+                    training.add(sentence);
+            }
+
+            HiddenMarkovModel markovModel = new HiddenMarkovModel(retainCounts);
+            markovModel.train(training);
+
+            List<CompiledModel> models = compile.apply(markovModel);
+            List<Evaluation> evaluations = new ArrayList<>(models.size());
+            for (CompiledModel model : models)
+                evaluations.add(Evaluation.evaluate(model, observations, testTags));
+
+            return evaluations;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.Arrays;
+
+/**
+ * Decoder Buffers
+ * The arrays used by a Viterbi decoder for one sentence, kept for each thread and reused from one sentence to the next,
+ * so that nothing is allocated for each word: the scores of the current and next observations, the current and next
+ * states, the beam, and the back pointers, stored as shorts (so a back pointer may be at most Short.MAX_VALUE), with
+ * the scores as floats and ints as well, for the QuantizedModel. The states are the tags of the
+ * model, or for the TrigramModel, the pairs of tags.
+ * <p>
+ * Each thread has one set of buffers for each number of states (forThread), shared by every model and decoder of that
+ * size, so a thread tagging with many models (such as many QuantizedModels in one JVM) holds one set rather than one for
+ * each model. A decoder only reads the scores it has written for the sentence it is tagging, so sharing is safe as long
+ * as a decoder does not call another decoder of the same size while it is decoding.
+ * <p>
+ * The back pointers grow to fit the sentences the thread tags, but only up to RETAINED_WORDS words: a longer sentence is
+ * given back pointers of its own, which are dropped once it has been tagged, so a thread that once tagged a very long
+ * sentence does not hold on to the arrays for it for as long as it lives.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+class DecoderBuffers
+{
+    // The most words whose back pointers are kept from one sentence to the next, and the number to begin with.
+    static final int RETAINED_WORDS = 256;
+    private static final int INITIAL_WORDS = 64;
+
+    // The shared buffers of each thread, one set for each number of states (there are only ever a few sizes).
+    private static final ThreadLocal<DecoderBuffers[]> SHARED = ThreadLocal.withInitial(() -> new DecoderBuffers[0]);
+
+    final int stateCount;
+
+    // The scores of the current and next observations, indexed by state.
+    final double[] currentScores;
+    final double[] nextScores;
+
+    // The current and next states (for decoders that keep them as a list), and the states kept in the beam.
+    final int[] currentStates;
+    final int[] nextStates;
+    final int[] beam;
+
+    // The scores of the current and next observations as floats and as ints (for the quantized decoders).
+    final float[] currentFloats;
+    final float[] nextFloats;
+    final int[] currentInts;
+    final int[] nextInts;
+
+    // The counts of the last sentence decoded by this thread (for the decoders that count them): its unknown words, and
+    // the states expanded to the next observation (with the start state).
+    int unknownWords;
+    long statesExpanded;
+
+    // For observation i and state s, backPointers[i * S + s] is the best previous state (or what identifies it).
+    private short[] backPointers;
+
+    /**
+     * Constructor
+     *
+     * @param stateCount The number of states of the model (S).
+     */
+    DecoderBuffers(int stateCount)
+    {
+        this.stateCount = stateCount;
+        currentScores = new double[stateCount];
+        nextScores = new double[stateCount];
+        currentStates = new int[stateCount];
+        nextStates = new int[stateCount];
+        beam = new int[stateCount];
+        currentFloats = new float[stateCount];
+        nextFloats = new float[stateCount];
+        currentInts = new int[stateCount];
+        nextInts = new int[stateCount];
+        backPointers = new short[INITIAL_WORDS * stateCount];
+    }
+
+    /**
+     * For Thread - The calling thread's buffers for a number of states, shared by every model and decoder of that size.
+     *
+     * @param stateCount The number of states of the model (S).
+     */
+    static DecoderBuffers forThread(int stateCount)
+    {
+        DecoderBuffers[] shared = SHARED.get();
+        for (DecoderBuffers buffers : shared)
+        {
+            if (buffers.stateCount == stateCount)
+                return buffers;
+        }
+
+        // Adding a set of buffers for a size this thread has not decoded with before.
+        DecoderBuffers[] grown = Arrays.copyOf(shared, shared.length + 1);
+        grown[shared.length] = new DecoderBuffers(stateCount);
+        SHARED.set(grown);
+        return grown[shared.length];
+    }
+
+    /**
+     * Back Pointers
+     * The back pointers for a sentence with n words: the thread's own array, grown (up to RETAINED_WORDS words) if it is
+     * too small, or for a longer sentence a new array that is not kept.
+     *
+     * @param n The number of words in the sentence.
+     */
+    short[] backPointers(int n)
+    {
+        if (n * stateCount <= backPointers.length)
+            return backPointers;
+
+        if (n > RETAINED_WORDS)
+            return new short[n * stateCount];
+
+        int words = Math.min(RETAINED_WORDS, Math.max(n, 2 * backPointers.length / stateCount));
+        backPointers = new short[words * stateCount];
+        return backPointers;
+    }
+}
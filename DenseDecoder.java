@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dense Decoder
+ * The Viterbi algorithm written as a dense max-plus product. For each candidate tag of the next word, the best previous
+ * tag is found over every tag at once (with the scores of tags that are not candidates set to negative infinity), using
+ * a MaxPlus kernel over the column of transitions into the next tag. The transitions are stored transposed, indexed by
+ * [to tag][from tag], so that each such column is a contiguous array.
+ * <p>
+ * The scores and the tie-breaking are the same as in CompiledModel.tagSentence, so both give exactly the same tags. The
+ * kernel is the Vector API implementation if it is available (see MaxPlus), and otherwise the scalar loop.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class DenseDecoder
+{
+    private final CompiledModel model;
+    private final MaxPlus maxPlus;
+
+    // The transition scores, indexed by [to tag][from tag].
+    private final double[][] transitionsInto;
+
+    /**
+     * Constructor - Uses the best available MaxPlus kernel.
+     */
+    public DenseDecoder(CompiledModel model)
+    {
+        this(model, MaxPlus.best());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param model   The compiled model to decode with.
+     * @param maxPlus The kernel used for the inner step (for example, MaxPlus.SCALAR).
+     */
+    public DenseDecoder(CompiledModel model, MaxPlus maxPlus)
+    {
+        this.model = model;
+        this.maxPlus = maxPlus;
+
+        int tagCount = model.getTagCount();
+        double[][] transitions = model.transitions();
+
+        transitionsInto = new double[tagCount][tagCount];
+        for (int from = 0; from < tagCount; from += 1)
+        {
+            for (int to = 0; to < tagCount; to += 1)
+                transitionsInto[to][from] = transitions[from][to];
+        }
+
+    }
+
+    /**
+     * Getter - MaxPlus Kernel
+     */
+    public MaxPlus getMaxPlus()
+    {
+        return maxPlus;
+    }
+
+    /**
+     * Tag Sentence - Tags a sentence with parts of speech, giving the same tags as CompiledModel.tagSentence.
+     *
+     * @param sentence The sentence to tag with parts of speech.
+     */
+    public List<String> tagSentence(List<String> sentence)
+    {
+        // An empty sentence has no tags (and nothing to decode).
+        if (sentence.isEmpty())
+            return List.of();
+
+        int n = sentence.size();
+        int tagCount = model.getTagCount();
+
+        // Every score is negative infinity apart from those of the candidate tags of the current word.
+        DecoderBuffers buffers = DecoderBuffers.forThread(tagCount);
+        double[] currentScores = buffers.currentScores;
+        double[] nextScores = buffers.nextScores;
+        short[] backPointers = buffers.backPointers(n);
+
+        Arrays.fill(currentScores, Double.NEGATIVE_INFINITY);
+        Arrays.fill(nextScores, Double.NEGATIVE_INFINITY);
+
+        // Handling the first observation, which can only come from the start state.
+        double[] startScores = model.startScores();
+        int word = model.getWordId(sentence.get(0));
+        int[] currentStates = model.candidateTags(word, sentence.get(0));
+        double[] column = model.emissionColumn(word, sentence.get(0));
+
+        for (int current : currentStates)
+            currentScores[current] = startScores[current] + column[current];
+
+        // Cycling through the rest of the words in the sentence.
+        for (int i = 1; i < n; i += 1)
+        {
+            word = model.getWordId(sentence.get(i));
+            int[] nextStates = model.candidateTags(word, sentence.get(i));
+            column = model.emissionColumn(word, sentence.get(i));
+            int offset = i * tagCount;
+
+            for (int next : nextStates)
+            {
+                // If no previous state can reach the next state, the first candidate is used, as in CompiledModel.
+                int bestState = maxPlus.argMax(currentScores, transitionsInto[next], tagCount);
+                if (bestState < 0)
+                    bestState = currentStates[0];
+
+                nextScores[next] = currentScores[bestState] + transitionsInto[next][bestState] + column[next];
+                backPointers[offset + next] = (short) bestState;
+            }
+
+            // Clearing the current scores before swapping the arrays, so that only the next states have scores.
+            for (int current : currentStates)
+                currentScores[current] = Double.NEGATIVE_INFINITY;
+
+            double[] temp = currentScores;
+            currentScores = nextScores;
+            nextScores = temp;
+            currentStates = nextStates;
+        }
+
+        // Finding the best last state, according to the final scores.
+        int lastState = currentStates[0];
+        for (int current : currentStates)
+        {
+            if (currentScores[current] > currentScores[lastState])
+                lastState = current;
+        }
+
+        String[] path = new String[n];
+        for (int i = n - 1; i >= 0; i -= 1)
+        {
+            path[i] = model.getTag(lastState);
+            lastState = backPointers[i * tagCount + lastState];
+        }
+
+        return Arrays.asList(path);
+    }
+}
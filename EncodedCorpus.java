@@ -0,0 +1,552 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Encoded Corpus
+ * A pair of aligned sentences and tags files, encoded once into a compact binary file that later runs memory-map and
+ * read directly, rather than reading and splitting the text (and making a new String for every word) each time. The
+ * words and tags are each stored once, in a table, and the sentences as streams of word and tag IDs, so opening the
+ * corpus only decodes the tables: the sentences are Lists that read their IDs from the mapped file when asked, and give
+ * back the Strings of the tables.
+ * <p>
+ * The encoded file records the size and modification time of both text files, and open encodes the corpus again
+ * whenever they no longer match (or the encoded file is missing or damaged), so the encoded file is never out of date.
+ * <p>
+ * The file is laid out as follows (all numbers big-endian):
+ * <pre>
+ *     int    MAGIC, int VERSION
+ *     long   size of the sentences file, long its modification time (in milliseconds)
+ *     long   size of the tags file, long its modification time
+ *     int    number of tags T, int number of words W, int number of sentences S, int number of tokens N
+ *     T x    (short length, UTF-8 bytes)            the tag table
+ *     W x    (short length, UTF-8 bytes)            the vocabulary table
+ *     S + 1  ints                                   the offset of each sentence's first token (and of the end)
+ *     N      ints                                   the word ID of each token
+ *     N      ints                                   the tag ID of each token
+ *     long   CRC32 of everything before it
+ * </pre>
+ * The sentences are those a CorpusReader gives for the same files (so lines with mismatched words and tags are left out).
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class EncodedCorpus
+{
+    // The bytes "HMMC", marking the start of an encoded corpus file.
+    private static final int MAGIC = 0x484D4D43;
+
+    // The version of the format written by encode (and the only version read by open).
+    private static final int VERSION = 1;
+
+    // The extension added to the sentences file to name its encoded file, by default.
+    public static final String EXTENSION = ".corpus";
+
+    private final String[] tags;
+    private final String[] words;
+
+    // The offset of each sentence's first token, and the word and tag ID of each token, read from the mapped file.
+    private final IntBuffer offsets;
+    private final IntBuffer wordIds;
+    private final IntBuffer tagIds;
+
+    private final int sentenceCount;
+
+    /**
+     * Constructor - Helper constructor from the decoded tables and the mapped ID streams.
+     */
+    private EncodedCorpus(String[] tags, String[] words, IntBuffer offsets, IntBuffer wordIds, IntBuffer tagIds)
+    {
+        this.tags = tags;
+        this.words = words;
+        this.offsets = offsets;
+        this.wordIds = wordIds;
+        this.tagIds = tagIds;
+        sentenceCount = offsets.limit() - 1;
+    }
+
+    /**
+     * Open - Opens the encoded file next to the sentences file (named with EXTENSION), encoding it first if needed.
+     *
+     * @param sentencesFile The file path for the sentences.
+     * @param tagsFile      The file path for the tags.
+     */
+    public static EncodedCorpus open(String sentencesFile, String tagsFile) throws IOException
+    {
+        return open(sentencesFile, tagsFile, sentencesFile + EXTENSION);
+    }
+
+    /**
+     * Open
+     * Memory-maps an encoded file, first encoding the text files into it if it is missing, was encoded from different
+     * versions of the text files, or is damaged.
+     *
+     * @param sentencesFile The file path for the sentences.
+     * @param tagsFile      The file path for the tags.
+     * @param encodedFile   The file path of the encoded file.
+     */
+    public static EncodedCorpus open(String sentencesFile, String tagsFile, String encodedFile) throws IOException
+    {
+        long[] source = sourceStamp(sentencesFile, tagsFile);
+
+        if (new File(encodedFile).isFile())
+        {
+            try
+            {
+                EncodedCorpus corpus = read(encodedFile, source);
+                if (corpus != null)
+                    return corpus;
+            }
+
+            // Catching a damaged file (which is encoded again below).
+            catch (IOException e)
+            {
+                System.err.println("Error: " + e.getMessage() + " - Encoding Again");
+            }
+        }
+
+        encode(sentencesFile, tagsFile, encodedFile, source);
+
+        EncodedCorpus corpus = read(encodedFile, source);
+        if (corpus == null)
+            throw new IOException("Text Files Changed While Encoding " + encodedFile);
+
+        return corpus;
+    }
+
+    /**
+     * Getter - Number Of Sentences
+     */
+    public int getSentenceCount()
+    {
+        return sentenceCount;
+    }
+
+    /**
+     * Getter - Number Of Tokens (the words of every sentence)
+     */
+    public int getTokenCount()
+    {
+        return offsets.get(sentenceCount);
+    }
+
+    /**
+     * Getter - Number Of Tags
+     */
+    public int getTagCount()
+    {
+        return tags.length;
+    }
+
+    /**
+     * Getter - Number Of Words (the distinct words)
+     */
+    public int getWordCount()
+    {
+        return words.length;
+    }
+
+    /**
+     * Getter - Tag with a given ID.
+     */
+    public String getTag(int id)
+    {
+        return tags[id];
+    }
+
+    /**
+     * Getter - Word with a given ID.
+     */
+    public String getWord(int id)
+    {
+        return words[id];
+    }
+
+    /**
+     * Getter - Sentence Start (the offset of a sentence's first token)
+     */
+    public int sentenceStart(int sentence)
+    {
+        return offsets.get(sentence);
+    }
+
+    /**
+     * Getter - Sentence End (the offset just past a sentence's last token)
+     */
+    public int sentenceEnd(int sentence)
+    {
+        return offsets.get(sentence + 1);
+    }
+
+    /**
+     * Getter - Word ID of a token.
+     */
+    public int wordAt(int token)
+    {
+        return wordIds.get(token);
+    }
+
+    /**
+     * Getter - Tag ID of a token.
+     */
+    public int tagAt(int token)
+    {
+        return tagIds.get(token);
+    }
+
+    /**
+     * Sentences - The tagged sentences, as a List that reads each sentence from the mapped file when it is asked for.
+     */
+    public List<TaggedSentence> sentences()
+    {
+        return new View<>(sentence -> new TaggedSentence(words(sentence), tags(sentence)));
+    }
+
+    /**
+     * Sentence Words - The words of each sentence (as the List of sentences read by InputLibrary.loadSentences).
+     */
+    public List<List<String>> sentenceWords()
+    {
+        return new View<>(this::words);
+    }
+
+    /**
+     * Sentence Tags - The tags of each sentence (as the List of tag lines read by InputLibrary.loadTags).
+     */
+    public List<List<String>> sentenceTags()
+    {
+        return new View<>(this::tags);
+    }
+
+    /**
+     * Words - Helper function that gives the words of a sentence, read from the word IDs when asked for.
+     */
+    private List<String> words(int sentence)
+    {
+        return new Tokens(wordIds, words, offsets.get(sentence), offsets.get(sentence + 1));
+    }
+
+    /**
+     * Tags - Helper function that gives the tags of a sentence, read from the tag IDs when asked for.
+     */
+    private List<String> tags(int sentence)
+    {
+        return new Tokens(tagIds, tags, offsets.get(sentence), offsets.get(sentence + 1));
+    }
+
+    /**
+     * Source Stamp - Helper function that gives the size and modification time of both text files.
+     */
+    private static long[] sourceStamp(String sentencesFile, String tagsFile) throws IOException
+    {
+        Path sentences = Path.of(sentencesFile);
+        Path tags = Path.of(tagsFile);
+        return new long[]{Files.size(sentences), Files.getLastModifiedTime(sentences).toMillis(), Files.size(tags),
+                Files.getLastModifiedTime(tags).toMillis()};
+    }
+
+    /**
+     * Encode
+     * Helper function that reads the text files with a CorpusReader and writes the encoded file, first to a temporary
+     * file that then replaces the encoded file, so that a run stopped partway never leaves a half-written file behind.
+     */
+    private static void encode(String sentencesFile, String tagsFile, String encodedFile, long[] source)
+            throws IOException
+    {
+        List<String> tagTable = new ArrayList<>();
+        Map<String, Integer> tagTableIds = new HashMap<>();
+        List<String> wordTable = new ArrayList<>();
+        Map<String, Integer> wordTableIds = new HashMap<>();
+
+        int[] offsets = new int[1024];
+        int[] wordIds = new int[1 << 16];
+        int[] tagIds = new int[1 << 16];
+        int sentences = 0;
+        int tokens = 0;
+
+        try (CorpusReader corpus = new CorpusReader(sentencesFile, tagsFile))
+        {
+            TaggedSentence sentence;
+            while ((sentence = corpus.nextSentence()) != null)
+            {
+                if (sentences + 1 == offsets.length)
+                    offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+
+                int length = sentence.getWords().size();
+                if (tokens + length > wordIds.length)
+                {
+                    wordIds = Arrays.copyOf(wordIds, Math.max(2 * wordIds.length, tokens + length));
+                    tagIds = Arrays.copyOf(tagIds, wordIds.length);
+                }
+
+                offsets[sentences] = tokens;
+                for (int i = 0; i < length; i += 1)
+                {
+                    wordIds[tokens] = intern(sentence.getWords().get(i), wordTable, wordTableIds);
+                    tagIds[tokens] = intern(sentence.getTags().get(i), tagTable, tagTableIds);
+                    tokens += 1;
+                }
+
+                sentences += 1;
+            }
+        }
+
+        offsets[sentences] = tokens;
+
+        Path target = Path.of(encodedFile).toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        CRC32 checksum = new CRC32();
+
+        try
+        {
+            try (DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporary.toFile()), 1 << 16), checksum)))
+            {
+                // Writing the header.
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                for (long stamp : source)
+                    output.writeLong(stamp);
+
+                output.writeInt(tagTable.size());
+                output.writeInt(wordTable.size());
+                output.writeInt(sentences);
+                output.writeInt(tokens);
+
+                // Writing the tag and vocabulary tables.
+                for (String tag : tagTable)
+                    writeString(output, tag);
+
+                for (String word : wordTable)
+                    writeString(output, word);
+
+                // Writing the sentence offsets and the ID streams.
+                writeInts(output, offsets, sentences + 1);
+                writeInts(output, wordIds, tokens);
+                writeInts(output, tagIds, tokens);
+
+                // Writing the checksum of everything written so far.
+                output.flush();
+                output.writeLong(checksum.getValue());
+            }
+
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Read
+     * Helper function that memory-maps an encoded file, checking its version and checksum, and decodes its tables.
+     *
+     * @return The corpus, or null if the file was encoded from different versions of the text files.
+     */
+    private static EncodedCorpus read(String encodedFile, long[] source) throws IOException
+    {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Path.of(encodedFile), StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // Reading the header, and checking the text files have not changed since they were encoded.
+        if (buffer.limit() < 2 * Integer.BYTES + 4 * Long.BYTES + 4 * Integer.BYTES + Long.BYTES)
+            throw new IOException("Invalid Encoded Corpus - File Too Short");
+
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Invalid Encoded Corpus - Not An Encoded Corpus File");
+
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("Invalid Encoded Corpus - Unsupported Version " + version);
+
+        for (long stamp : source)
+        {
+            if (buffer.getLong() != stamp)
+                return null;
+        }
+
+        // Checking the checksum before reading anything else.
+        int end = buffer.limit() - Long.BYTES;
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.duplicate().position(0).limit(end));
+
+        if (checksum.getValue() != buffer.getLong(end))
+            throw new IOException("Invalid Encoded Corpus - Checksum Mismatch");
+
+        int tagCount = buffer.getInt();
+        int wordCount = buffer.getInt();
+        int sentences = buffer.getInt();
+        int tokens = buffer.getInt();
+
+        // Reading the tag and vocabulary tables.
+        String[] tags = new String[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            tags[t] = readString(buffer);
+
+        String[] words = new String[wordCount];
+        for (int w = 0; w < wordCount; w += 1)
+            words[w] = readString(buffer);
+
+        // Taking views of the offsets and ID streams, which stay in the mapped file.
+        IntBuffer offsets = ints(buffer, sentences + 1);
+        IntBuffer wordIds = ints(buffer, tokens);
+        IntBuffer tagIds = ints(buffer, tokens);
+
+        if (buffer.position() != end)
+            throw new IOException("Invalid Encoded Corpus - Wrong Length");
+
+        return new EncodedCorpus(tags, words, offsets, wordIds, tagIds);
+    }
+
+    /**
+     * Intern - Helper function that gives the ID of a String in a table, adding it to the table if it is new.
+     */
+    private static int intern(String string, List<String> table, Map<String, Integer> ids)
+    {
+        Integer id = ids.get(string);
+        if (id == null)
+        {
+            id = table.size();
+            table.add(string);
+            ids.put(string, id);
+        }
+
+        return id;
+    }
+
+    /**
+     * Write String - Helper function that writes a String as a short length followed by its UTF-8 bytes.
+     */
+    private static void writeString(DataOutputStream output, String string) throws IOException
+    {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF)
+            throw new IOException("Token Too Long To Encode: " + bytes.length + " Bytes");
+
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Read String - Helper function that reads a String written by writeString.
+     */
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write Ints - Helper function that writes the first count ints of an array.
+     */
+    private static void writeInts(DataOutputStream output, int[] values, int count) throws IOException
+    {
+        for (int i = 0; i < count; i += 1)
+            output.writeInt(values[i]);
+    }
+
+    /**
+     * Ints - Helper function that gives a view of the next count ints of the buffer, moving past them.
+     */
+    private static IntBuffer ints(ByteBuffer buffer, int count)
+    {
+        IntBuffer ints = buffer.slice(buffer.position(), count * Integer.BYTES).asIntBuffer();
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return ints;
+    }
+
+    /**
+     * Sentence Function - Gives something for a sentence, by its index.
+     */
+    private interface SentenceFunction<T>
+    {
+        T apply(int sentence);
+    }
+
+    /**
+     * View - A List of something for each sentence, made when it is asked for.
+     */
+    private final class View<T> extends AbstractList<T> implements RandomAccess
+    {
+        private final SentenceFunction<T> function;
+
+        View(SentenceFunction<T> function)
+        {
+            this.function = function;
+        }
+
+        @Override
+        public T get(int index)
+        {
+            if (index < 0 || index >= sentenceCount)
+                throw new IndexOutOfBoundsException("Sentence " + index + " Of " + sentenceCount);
+
+            return function.apply(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return sentenceCount;
+        }
+    }
+
+    /**
+     * Tokens - The words (or tags) of one sentence, read from the ID stream and looked up in the table when asked for.
+     */
+    private static final class Tokens extends AbstractList<String> implements RandomAccess
+    {
+        private final IntBuffer ids;
+        private final String[] table;
+        private final int start;
+        private final int end;
+
+        Tokens(IntBuffer ids, String[] table, int start, int end)
+        {
+            this.ids = ids;
+            this.table = table;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String get(int index)
+        {
+            if (index < 0 || index >= end - start)
+                throw new IndexOutOfBoundsException("Token " + index + " Of " + (end - start));
+
+            return table[ids.get(start + index)];
+        }
+
+        @Override
+        public int size()
+        {
+            return end - start;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Evaluation
+ * The scores of a tagger on a set of tagged sentences: the accuracy over all the words, over the words seen in training
+ * (known) and over those never seen (unknown), the full confusion matrix of given tags against predicted tags, and the
+ * precision and recall of each tag. All the accuracies, precisions and recalls are percentages.
+ * <p>
+ * The sentences are tagged and scored in parallel on the fork-join pool, splitting them into ranges as tagAll does. Each
+ * range counts into its own primitive arrays and counters, and the counts of the two halves of a range are added when
+ * both are done, so the threads never share a counter. Evaluations of different sentences (for example, the folds of a
+ * cross-validation) can be merged into one.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class Evaluation
+{
+    // The number of sentences below which a range is scored directly, rather than split further.
+    private static final int SPLIT_THRESHOLD = 64;
+
+    // The tags of the confusion matrix (the model's tags, and then any given tags the model never saw), and their IDs.
+    private final List<String> tags;
+    private final Map<String, Integer> tagIds;
+
+    // The confusion matrix, with the count of words given tag g and predicted tag p at [g * tags.size() + p].
+    private final long[] confusion;
+
+    private final long sentences;
+    private final long correctSentences;
+    private final long knownWords;
+    private final long correctKnownWords;
+    private final long unknownWords;
+    private final long correctUnknownWords;
+
+    /**
+     * Counts - The counts of one range of sentences (only ever touched by the thread scoring that range).
+     */
+    private static final class Counts
+    {
+        private final long[] confusion;
+        private long sentences;
+        private long correctSentences;
+        private long knownWords;
+        private long correctKnownWords;
+        private long unknownWords;
+        private long correctUnknownWords;
+
+        Counts(int tagCount)
+        {
+            confusion = new long[tagCount * tagCount];
+        }
+
+        /**
+         * Add - Adds the counts of another range to these.
+         */
+        void add(Counts other)
+        {
+            for (int i = 0; i < confusion.length; i += 1)
+                confusion[i] += other.confusion[i];
+
+            sentences += other.sentences;
+            correctSentences += other.correctSentences;
+            knownWords += other.knownWords;
+            correctKnownWords += other.correctKnownWords;
+            unknownWords += other.unknownWords;
+            correctUnknownWords += other.correctUnknownWords;
+        }
+    }
+
+    /**
+     * Constructor - Helper constructor from the tags and the counts.
+     */
+    private Evaluation(List<String> tags, Counts counts)
+    {
+        this.tags = Collections.unmodifiableList(tags);
+        this.tagIds = new HashMap<>();
+        for (int i = 0; i < tags.size(); i += 1)
+            tagIds.put(tags.get(i), i);
+
+        confusion = counts.confusion;
+        sentences = counts.sentences;
+        correctSentences = counts.correctSentences;
+        knownWords = counts.knownWords;
+        correctKnownWords = counts.correctKnownWords;
+        unknownWords = counts.unknownWords;
+        correctUnknownWords = counts.correctUnknownWords;
+    }
+
+    /**
+     * Evaluate - Scores the exact Viterbi tags of a compiled model.
+     *
+     * @param model        The compiled model.
+     * @param observations The List of sentences (containing a List of Strings) of the words.
+     * @param testTags     The List of tag groups (containing a List of Strings) of the correct tags.
+     */
+    public static Evaluation evaluate(CompiledModel model, List<List<String>> observations,
+                                      List<List<String>> testTags)
+    {
+        return evaluate(model, model::tagSentence, observations, testTags);
+    }
+
+    /**
+     * Evaluate
+     * Scores any tagger that tags with the tags of a compiled model (for example, a ViterbiTagger with a beam, or a
+     * QuantizedModel), the model deciding which words are known.
+     *
+     * @param model        The compiled model whose tags the tagger uses, and whose words count as known.
+     * @param tagger       The tagger, which must be safe to call from many threads.
+     * @param observations The List of sentences (containing a List of Strings) of the words.
+     * @param testTags     The List of tag groups (containing a List of Strings) of the correct tags.
+     * @throws IllegalArgumentException If a sentence and its tags differ in length.
+     */
+    public static Evaluation evaluate(CompiledModel model, Function<List<String>, List<String>> tagger,
+                                      List<List<String>> observations, List<List<String>> testTags)
+    {
+        if (observations.size() != testTags.size())
+            throw new IllegalArgumentException("Mismatched Sentences And Tags: " + observations.size() + " Sentences, "
+                    + testTags.size() + " Tag Lines");
+
+        // The model's tags keep their IDs, and the given tags the model never saw are added after them.
+        List<String> tags = new ArrayList<>();
+        Map<String, Integer> tagIds = new HashMap<>();
+        for (int i = 0; i < model.getTagCount(); i += 1)
+        {
+            tags.add(model.getTag(i));
+            tagIds.put(model.getTag(i), i);
+        }
+
+        for (List<String> line : testTags)
+        {
+            for (String tag : line)
+            {
+                if (!tagIds.containsKey(tag))
+                {
+                    tagIds.put(tag, tags.size());
+                    tags.add(tag);
+                }
+            }
+        }
+
+        // Random access is needed to split the work into ranges, so copying the input if it does not have it.
+        List<List<String>> words = observations instanceof RandomAccess ? observations : new ArrayList<>(observations);
+        List<List<String>> given = testTags instanceof RandomAccess ? testTags : new ArrayList<>(testTags);
+
+        Counts counts = ForkJoinPool.commonPool().invoke(
+                new ScoreRange(model, tagger, words, given, tagIds, 0, words.size()));
+
+        return new Evaluation(tags, counts);
+    }
+
+    /**
+     * Merge - Combines the evaluations of different sentences (for example, the folds of a cross-validation) into one.
+     */
+    public static Evaluation merge(List<Evaluation> evaluations)
+    {
+        List<String> tags = new ArrayList<>();
+        Map<String, Integer> tagIds = new HashMap<>();
+        for (Evaluation evaluation : evaluations)
+        {
+            for (String tag : evaluation.tags)
+            {
+                if (!tagIds.containsKey(tag))
+                {
+                    tagIds.put(tag, tags.size());
+                    tags.add(tag);
+                }
+            }
+        }
+
+        int tagCount = tags.size();
+        Counts counts = new Counts(tagCount);
+
+        for (Evaluation evaluation : evaluations)
+        {
+            // Moving each count to the IDs of the merged tags.
+            int size = evaluation.tags.size();
+            int[] ids = new int[size];
+            for (int i = 0; i < size; i += 1)
+                ids[i] = tagIds.get(evaluation.tags.get(i));
+
+            for (int g = 0; g < size; g += 1)
+            {
+                for (int p = 0; p < size; p += 1)
+                    counts.confusion[ids[g] * tagCount + ids[p]] += evaluation.confusion[g * size + p];
+            }
+
+            counts.sentences += evaluation.sentences;
+            counts.correctSentences += evaluation.correctSentences;
+            counts.knownWords += evaluation.knownWords;
+            counts.correctKnownWords += evaluation.correctKnownWords;
+            counts.unknownWords += evaluation.unknownWords;
+            counts.correctUnknownWords += evaluation.correctUnknownWords;
+        }
+
+        return new Evaluation(tags, counts);
+    }
+
+    /**
+     * Getter - Tags (the rows and columns of the confusion matrix)
+     */
+    public List<String> getTags()
+    {
+        return tags;
+    }
+
+    /**
+     * Getter - Count (the number of words with a given tag that were tagged with a predicted tag)
+     */
+    public long getCount(String givenTag, String predictedTag)
+    {
+        Integer given = tagIds.get(givenTag);
+        Integer predicted = tagIds.get(predictedTag);
+        return given == null || predicted == null ? 0 : confusion[given * tags.size() + predicted];
+    }
+
+    /**
+     * Getter - Words (the number of words scored)
+     */
+    public long getWords()
+    {
+        return knownWords + unknownWords;
+    }
+
+    /**
+     * Getter - Correct (the number of words tagged correctly)
+     */
+    public long getCorrect()
+    {
+        return correctKnownWords + correctUnknownWords;
+    }
+
+    /**
+     * Getter - Accuracy (over every word)
+     */
+    public double getAccuracy()
+    {
+        return percentage(getCorrect(), getWords());
+    }
+
+    /**
+     * Getter - Known Words (the number of words seen in training)
+     */
+    public long getKnownWords()
+    {
+        return knownWords;
+    }
+
+    /**
+     * Getter - Known Accuracy (over the words seen in training)
+     */
+    public double getKnownAccuracy()
+    {
+        return percentage(correctKnownWords, knownWords);
+    }
+
+    /**
+     * Getter - Unknown Words (the number of words never seen in training)
+     */
+    public long getUnknownWords()
+    {
+        return unknownWords;
+    }
+
+    /**
+     * Getter - Unknown Accuracy (over the words never seen in training)
+     */
+    public double getUnknownAccuracy()
+    {
+        return percentage(correctUnknownWords, unknownWords);
+    }
+
+    /**
+     * Getter - Sentence Accuracy (the percentage of sentences with every word tagged correctly)
+     */
+    public double getSentenceAccuracy()
+    {
+        return percentage(correctSentences, sentences);
+    }
+
+    /**
+     * Getter - Precision of a tag (of the words predicted to have the tag, the percentage that do)
+     */
+    public double getPrecision(String tag)
+    {
+        Integer id = tagIds.get(tag);
+        if (id == null)
+            return 0.0;
+
+        long predicted = 0;
+        for (int g = 0; g < tags.size(); g += 1)
+            predicted += confusion[g * tags.size() + id];
+
+        return percentage(confusion[id * tags.size() + id], predicted);
+    }
+
+    /**
+     * Getter - Recall of a tag (of the words that have the tag, the percentage predicted to have it)
+     */
+    public double getRecall(String tag)
+    {
+        Integer id = tagIds.get(tag);
+        if (id == null)
+            return 0.0;
+
+        long given = 0;
+        for (int p = 0; p < tags.size(); p += 1)
+            given += confusion[id * tags.size() + p];
+
+        return percentage(confusion[id * tags.size() + id], given);
+    }
+
+    /**
+     * To String - The accuracies, one per line.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("Words: %d%nAccuracy: %.3f%nKnown Words: %d%nKnown Accuracy: %.3f%nUnknown Words: %d%n"
+                        + "Unknown Accuracy: %.3f%nSentence Accuracy: %.3f", getWords(), getAccuracy(), knownWords,
+                getKnownAccuracy(), unknownWords, getUnknownAccuracy(), getSentenceAccuracy());
+    }
+
+    /**
+     * Tag Table - The number of words, precision and recall of each tag that occurs, one tag per line (most frequent
+     * first).
+     */
+    public String tagTable()
+    {
+        int tagCount = tags.size();
+        long[] given = new long[tagCount];
+        long[] predicted = new long[tagCount];
+        for (int g = 0; g < tagCount; g += 1)
+        {
+            for (int p = 0; p < tagCount; p += 1)
+            {
+                given[g] += confusion[g * tagCount + p];
+                predicted[p] += confusion[g * tagCount + p];
+            }
+        }
+
+        Integer[] order = new Integer[tagCount];
+        for (int i = 0; i < tagCount; i += 1)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(given[b], given[a]));
+
+        StringBuilder table = new StringBuilder(String.format("%-8s %10s %10s %10s", "Tag", "Words", "Precision",
+                "Recall"));
+        for (int id : order)
+        {
+            if (given[id] == 0 && predicted[id] == 0)
+                continue;
+
+            long correct = confusion[id * tagCount + id];
+            table.append(String.format("%n%-8s %10d %10.3f %10.3f", tags.get(id), given[id],
+                    percentage(correct, predicted[id]), percentage(correct, given[id])));
+        }
+
+        return table.toString();
+    }
+
+    /**
+     * Confusion Table - The most frequent mistakes (a given tag predicted as another), one per line.
+     *
+     * @param limit The largest number of mistakes to list.
+     */
+    public String confusionTable(int limit)
+    {
+        int tagCount = tags.size();
+        List<Integer> mistakes = new ArrayList<>();
+        for (int i = 0; i < confusion.length; i += 1)
+        {
+            if (i / tagCount != i % tagCount && confusion[i] > 0)
+                mistakes.add(i);
+        }
+
+        mistakes.sort((a, b) -> Long.compare(confusion[b], confusion[a]));
+
+        StringBuilder table = new StringBuilder(String.format("%-8s %-8s %10s %10s", "Given", "Predicted", "Words",
+                "Of Errors"));
+        long errors = getWords() - getCorrect();
+        for (int i = 0; i < Math.min(limit, mistakes.size()); i += 1)
+        {
+            int cell = mistakes.get(i);
+            table.append(String.format("%n%-8s %-8s %10d %10.3f", tags.get(cell / tagCount), tags.get(cell % tagCount),
+                    confusion[cell], percentage(confusion[cell], errors)));
+        }
+
+        return table.toString();
+    }
+
+    /**
+     * Percentage - Helper function that gives a count as a percentage of a total (0 if the total is 0).
+     */
+    private static double percentage(long count, long total)
+    {
+        return total == 0 ? 0.0 : count * 100.0 / total;
+    }
+
+    /**
+     * Score Range - A fork-join task that tags and scores the sentences in [start, end), splitting the range in half
+     * until it is small enough to score directly.
+     */
+    private static final class ScoreRange extends RecursiveTask<Counts>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final CompiledModel model;
+        private final Function<List<String>, List<String>> tagger;
+        private final List<List<String>> observations;
+        private final List<List<String>> testTags;
+        private final Map<String, Integer> tagIds;
+        private final int start;
+        private final int end;
+
+        ScoreRange(CompiledModel model, Function<List<String>, List<String>> tagger, List<List<String>> observations,
+                   List<List<String>> testTags, Map<String, Integer> tagIds, int start, int end)
+        {
+            this.model = model;
+            this.tagger = tagger;
+            this.observations = observations;
+            this.testTags = testTags;
+            this.tagIds = tagIds;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Counts compute()
+        {
+            // If the range is small enough, scoring each sentence in the range.
+            if (end - start <= SPLIT_THRESHOLD)
+            {
+                int tagCount = tagIds.size();
+                Counts counts = new Counts(tagCount);
+
+                for (int i = start; i < end; i += 1)
+                    score(observations.get(i), testTags.get(i), tagCount, counts);
+
+                return counts;
+            }
+
+            // Otherwise, splitting the range in half, scoring both halves, and adding their counts.
+            int middle = (start + end) >>> 1;
+            ScoreRange left = new ScoreRange(model, tagger, observations, testTags, tagIds, start, middle);
+            ScoreRange right = new ScoreRange(model, tagger, observations, testTags, tagIds, middle, end);
+            invokeAll(left, right);
+
+            Counts counts = left.join();
+            counts.add(right.join());
+            return counts;
+        }
+
+        /**
+         * Score - Helper function that tags one sentence and counts its words.
+         */
+        private void score(List<String> sentence, List<String> given, int tagCount, Counts counts)
+        {
+            if (sentence.size() != given.size())
+                throw new IllegalArgumentException("Mismatched Sentence And Tags: " + sentence.size() + " Words, "
+                        + given.size() + " Tags");
+
+            List<String> predicted = tagger.apply(sentence);
+            boolean allCorrect = true;
+
+            for (int j = 0; j < sentence.size(); j += 1)
+            {
+                int g = tagIds.get(given.get(j));
+                Integer p = tagIds.get(predicted.get(j));
+                if (p == null)
+                    throw new IllegalStateException("Predicted Tag Not In The Model: " + predicted.get(j));
+
+                boolean correct = g == p;
+                counts.confusion[g * tagCount + p] += 1;
+
+                if (model.getWordId(sentence.get(j)) >= 0)
+                {
+                    counts.knownWords += 1;
+                    if (correct)
+                        counts.correctKnownWords += 1;
+                }
+
+                else
+                {
+                    counts.unknownWords += 1;
+                    if (correct)
+                        counts.correctUnknownWords += 1;
+                }
+
+                allCorrect &= correct;
+            }
+
+            counts.sentences += 1;
+            if (allCorrect)
+                counts.correctSentences += 1;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.util.List;
+
+/**
+ * Forward Backward
+ * Finds the posterior probability of each tag for each word of a sentence: the probability, over every path through the
+ * lattice, that the path goes through that tag at that word. Where the Viterbi algorithm takes the best previous state,
+ * the forward algorithm sums over the previous states, and the backward algorithm does the same from the end of the
+ * sentence. The posterior of tag t at word i is then forward[i][t] + backward[i][t] - (the log probability of the whole
+ * sentence).
+ * <p>
+ * Everything is kept in log space, and each sum is done with logSumExp (the largest value is subtracted before taking
+ * the exponentials, so that nothing underflows). As in CompiledModel.tagSentence, only the candidate tags of each word
+ * are scored, so a tag outside the tag dictionary has a posterior of zero.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class ForwardBackward
+{
+    private final CompiledModel model;
+
+    /**
+     * Posteriors - The posterior probabilities of each tag for each word of a sentence.
+     */
+    public static class Posteriors
+    {
+        private final CompiledModel model;
+        private final double[][] probabilities;
+        private final double logLikelihood;
+
+        Posteriors(CompiledModel model, double[][] probabilities, double logLikelihood)
+        {
+            this.model = model;
+            this.probabilities = probabilities;
+            this.logLikelihood = logLikelihood;
+        }
+
+        /**
+         * Getter - Size (the number of words)
+         */
+        public int size()
+        {
+            return probabilities.length;
+        }
+
+        /**
+         * Getter - Log Likelihood (the log of the total score of every path through the sentence)
+         */
+        public double getLogLikelihood()
+        {
+            return logLikelihood;
+        }
+
+        /**
+         * Getter - Probability of a tag at a word (zero for a tag that was never seen in training).
+         */
+        public double getProbability(int word, String tag)
+        {
+            int id = model.getTagId(tag);
+            return id < 0 ? 0.0 : probabilities[word][id];
+        }
+
+        /**
+         * Getter - Probabilities of every tag (indexed by tag ID) at a word.
+         */
+        public double[] getProbabilities(int word)
+        {
+            return probabilities[word].clone();
+        }
+
+        /**
+         * Getter - Best Tag at a word (the tag with the largest posterior).
+         */
+        public String getBestTag(int word)
+        {
+            return model.getTag(bestTagId(word));
+        }
+
+        /**
+         * Getter - Confidence at a word (the posterior of the best tag).
+         */
+        public double getConfidence(int word)
+        {
+            return probabilities[word][bestTagId(word)];
+        }
+
+        /**
+         * Best Tag ID - Helper function that finds the tag with the largest posterior at a word.
+         */
+        private int bestTagId(int word)
+        {
+            double[] row = probabilities[word];
+            int best = 0;
+            for (int t = 1; t < row.length; t += 1)
+            {
+                if (row[t] > row[best])
+                    best = t;
+            }
+
+            return best;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param model The compiled model to score with.
+     */
+    public ForwardBackward(CompiledModel model)
+    {
+        this.model = model;
+    }
+
+    /**
+     * Posteriors - Runs the forward and backward algorithms over a sentence.
+     *
+     * @param sentence The sentence (not empty).
+     */
+    public Posteriors posteriors(List<String> sentence)
+    {
+        int n = sentence.size();
+        int tagCount = model.getTagCount();
+        double[] startScores = model.startScores();
+        double[][] transitions = model.transitions();
+
+        // Finding the candidate tags and observation column of each word once, for both passes.
+        int[][] states = new int[n][];
+        double[][] columns = new double[n][];
+        for (int i = 0; i < n; i += 1)
+        {
+            int word = model.getWordId(sentence.get(i));
+            states[i] = model.candidateTags(word, sentence.get(i));
+            columns[i] = model.emissionColumn(word, sentence.get(i));
+        }
+
+        double[][] forward = new double[n][tagCount];
+        double[][] backward = new double[n][tagCount];
+        double[] terms = new double[tagCount];
+
+        // The forward pass: the log of the total score of every path from the start to each state.
+        for (int t : states[0])
+            forward[0][t] = startScores[t] + columns[0][t];
+
+        for (int i = 1; i < n; i += 1)
+        {
+            for (int next : states[i])
+            {
+                int count = 0;
+                for (int current : states[i - 1])
+                    terms[count++] = forward[i - 1][current] + transitions[current][next];
+
+                forward[i][next] = logSumExp(terms, count) + columns[i][next];
+            }
+        }
+
+        // The backward pass: the log of the total score of every path from each state to the end (zero at the end).
+        for (int i = n - 2; i >= 0; i -= 1)
+        {
+            for (int current : states[i])
+            {
+                int count = 0;
+                for (int next : states[i + 1])
+                    terms[count++] = transitions[current][next] + columns[i + 1][next] + backward[i + 1][next];
+
+                backward[i][current] = logSumExp(terms, count);
+            }
+        }
+
+        // The log likelihood of the sentence is the total score of every path that reaches the end.
+        int count = 0;
+        for (int t : states[n - 1])
+            terms[count++] = forward[n - 1][t];
+
+        double logLikelihood = logSumExp(terms, count);
+
+        // Turning the sums into posterior probabilities (all zero if no path can reach the end at all).
+        double[][] probabilities = new double[n][tagCount];
+        if (logLikelihood > Double.NEGATIVE_INFINITY)
+        {
+            for (int i = 0; i < n; i += 1)
+            {
+                for (int t : states[i])
+                    probabilities[i][t] = Math.exp(forward[i][t] + backward[i][t] - logLikelihood);
+            }
+        }
+
+        return new Posteriors(model, probabilities, logLikelihood);
+    }
+
+    /**
+     * Log Sum Exp
+     * The log of the sum of the exponentials of the first length values, computed as max + log(sum(exp(value - max))),
+     * so that the largest exponential is exactly 1 and nothing overflows or underflows to zero. Both passes are simple
+     * loops over a contiguous array, which the JIT compiler can unroll and vectorize.
+     *
+     * @return The log of the sum, or negative infinity if every value is negative infinity (or there are none).
+     */
+    static double logSumExp(double[] values, int length)
+    {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i += 1)
+            max = Math.max(max, values[i]);
+
+        if (max == Double.NEGATIVE_INFINITY)
+            return max;
+
+        double sum = 0.0;
+        for (int i = 0; i < length; i += 1)
+            sum += Math.exp(values[i] - max);
+
+        return max + Math.log(sum);
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * Hidden Markov Model
@@ -14,6 +15,10 @@ import java.util.*;
  * (here tag to word, with weights). Probabilities are computed for the tags: for each tag, the frequencies of the transitions
  * out are divided by the total number of transitions out, and the frequencies of the words it tags are divided by the total
  * number of words it tags.
+ * <p>
+ * By default, training replaces the counts in the Maps with log probabilities. A model created with retainCounts instead
+ * keeps the raw counts (and the totals for each tag) in a CountTable, so that more tagged sentences can be added at any
+ * time. The log probabilities are then only recomputed, when the Maps are next read, for the rows (tags) that changed.
  *
  * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
  */
@@ -28,13 +33,37 @@ public class HiddenMarkovModel
     private Map<String, Map<String, Double>> transitionMap;
     private Map<String, Map<String, Double>> observationMap;
 
+    // The number of words in each shard counted by trainObservations.
+    private static final int SHARD_TOKENS = 1 << 16;
+
+    /* When counts are retained, the raw counts are kept here, and the Maps only cache the log probabilities. The dirty
+    sets hold the rows of each Map whose counts have changed since the log probabilities were last computed.
+     */
+    private final CountTable counts;
+    private final Set<String> dirtyTransitions;
+    private final Set<String> dirtyObservations;
+
     /**
      * Constructor - Initializes the transitionMap and observationMap.
      */
     public HiddenMarkovModel()
+    {
+        this(false);
+    }
+
+    /**
+     * Constructor - Initializes the transitionMap and observationMap, and the CountTable if the counts are retained.
+     *
+     * @param retainCounts Whether to keep the raw counts, so that the model can be trained incrementally.
+     */
+    public HiddenMarkovModel(boolean retainCounts)
     {
         transitionMap = new HashMap<>();
         observationMap = new HashMap<>();
+
+        counts = retainCounts ? new CountTable() : null;
+        dirtyTransitions = new HashSet<>();
+        dirtyObservations = new HashSet<>();
     }
 
     /**
@@ -42,6 +71,7 @@ public class HiddenMarkovModel
      */
     public Map<String, Map<String, Double>> getTransitionMap()
     {
+        refresh(transitionMap, dirtyTransitions);
         return transitionMap;
     }
 
@@ -50,9 +80,69 @@ public class HiddenMarkovModel
      */
     public Map<String, Map<String, Double>> getObservationMap()
     {
+        refresh(observationMap, dirtyObservations);
         return observationMap;
     }
 
+    /**
+     * Getter - Count Table (null unless the counts are retained)
+     */
+    public CountTable getCounts()
+    {
+        return counts;
+    }
+
+    /**
+     * Copy
+     * A new model with the same counts (and so the same probabilities), which can be trained further without changing
+     * this one. Only a model that retains its counts can be copied.
+     */
+    public HiddenMarkovModel copy()
+    {
+        if (counts == null)
+            throw new IllegalStateException("Only A Model That Retains Its Counts Can Be Copied");
+
+        HiddenMarkovModel copy = new HiddenMarkovModel(true);
+        copy.addCounts(counts);
+        return copy;
+    }
+
+    /**
+     * Add Sentence
+     * Adds a single tagged sentence to a model that retains its counts, without recounting anything seen before. The
+     * sentence is counted straight into the retained CountTable (rather than into a table of its own, which is then
+     * merged), and only the rows of its tags are marked dirty.
+     *
+     * @param sentence The tagged sentence.
+     * @throws IllegalStateException If the model does not retain its counts.
+     */
+    public void addSentence(TaggedSentence sentence)
+    {
+        if (counts == null)
+            throw new IllegalStateException("Only A Model That Retains Its Counts Can Add A Sentence");
+
+        if (!counts.add(sentence))
+            return;
+
+        // Making sure each entry of the sentence is in its Map, and marking its row as dirty.
+        List<String> partsOfSpeech = sentence.getTags();
+        List<String> words = sentence.getWords();
+        String previous = "#";
+
+        for (int i = 0; i < partsOfSpeech.size(); i += 1)
+        {
+            String state = partsOfSpeech.get(i);
+
+            observationMap.computeIfAbsent(state, key -> new HashMap<>()).putIfAbsent(words.get(i), Double.NaN);
+            dirtyObservations.add(state);
+
+            transitionMap.computeIfAbsent(previous, key -> new HashMap<>()).putIfAbsent(state, Double.NaN);
+            dirtyTransitions.add(previous);
+
+            previous = state;
+        }
+    }
+
     /**
      * Train Observations
      * Making a pass through the training data to count the number of times we see each observation.
@@ -69,47 +159,20 @@ public class HiddenMarkovModel
             return;
         }
 
-        // Cycling through the list of the parts of speech.
-        for (int i = 0; i < partsOfSpeech.size(); i += 1)
-        {
-            // For each state (part of speech) in the list...
-            String state = partsOfSpeech.get(i);
-
-            // If the observationMap does not contain the state...
-            if (!observationMap.containsKey(state))
-                observationMap.put(state, new HashMap<>()); // Insert a new Map into the observationMap.
-
-            // Extracting a given Map from the observationMap.
-            Map<String, Double> map = observationMap.get(state);
-
-            // Checking to see if the map contains the word associated with the tag.
-            if (!map.containsKey(words.get(i)))
-                map.put(words.get(i), 0.0); // If not, insert a new value into the map.
-
-            // Increase the frequency count by one for a given word in the map.
-            map.put(words.get(i), map.get(words.get(i)) + 1.0);
-        }
-
-        // Cycling through the states (parts of speech) in the observationMap.
-        for (String state : observationMap.keySet())
+        // Counting the observations in shards of SHARD_TOKENS words, in parallel, and merging the counts.
+        int shardCount = (partsOfSpeech.size() + SHARD_TOKENS - 1) / SHARD_TOKENS;
+        CountTable newCounts = IntStream.range(0, shardCount).parallel().mapToObj(shard ->
         {
-            double totalInstances = 0;
+            int start = shard * SHARD_TOKENS;
+            int end = Math.min(start + SHARD_TOKENS, partsOfSpeech.size());
 
-            // Cycling through the words in the keySet of the inner Map.
-            for (String word : observationMap.get(state).keySet())
-            {
-                // Increasing the number of total instances by the value for a given word.
-                totalInstances += observationMap.get(state).get(word);
-            }
+            CountTable table = new CountTable();
+            table.addObservations(partsOfSpeech.subList(start, end), words.subList(start, end));
+            return table;
+        }).reduce(CountTable::merge).orElseGet(CountTable::new);
 
-            // Cycling through the words in the keySet of the inner Map.
-            for (String word : observationMap.get(state).keySet())
-            {
-                // Normalizing each state's counts to probabilities, converting to log probabilities.
-                double logScore = Math.log(observationMap.get(state).get(word) / totalInstances);
-                observationMap.get(state).put(word, logScore);
-            }
-        }
+        // Adding the counts to the observationMap, and normalizing them to log probabilities.
+        addCounts(newCounts);
     }
 
     /**
@@ -127,55 +190,138 @@ public class HiddenMarkovModel
             return;
         }
 
-        // Cycling through the outer List.
-        for (List<String> partsOfSpeech : partsOfSpeechTags)
+        // Counting the transitions in shards of sentences, in parallel, and merging the counts.
+        int shardCount = (partsOfSpeechTags.size() + CountTable.SHARD_SIZE - 1) / CountTable.SHARD_SIZE;
+        CountTable newCounts = IntStream.range(0, shardCount).parallel().mapToObj(shard ->
         {
-            String previous = "#";
+            int start = shard * CountTable.SHARD_SIZE;
+            int end = Math.min(start + CountTable.SHARD_SIZE, partsOfSpeechTags.size());
+
+            CountTable table = new CountTable();
+            for (List<String> partsOfSpeech : partsOfSpeechTags.subList(start, end))
+                table.addTransitions(partsOfSpeech);
+
+            return table;
+        }).reduce(CountTable::merge).orElseGet(CountTable::new);
+
+        // Adding the counts to the transitionMap, and normalizing them to log probabilities.
+        addCounts(newCounts);
+    }
 
-            // Cycling through the list of the parts of speech.
-            for (int i = 0; i < partsOfSpeech.size(); i += 1)
+    /**
+     * Train
+     * Making a single pass through a stream of tagged sentences, counting both the observations and the transitions, and
+     * only normalizing the counts to log probabilities once all the sentences have been seen. The stream is counted in
+     * shards on all the available cores, and only a few shards need to be held in memory at a time.
+     *
+     * @param sentences The tagged sentences (for example, from a CorpusReader).
+     */
+    public void train(Iterable<TaggedSentence> sentences)
+    {
+        // Counting the sentences in shards, in parallel, and merging the counts.
+        CountTable newCounts = CountTable.countShards(sentences.iterator());
+
+        // Adding the counts to the Maps, and normalizing them to log probabilities.
+        addCounts(newCounts);
+    }
+
+    /**
+     * Add Counts
+     * Helper function that adds a table of new counts to the model. Without retained counts, the counts are added to the
+     * Maps, which are normalized to log probabilities straight away. With retained counts, the counts are merged into the
+     * CountTable, and only the rows that changed are marked to be normalized again when the Maps are next read.
+     */
+    private void addCounts(CountTable table)
+    {
+        if (counts == null)
+        {
+            // Normalizing a Map only if the table has counts for it (as trainObservations and trainTransitions each
+            // count one half of the model).
+            if (table.getWordCount() > 0)
             {
-                // For each state (part of speech) in the list...
-                String state = partsOfSpeech.get(i);
+                table.addObservationsTo(observationMap);
+                normalize(observationMap);
+            }
 
-                // If the transitionMap does not contain the state...
-                if (!transitionMap.containsKey(previous))
-                    transitionMap.put(previous, new HashMap<>()); // Insert a new Map into the transitionMap.
+            if (table.getTransitionTotal("#") > 0)
+            {
+                table.addTransitionsTo(transitionMap);
+                normalize(transitionMap);
+            }
+
+            return;
+        }
 
-                // Extracting a given Map from the transitionMap, based on the previous state.
-                Map<String, Double> map = transitionMap.get(previous);
+        counts.merge(table);
 
-                // Checking to see if the map contains the tag (associated with the transition).
-                if (!map.containsKey(state))
-                    map.put(state, 0.0); // If not, insert a new value into the map.
+        // Making sure each changed entry is in its Map, and marking its row as dirty.
+        table.forEachObservation((tag, word, count) ->
+        {
+            observationMap.computeIfAbsent(tag, key -> new HashMap<>()).putIfAbsent(word, Double.NaN);
+            dirtyObservations.add(tag);
+        });
 
-                // Increase the frequency count by one for a given word in the map.
-                map.put(state, map.get(state) + 1.0);
+        table.forEachTransition((from, to, count) ->
+        {
+            transitionMap.computeIfAbsent(from, key -> new HashMap<>()).putIfAbsent(to, Double.NaN);
+            dirtyTransitions.add(from);
+        });
+    }
 
-                // Update the previous state.
-                previous = state;
+    /**
+     * Refresh
+     * Helper function that recomputes the log probabilities of the dirty rows of a Map from the retained counts.
+     */
+    private void refresh(Map<String, Map<String, Double>> map, Set<String> dirty)
+    {
+        if (dirty.isEmpty())
+            return;
+
+        boolean transitions = map == transitionMap;
+
+        for (String state : dirty)
+        {
+            double totalInstances = transitions ? counts.getTransitionTotal(state) : counts.getObservationTotal(state);
+
+            // Normalizing each count in the row to a probability, converting to a log probability.
+            for (Map.Entry<String, Double> entry : map.get(state).entrySet())
+            {
+                int count = transitions ? counts.getTransitionCount(state, entry.getKey())
+                        : counts.getObservationCount(state, entry.getKey());
+
+                entry.setValue(Math.log(count / totalInstances));
             }
         }
 
-        // Cycling through the states (parts of speech) in the transitionMap.
-        for (String state : transitionMap.keySet())
+        dirty.clear();
+    }
+
+    /**
+     * Normalize
+     * Helper function that converts the counts in each inner Map into log probabilities: for each state, the frequency of
+     * each key is divided by the total frequency of the keys, and the log is taken.
+     */
+    private static void normalize(Map<String, Map<String, Double>> countMap)
+    {
+        // Cycling through the states (parts of speech) in the Map.
+        for (String state : countMap.keySet())
         {
             double totalInstances = 0;
 
-            // Cycling through the tags in the keySet of the inner Map.
-            for (String transition : transitionMap.get(state).keySet())
+            // Cycling through the keys in the keySet of the inner Map.
+            for (String key : countMap.get(state).keySet())
             {
-                // Increasing the number of total instances by the value for a given tag.
-                totalInstances += transitionMap.get(state).get(transition);
+                // Increasing the number of total instances by the value for a given key.
+                totalInstances += countMap.get(state).get(key);
             }
 
-            // Cycling through the tags in the keySet of the inner Map.
-            for (String transition : transitionMap.get(state).keySet())
+            // Cycling through the keys in the keySet of the inner Map.
+            for (String key : countMap.get(state).keySet())
             {
                 // Normalizing each state's counts to probabilities, converting to log probabilities.
-                double logScore = Math.log(transitionMap.get(state).get(transition) / totalInstances);
-                transitionMap.get(state).put(transition, logScore);
+                double logScore = Math.log(countMap.get(state).get(key) / totalInstances);
+                countMap.get(state).put(key, logScore);
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -1,60 +1,25 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Input Library
  * Class used to load the sentences and corresponding tags from given files.
+ * <p>
+ * The whole file is loaded into memory. For large corpora, the CorpusReader streams aligned sentences and tags instead.
  *
  * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
  */
 public class InputLibrary
 {
-    // A list of lists is used to store both the sentences and tags, line by line.
-    static List<List<String>> sentences;
-    static List<List<String>> tags;
-
-    static BufferedReader sentencesInput;
-    static BufferedReader tagsInput;
-
     /**
      * Load Sentences
      * Takes in a file, and outputs a list of lists containing strings of the words in each sentence.
      */
     public static List<List<String>> loadSentences(String filename)
     {
-        // Creating a new ArrayList to hold the interior lists.
-        sentences = new ArrayList<>();
-
-        try
-        {
-            // Initializing the BufferedReader with the appropriate file.
-            sentencesInput = new BufferedReader(new FileReader(filename));
-
-            String line;
-            while ((line = sentencesInput.readLine()) != null && line.length() > 0) // Cycling through the input.
-            {
-                // Creating a new list containing the strings in the sentence, which are separated by spaces.
-                List<String> sentence = List.of(line.split(" "));
-
-                // Making every word lower case.
-                for (String item : sentence)
-                    item.toLowerCase();
-
-                // Adding the list containing the strings to the larger list.
-                sentences.add(sentence);
-            }
-        }
-
-        // Catching any IOException.
-        catch (IOException e)
-        {
-            System.err.println("Error: " + e.getMessage());
-        }
-
-        return sentences;
+        return loadLines(filename);
     }
 
     /**
@@ -62,37 +27,32 @@ public class InputLibrary
      * Takes in a file, and outputs a list of lists containing strings of the tags.
      */
     public static List<List<String>> loadTags(String filename)
+    {
+        return loadLines(filename);
+    }
+
+    /**
+     * Load Lines - Helper function that reads every non-empty line of a file, split into its tokens.
+     */
+    private static List<List<String>> loadLines(String filename)
     {
         // Creating a new ArrayList to hold the interior lists.
-        tags = new ArrayList<>();
+        List<List<String>> lines = new ArrayList<>();
 
-        try
+        // Reading the file with a TokenReader, which is closed once we are done.
+        try (TokenReader input = new TokenReader(filename))
         {
-            // Initializing the BufferedReader with the appropriate file.
-            tagsInput = new BufferedReader(new FileReader(filename));
-
-            String line;
-            while ((line = tagsInput.readLine()) != null && line.length() > 0) // Cycling through the input.
-            {
-                // Creating a new list containing the strings in the sentence, which are separated by spaces.
-                List<String> tagList = List.of(line.split(" "));
-
-                // Making every tag lower case.
-                for (String item : tagList)
-                    item.toLowerCase();
-
-                // Adding the list containing the strings to the larger list.
-                tags.add(tagList);
-            }
+            // Adding the list containing the strings in each line to the larger list.
+            for (List<String> line : input)
+                lines.add(line);
         }
 
         // Catching any IOException.
-        catch (IOException e)
+        catch (IOException | UncheckedIOException e)
         {
             System.err.println("Error: " + e.getMessage());
         }
 
-        return tags;
+        return lines;
     }
 }
-
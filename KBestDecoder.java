@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * K-Best Decoder
+ * Finds the k best tag sequences for a sentence, with their scores, rather than only the best one. This is the Viterbi
+ * algorithm with a list of up to k entries for each state at each word, in place of a single score and back pointer.
+ * Each entry is (score, previous state, rank of the entry in the previous state's list), and the list for a state is the
+ * k best of every entry of every previous state, plus the transition. Following the back pointers from the k best
+ * entries at the last word gives the k best paths.
+ * <p>
+ * As in CompiledModel.tagSentence, only the candidate tags of each word are scored. The first path has the same score as
+ * the path found by the Viterbi algorithm. Only possible paths (with a score above negative infinity) are kept, so if the
+ * sentence has fewer than k possible paths (for example, when a transition it would need was never seen in training),
+ * fewer than k paths are returned, and none at all if no path is possible.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class KBestDecoder
+{
+    private final CompiledModel model;
+
+    /**
+     * Scored Path - A tag sequence and its score (the log probability of the path and the sentence together).
+     */
+    public static class ScoredPath
+    {
+        private final List<String> tags;
+        private final double score;
+
+        ScoredPath(List<String> tags, double score)
+        {
+            this.tags = tags;
+            this.score = score;
+        }
+
+        /**
+         * Getter - Tags
+         */
+        public List<String> getTags()
+        {
+            return tags;
+        }
+
+        /**
+         * Getter - Score
+         */
+        public double getScore()
+        {
+            return score;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%.3f %s", score, tags);
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param model The compiled model to decode with.
+     */
+    public KBestDecoder(CompiledModel model)
+    {
+        this.model = model;
+    }
+
+    /**
+     * Best Paths - The k best tag sequences for a sentence, best first (fewer if there are fewer than k possible paths,
+     * and none for an empty sentence).
+     *
+     * @param sentence The sentence.
+     * @param k        The number of paths (at least 1).
+     */
+    public List<ScoredPath> bestPaths(List<String> sentence, int k)
+    {
+        if (sentence.isEmpty())
+            return List.of();
+
+        int n = sentence.size();
+        int tagCount = model.getTagCount();
+        double[] startScores = model.startScores();
+        double[][] transitions = model.transitions();
+
+        /* The entry lists, with the entries of state t at word i in [(i * T + t) * k, (i * T + t) * k + counts[i * T + t]),
+        best first.
+         */
+        double[] scores = new double[n * tagCount * k];
+        int[] previousStates = new int[n * tagCount * k];
+        int[] previousRanks = new int[n * tagCount * k];
+        int[] counts = new int[n * tagCount];
+
+        // Handling the first observation, which only has one entry for each state (from the start state).
+        int word = model.getWordId(sentence.get(0));
+        int[] currentStates = model.candidateTags(word, sentence.get(0));
+        double[] column = model.emissionColumn(word, sentence.get(0));
+
+        for (int t : currentStates)
+        {
+            scores[t * k] = startScores[t] + column[t];
+            counts[t] = scores[t * k] == Double.NEGATIVE_INFINITY ? 0 : 1;
+        }
+
+        for (int i = 1; i < n; i += 1)
+        {
+            word = model.getWordId(sentence.get(i));
+            int[] nextStates = model.candidateTags(word, sentence.get(i));
+            column = model.emissionColumn(word, sentence.get(i));
+
+            for (int next : nextStates)
+            {
+                int list = i * tagCount + next;
+                int base = list * k;
+
+                // Inserting each entry of each previous state into the sorted list, if it is among the k best.
+                for (int current : currentStates)
+                {
+                    int previousList = (i - 1) * tagCount + current;
+                    double transition = transitions[current][next];
+
+                    for (int rank = 0; rank < counts[previousList]; rank += 1)
+                    {
+                        double score = scores[previousList * k + rank] + transition;
+                        int size = counts[list];
+
+                        // Since the previous entries are sorted, none of the rest can get in either (or be possible).
+                        if (score == Double.NEGATIVE_INFINITY || size == k && score <= scores[base + k - 1])
+                            break;
+
+                        int position = size == k ? k - 1 : size;
+                        while (position > 0 && score > scores[base + position - 1])
+                        {
+                            scores[base + position] = scores[base + position - 1];
+                            previousStates[base + position] = previousStates[base + position - 1];
+                            previousRanks[base + position] = previousRanks[base + position - 1];
+                            position -= 1;
+                        }
+
+                        scores[base + position] = score;
+                        previousStates[base + position] = current;
+                        previousRanks[base + position] = rank;
+                        counts[list] = Math.min(size + 1, k);
+                    }
+                }
+
+                // Adding the observation score (the same for every entry, so the order is unchanged).
+                for (int rank = 0; rank < counts[list]; rank += 1)
+                    scores[base + rank] += column[next];
+
+                // Dropping the entries that are impossible after all (if the word cannot be observed in the state).
+                if (column[next] == Double.NEGATIVE_INFINITY)
+                    counts[list] = 0;
+            }
+
+            currentStates = nextStates;
+        }
+
+        // Finding the k best entries at the last word, as (state, rank) pairs, best first.
+        int[] bestStates = new int[k];
+        int[] bestRanks = new int[k];
+        double[] bestScores = new double[k];
+        Arrays.fill(bestScores, Double.NEGATIVE_INFINITY);
+        int found = 0;
+
+        for (int t : currentStates)
+        {
+            int list = (n - 1) * tagCount + t;
+            for (int rank = 0; rank < counts[list]; rank += 1)
+            {
+                double score = scores[list * k + rank];
+                if (score == Double.NEGATIVE_INFINITY || found == k && score <= bestScores[k - 1])
+                    break;
+
+                int position = found == k ? k - 1 : found;
+                while (position > 0 && score > bestScores[position - 1])
+                {
+                    bestScores[position] = bestScores[position - 1];
+                    bestStates[position] = bestStates[position - 1];
+                    bestRanks[position] = bestRanks[position - 1];
+                    position -= 1;
+                }
+
+                bestScores[position] = score;
+                bestStates[position] = t;
+                bestRanks[position] = rank;
+                found = Math.min(found + 1, k);
+            }
+        }
+
+        // Following the back pointers from each of the best entries.
+        List<ScoredPath> paths = new ArrayList<>(found);
+        for (int p = 0; p < found; p += 1)
+        {
+            String[] path = new String[n];
+            int state = bestStates[p];
+            int rank = bestRanks[p];
+
+            for (int i = n - 1; i >= 0; i -= 1)
+            {
+                path[i] = model.getTag(state);
+                int entry = (i * tagCount + state) * k + rank;
+                state = previousStates[entry];
+                rank = previousRanks[entry];
+            }
+
+            paths.add(new ScoredPath(Arrays.asList(path), bestScores[p]));
+        }
+
+        return paths;
+    }
+}
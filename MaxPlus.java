@@ -0,0 +1,61 @@
+/**
+ * Max Plus
+ * The inner step of the Viterbi algorithm, written over dense arrays: given the scores of every state at observation i-1
+ * and the transition scores from every state into one next state, find the state for which score + transition is the
+ * largest. This is a "max-plus" product of a vector and a column, and is the step the DenseDecoder spends its time in.
+ * <p>
+ * Ties go to the lowest index, as in the scalar loop, so that every implementation finds exactly the same state. The
+ * scalar implementation is always available. The Vector API implementation (VectorMaxPlus, in the vector directory) is
+ * used instead if it was compiled and the jdk.incubator.vector module is present:
+ * <pre>
+ *     javac --add-modules jdk.incubator.vector -d out *.java vector/*.java
+ *     java --add-modules jdk.incubator.vector -cp out ...
+ * </pre>
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public interface MaxPlus
+{
+    // The scalar implementation, a single loop over the states.
+    MaxPlus SCALAR = (scores, transitions, length) ->
+    {
+        double bestScore = Double.NEGATIVE_INFINITY;
+        int bestState = -1;
+
+        for (int state = 0; state < length; state += 1)
+        {
+            double score = scores[state] + transitions[state];
+            if (score > bestScore)
+            {
+                bestScore = score;
+                bestState = state;
+            }
+        }
+
+        return bestState;
+    };
+
+    /**
+     * Arg Max - Finds the (lowest) index of the largest scores[i] + transitions[i], for i in [0, length).
+     *
+     * @return The index, or -1 if every sum is negative infinity.
+     */
+    int argMax(double[] scores, double[] transitions, int length);
+
+    /**
+     * Best - The Vector API implementation if it is available, and otherwise the scalar one.
+     */
+    static MaxPlus best()
+    {
+        try
+        {
+            return (MaxPlus) Class.forName("VectorMaxPlus").getDeclaredConstructor().newInstance();
+        }
+
+        // Either the class was not compiled, or the jdk.incubator.vector module is missing at run time.
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Model Registry
+ * Holds the model used for tagging as a sequence of numbered, immutable versions behind an atomic reference. A new model
+ * can be trained or loaded on any thread and then published in a single step, while other threads keep tagging: each
+ * tagging call reads the current version once and uses only that version, so it is never given a half-built model or a
+ * mix of two versions. The versions published before the current one are kept (up to a limit), so that the registry can
+ * be rolled back to the previous version.
+ * <p>
+ * A version holds the tagger (with its compiled model) and, if there is one, the Hidden Markov Model it was compiled
+ * from, which must retain its counts. That model is never handed out: getMarkovModel gives a copy of it, which can be
+ * trained further and published as a new version without changing the published one.
+ * <p>
+ * A Hidden Markov Model that retains its counts holds every (tag, word) count of its corpus in Maps, as well as the log
+ * probabilities, several times the size of the compiled model, so only the MARKOV_HISTORY most recent earlier versions
+ * keep theirs. The older versions keep only their tagger: they can still be rolled back to and tag, but have no Markov model
+ * to copy, as for a model loaded from a snapshot.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class ModelRegistry
+{
+    // The default number of earlier versions kept for rollback.
+    public static final int DEFAULT_HISTORY = 8;
+
+    // The number of earlier versions (the most recent ones) that keep their Hidden Markov Model.
+    public static final int MARKOV_HISTORY = 1;
+
+    private final int historyLimit;
+
+    // The current version (null until the first is published).
+    private final AtomicReference<Version> current = new AtomicReference<>();
+
+    // The earlier versions, most recent first (only changed while holding the registry's lock).
+    private final Deque<Version> history = new ArrayDeque<>();
+    private int nextNumber = 1;
+
+    /**
+     * Version - One published model, with its number, description and the time it was published.
+     */
+    public static final class Version
+    {
+        private final int number;
+        private final ViterbiTagger tagger;
+        private final HiddenMarkovModel markovModel;
+        private final String description;
+        private final long publishedMillis;
+
+        Version(int number, ViterbiTagger tagger, HiddenMarkovModel markovModel, String description,
+                long publishedMillis)
+        {
+            this.number = number;
+            this.tagger = tagger;
+            this.markovModel = markovModel;
+            this.description = description;
+            this.publishedMillis = publishedMillis;
+        }
+
+        /**
+         * Getter - Number (1 for the first version published, and one more for each after)
+         */
+        public int getNumber()
+        {
+            return number;
+        }
+
+        /**
+         * Getter - Tagger
+         */
+        public ViterbiTagger getTagger()
+        {
+            return tagger;
+        }
+
+        /**
+         * Getter - Markov Model
+         * A copy of the Hidden Markov Model the version was compiled from, so that changing it cannot change the
+         * published version (null for a model loaded from a snapshot, or an old version that no longer keeps it).
+         */
+        public HiddenMarkovModel getMarkovModel()
+        {
+            return markovModel == null ? null : markovModel.copy();
+        }
+
+        /**
+         * Has Markov Model - Whether the version has a Hidden Markov Model to copy (without copying it).
+         */
+        public boolean hasMarkovModel()
+        {
+            return markovModel != null;
+        }
+
+        /**
+         * Getter - Description
+         */
+        public String getDescription()
+        {
+            return description;
+        }
+
+        /**
+         * Getter - Published Millis (the time the version was published, from System.currentTimeMillis)
+         */
+        public long getPublishedMillis()
+        {
+            return publishedMillis;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Version " + number + " (" + description + ")";
+        }
+    }
+
+    /**
+     * Versioned Tags - The tags of a sentence, with the version that tagged it.
+     */
+    public static final class VersionedTags
+    {
+        private final int version;
+        private final List<String> tags;
+
+        VersionedTags(int version, List<String> tags)
+        {
+            this.version = version;
+            this.tags = tags;
+        }
+
+        /**
+         * Getter - Version (the number of the version that tagged the sentence)
+         */
+        public int getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * Getter - Tags
+         */
+        public List<String> getTags()
+        {
+            return tags;
+        }
+    }
+
+    /**
+     * Constructor - Keeps the default number of earlier versions.
+     */
+    public ModelRegistry()
+    {
+        this(DEFAULT_HISTORY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param historyLimit The number of earlier versions kept for rollback.
+     */
+    public ModelRegistry(int historyLimit)
+    {
+        this.historyLimit = historyLimit;
+    }
+
+    /**
+     * Getter - Current Version (null if none has been published)
+     */
+    public Version current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Publish - Makes a new model the current version, keeping the old current version for rollback.
+     *
+     * @param tagger      The tagger for the new model.
+     * @param markovModel The model it was compiled from (null if there is none), which must retain its counts, and must
+     *                    not be changed from now on.
+     * @param description What the model is (for example, where it was trained or loaded from).
+     * @return The new version.
+     * @throws IllegalArgumentException If the Hidden Markov Model does not retain its counts (and so cannot be copied).
+     */
+    public synchronized Version publish(ViterbiTagger tagger, HiddenMarkovModel markovModel, String description)
+    {
+        if (markovModel != null && markovModel.getCounts() == null)
+            throw new IllegalArgumentException("Only A Model That Retains Its Counts Can Be Published");
+
+        Version version = new Version(nextNumber, tagger, markovModel, description, System.currentTimeMillis());
+        nextNumber += 1;
+
+        Version previous = current.getAndSet(version);
+        if (previous != null)
+        {
+            history.addFirst(previous);
+            if (history.size() > historyLimit)
+                history.removeLast();
+
+            // Dropping the Hidden Markov Model of the version that has just fallen out of the MARKOV_HISTORY.
+            if (history.size() > MARKOV_HISTORY)
+            {
+                List<Version> versions = new ArrayList<>(history);
+                Version old = versions.get(MARKOV_HISTORY);
+                if (old.markovModel != null)
+                {
+                    versions.set(MARKOV_HISTORY, new Version(old.number, old.tagger, null, old.description,
+                            old.publishedMillis));
+                    history.clear();
+                    history.addAll(versions);
+                }
+            }
+        }
+
+        return version;
+    }
+
+    /**
+     * Rollback - Makes the previous version current again (the rolled back version is dropped).
+     *
+     * @return The version that is now current.
+     * @throws IllegalStateException If there is no earlier version.
+     */
+    public synchronized Version rollback()
+    {
+        if (history.isEmpty())
+            throw new IllegalStateException("No Earlier Version To Roll Back To");
+
+        Version previous = history.removeFirst();
+        current.set(previous);
+        return previous;
+    }
+
+    /**
+     * Reconfigure
+     * Replaces the tagger of the current version and of every earlier version with a differently configured tagger for
+     * the same model (for example, with new metrics or a new cache), keeping their numbers.
+     */
+    public synchronized void reconfigure(UnaryOperator<ViterbiTagger> configure)
+    {
+        List<Version> reconfigured = new ArrayList<>(history.size());
+        for (Version version : history)
+            reconfigured.add(reconfigure(version, configure));
+
+        history.clear();
+        history.addAll(reconfigured);
+
+        Version version = current.get();
+        if (version != null)
+            current.set(reconfigure(version, configure));
+    }
+
+    /**
+     * Getter - History (the earlier versions, most recent first)
+     */
+    public synchronized List<Version> history()
+    {
+        return new ArrayList<>(history);
+    }
+
+    /**
+     * Tag Sentence - Tags a sentence with the current version, giving back the number of the version with the tags.
+     *
+     * @throws IllegalStateException If no version has been published.
+     */
+    public VersionedTags tagSentence(List<String> sentence)
+    {
+        Version version = current.get();
+        if (version == null)
+            throw new IllegalStateException("No Model Published");
+
+        return new VersionedTags(version.number, version.tagger.tagSentence(sentence));
+    }
+
+    /**
+     * Reconfigure - Helper function that gives a copy of a version with a reconfigured tagger.
+     */
+    private static Version reconfigure(Version version, UnaryOperator<ViterbiTagger> configure)
+    {
+        return new Version(version.number, configure.apply(version.tagger), version.markovModel, version.description,
+                version.publishedMillis);
+    }
+}
@@ -0,0 +1,339 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Model Snapshot
+ * Saves a CompiledModel to a compact binary file, and loads it back by memory-mapping the file, so that a tagger can be
+ * ready to tag without reading and counting the training text again. A loaded model tags exactly as the saved one did,
+ * since every score is stored as the same double, and the statistics of its UnknownWordModel (if it has one) are stored
+ * with it.
+ * <p>
+ * The file is laid out as follows (all numbers big-endian):
+ * <pre>
+ *     int    MAGIC, int VERSION
+ *     int    number of tags T, int number of words W, double unseen penalty
+ *     T x    (short length, UTF-8 bytes)            the tag table
+ *     W x    (short length, UTF-8 bytes)            the vocabulary table
+ *     T      doubles                                the transitions from the start tag
+ *     T x T  doubles                                the transitions, row by row
+ *     T      doubles                                the observation column for unknown words
+ *     W x    (short n, n x (short tag, double))     the observations seen in training for each word
+ *     byte   1 if an unknown word model follows, 0 if not
+ *     double prune threshold, int cache capacity, double theta, double log word probability
+ *     T      doubles                                the log tag priors
+ *     S x T  doubles                                the tag probabilities of each shape
+ *     int    number of suffixes N
+ *     N x    (short length, UTF-8 key, short n, n x (short tag, int count))  the suffix counts
+ *     long   CRC32 of everything before it
+ * </pre>
+ * Observations not listed for a word are given the unseen penalty. The unknown word model (everything after the byte)
+ * is only written if the model has one, and a snapshot of version 1 (from before it was added) ends at the observations;
+ * such a snapshot is still loaded, giving unknown words the unseen penalty.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class ModelSnapshot
+{
+    // The bytes "HMMS", marking the start of a snapshot file.
+    private static final int MAGIC = 0x484D4D53;
+
+    // The version of the format written by save (load also reads version 1, which has no unknown word model).
+    private static final int VERSION = 2;
+
+    /**
+     * Save - Writes a compiled model to a file (replacing it all at once, so the file is never left half written).
+     *
+     * @param model    The compiled model.
+     * @param filename The file path to write.
+     */
+    public static void save(CompiledModel model, String filename) throws IOException
+    {
+        CRC32 checksum = new CRC32();
+
+        // Writing to a temporary file and moving it into place, so that a failed save leaves no partial file behind.
+        Path target = Path.of(filename).toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+        try
+        {
+            try (DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporary.toFile()), 1 << 16), checksum)))
+            {
+                int tagCount = model.getTagCount();
+                String[] words = model.words();
+                double unseenPenalty = model.getUnseenPenalty();
+
+                // Writing the header.
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(tagCount);
+                output.writeInt(words.length);
+                output.writeDouble(unseenPenalty);
+
+                // Writing the tag and vocabulary tables.
+                for (int t = 0; t < tagCount; t += 1)
+                    writeString(output, model.getTag(t));
+
+                for (String word : words)
+                    writeString(output, word);
+
+                // Writing the transitions.
+                writeDoubles(output, model.startScores());
+                for (double[] row : model.transitions())
+                    writeDoubles(output, row);
+
+                writeDoubles(output, model.unknownEmissions());
+
+                // Writing only the observations that differ from the unseen penalty, word by word.
+                for (int w = 0; w < words.length; w += 1)
+                {
+                    double[] column = model.emissionColumn(w);
+
+                    int seen = 0;
+                    for (double score : column)
+                    {
+                        if (score != unseenPenalty)
+                            seen += 1;
+                    }
+
+                    output.writeShort(seen);
+                    for (int t = 0; t < tagCount; t += 1)
+                    {
+                        if (column[t] != unseenPenalty)
+                        {
+                            output.writeShort(t);
+                            output.writeDouble(column[t]);
+                        }
+                    }
+                }
+
+                // Writing the statistics of the unknown word model, if there is one.
+                UnknownWordModel unknownWordModel = model.getUnknownWordModel();
+                output.writeBoolean(unknownWordModel != null);
+                if (unknownWordModel != null)
+                    writeUnknownWordModel(output, unknownWordModel);
+
+                // Writing the checksum of everything written so far.
+                output.flush();
+                output.writeLong(checksum.getValue());
+            }
+
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Load - Memory-maps a file written by save, checking its version and checksum, and builds the compiled model.
+     *
+     * @param filename The file path to read.
+     */
+    public static CompiledModel load(String filename) throws IOException
+    {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // Checking the checksum before reading anything else.
+        if (buffer.limit() < Long.BYTES)
+            throw new IOException("Invalid Model Snapshot - File Too Short");
+
+        int end = buffer.limit() - Long.BYTES;
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.duplicate().limit(end));
+
+        if (checksum.getValue() != buffer.getLong(end))
+            throw new IOException("Invalid Model Snapshot - Checksum Mismatch");
+
+        // Reading the header.
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Invalid Model Snapshot - Not A Snapshot File");
+
+        int version = buffer.getInt();
+        if (version != 1 && version != VERSION)
+            throw new IOException("Invalid Model Snapshot - Unsupported Version " + version);
+
+        int tagCount = buffer.getInt();
+        int wordCount = buffer.getInt();
+        double unseenPenalty = buffer.getDouble();
+
+        // Reading the tag and vocabulary tables.
+        String[] tags = new String[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            tags[t] = readString(buffer);
+
+        String[] words = new String[wordCount];
+        for (int w = 0; w < wordCount; w += 1)
+            words[w] = readString(buffer);
+
+        // Reading the transitions.
+        double[] startScores = readDoubles(buffer, tagCount);
+        double[][] transitions = new double[tagCount][];
+        for (int t = 0; t < tagCount; t += 1)
+            transitions[t] = readDoubles(buffer, tagCount);
+
+        double[] unknownEmissions = readDoubles(buffer, tagCount);
+
+        // Reading the observations, filling in the unseen penalty for everything not listed.
+        double[][] emissions = new double[wordCount][tagCount];
+        for (int w = 0; w < wordCount; w += 1)
+        {
+            double[] column = emissions[w];
+            Arrays.fill(column, unseenPenalty);
+
+            int seen = buffer.getShort();
+            for (int i = 0; i < seen; i += 1)
+            {
+                int tag = buffer.getShort();
+                column[tag] = buffer.getDouble();
+            }
+        }
+
+        CompiledModel model = new CompiledModel(tags, words, startScores, transitions, emissions, unknownEmissions,
+                unseenPenalty);
+
+        // Reading the unknown word model, if there is one.
+        if (version >= 2 && buffer.get() != 0)
+            model = model.withUnknownWordModel(readUnknownWordModel(buffer, tagCount));
+
+        return model;
+    }
+
+    /**
+     * Write Unknown Word Model - Helper function that writes the statistics of an unknown word model.
+     */
+    private static void writeUnknownWordModel(DataOutputStream output, UnknownWordModel model) throws IOException
+    {
+        output.writeDouble(model.getPruneThreshold());
+        output.writeInt(model.getCache().getCapacity());
+        output.writeDouble(model.theta());
+        output.writeDouble(model.logWordProbability());
+
+        writeDoubles(output, model.logTagPriors());
+        for (double[] probabilities : model.shapeProbabilities())
+            writeDoubles(output, probabilities);
+
+        // Writing only the tags seen with each suffix, as for the observations.
+        Map<String, int[]> suffixCounts = model.suffixCounts();
+        output.writeInt(suffixCounts.size());
+        for (Map.Entry<String, int[]> entry : suffixCounts.entrySet())
+        {
+            writeString(output, entry.getKey());
+
+            int[] counts = entry.getValue();
+            int seen = 0;
+            for (int count : counts)
+            {
+                if (count != 0)
+                    seen += 1;
+            }
+
+            output.writeShort(seen);
+            for (int t = 0; t < counts.length; t += 1)
+            {
+                if (counts[t] != 0)
+                {
+                    output.writeShort(t);
+                    output.writeInt(counts[t]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read Unknown Word Model - Helper function that reads the statistics written by writeUnknownWordModel.
+     */
+    private static UnknownWordModel readUnknownWordModel(ByteBuffer buffer, int tagCount)
+    {
+        double pruneThreshold = buffer.getDouble();
+        int cacheCapacity = buffer.getInt();
+        double theta = buffer.getDouble();
+        double logWordProbability = buffer.getDouble();
+
+        double[] logTagPriors = readDoubles(buffer, tagCount);
+        double[][] shapeProbabilities = new double[UnknownWordModel.Shape.values().length][];
+        for (int s = 0; s < shapeProbabilities.length; s += 1)
+            shapeProbabilities[s] = readDoubles(buffer, tagCount);
+
+        int suffixes = buffer.getInt();
+        Map<String, int[]> suffixCounts = new HashMap<>(2 * suffixes);
+        for (int i = 0; i < suffixes; i += 1)
+        {
+            String key = readString(buffer);
+            int[] counts = new int[tagCount];
+
+            int seen = buffer.getShort();
+            for (int j = 0; j < seen; j += 1)
+            {
+                int tag = buffer.getShort();
+                counts[tag] = buffer.getInt();
+            }
+
+            suffixCounts.put(key, counts);
+        }
+
+        return new UnknownWordModel(logTagPriors, logWordProbability, shapeProbabilities, theta, suffixCounts,
+                pruneThreshold, cacheCapacity);
+    }
+
+    /**
+     * Write String - Helper function that writes a String as a short length followed by its UTF-8 bytes.
+     */
+    private static void writeString(DataOutputStream output, String string) throws IOException
+    {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF)
+            throw new IOException("Token Too Long To Encode: " + bytes.length + " Bytes");
+
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Read String - Helper function that reads a String written by writeString.
+     */
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write Doubles - Helper function that writes each double in an array.
+     */
+    private static void writeDoubles(DataOutputStream output, double[] values) throws IOException
+    {
+        for (double value : values)
+            output.writeDouble(value);
+    }
+
+    /**
+     * Read Doubles - Helper function that reads a given number of doubles into a new array.
+     */
+    private static double[] readDoubles(ByteBuffer buffer, int count)
+    {
+        double[] values = new double[count];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return values;
+    }
+}
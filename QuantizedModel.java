@@ -0,0 +1,397 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Quantized Model
+ * A copy of a CompiledModel with every score stored in fewer bits, so that many more models fit in one JVM (and each
+ * model fits better in the processor caches). The layout is that of the CompactModel (an off-heap Vocabulary and the
+ * observations in compressed sparse rows), with the scores stored at one of two precisions:
+ * <ul>
+ *     <li>FLOAT stores each log probability as a float, and decodes with float scores.</li>
+ *     <li>SHORT stores each log probability as a 16-bit fixed-point number (the log probability times a scale, rounded),
+ *     and decodes with int scores. The scale is chosen so that the lowest score in the model (usually the unseen penalty)
+ *     just fits, and negative infinity (a transition never seen) is stored as Short.MIN_VALUE.</li>
+ * </ul>
+ * The decoder works on the stored values directly, without converting them back to doubles. Rounding can change which of
+ * two nearly equal paths is best, so the tags can differ slightly from those of the full-precision model.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class QuantizedModel
+{
+    /**
+     * Precision - How each score is stored.
+     */
+    public enum Precision
+    {
+        FLOAT, SHORT
+    }
+
+    // The int score standing in for negative infinity (low enough never to win, high enough that adding cannot wrap).
+    private static final int NEGATIVE_INFINITY = Integer.MIN_VALUE / 4;
+
+    private final Precision precision;
+    private final String[] tags;
+    private final Vocabulary vocabulary;
+    private final int tagCount;
+
+    // The row of word w is [rowStarts[w], rowStarts[w + 1]) of rowTags, and of the scores at the chosen precision.
+    private final int[] rowStarts;
+    private final short[] rowTags;
+
+    // The scores at FLOAT precision (null otherwise): start, transitions [from * T + to], unknown words, and rows.
+    private final float[] floatStart;
+    private final float[] floatTransitions;
+    private final float[] floatUnknown;
+    private final float[] floatRows;
+
+    // The scores at SHORT precision (null otherwise), in the same layout.
+    private final short[] shortStart;
+    private final short[] shortTransitions;
+    private final short[] shortUnknown;
+    private final short[] shortRows;
+
+    // The number of fixed-point units in a log probability of 1 (at SHORT precision).
+    private final double scale;
+
+    /**
+     * Constructor - Quantizes a compiled model.
+     *
+     * @param model     The compiled model.
+     * @param precision How each score is stored.
+     */
+    public QuantizedModel(CompiledModel model, Precision precision)
+    {
+        this.precision = precision;
+        tagCount = model.getTagCount();
+        tags = new String[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            tags[t] = model.getTag(t);
+
+        vocabulary = new Vocabulary(model.words());
+        int wordCount = vocabulary.size();
+
+        // Laying out the rows as in the CompactModel, with the scores at full precision for now.
+        int[] originalIds = new int[wordCount];
+        rowStarts = new int[wordCount + 1];
+        for (int w = 0; w < wordCount; w += 1)
+        {
+            originalIds[w] = model.getWordId(vocabulary.getWord(w));
+            rowStarts[w + 1] = rowStarts[w] + model.candidateTags(originalIds[w]).length;
+        }
+
+        rowTags = new short[rowStarts[wordCount]];
+        double[] rows = new double[rowStarts[wordCount]];
+        for (int w = 0; w < wordCount; w += 1)
+        {
+            double[] column = model.emissionColumn(originalIds[w]);
+            int entry = rowStarts[w];
+
+            for (int t : model.candidateTags(originalIds[w]))
+            {
+                rowTags[entry] = (short) t;
+                rows[entry] = column[t];
+                entry += 1;
+            }
+        }
+
+        double[] transitions = new double[tagCount * tagCount];
+        for (int from = 0; from < tagCount; from += 1)
+            System.arraycopy(model.transitions()[from], 0, transitions, from * tagCount, tagCount);
+
+        double[][] all = {model.startScores(), transitions, model.unknownEmissions(), rows};
+
+        if (precision == Precision.FLOAT)
+        {
+            floatStart = toFloats(all[0]);
+            floatTransitions = toFloats(all[1]);
+            floatUnknown = toFloats(all[2]);
+            floatRows = toFloats(all[3]);
+            shortStart = shortTransitions = shortUnknown = shortRows = null;
+            scale = 1.0;
+        }
+        else
+        {
+            // Finding the lowest finite score, which becomes -Short.MAX_VALUE.
+            double lowest = -1.0;
+            for (double[] scores : all)
+            {
+                for (double score : scores)
+                {
+                    if (score > Double.NEGATIVE_INFINITY)
+                        lowest = Math.min(lowest, score);
+                }
+            }
+
+            scale = Short.MAX_VALUE / -lowest;
+            shortStart = toShorts(all[0], scale);
+            shortTransitions = toShorts(all[1], scale);
+            shortUnknown = toShorts(all[2], scale);
+            shortRows = toShorts(all[3], scale);
+            floatStart = floatTransitions = floatUnknown = floatRows = null;
+        }
+    }
+
+    /**
+     * Getter - Precision
+     */
+    public Precision getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * Getter - Scale (the number of fixed-point units in a log probability of 1, or 1 at FLOAT precision)
+     */
+    public double getScale()
+    {
+        return scale;
+    }
+
+    /**
+     * Getter - Vocabulary
+     */
+    public Vocabulary getVocabulary()
+    {
+        return vocabulary;
+    }
+
+    /**
+     * Getter - Heap Bytes (the size of the arrays of the model, not counting object headers or the off-heap Vocabulary)
+     */
+    public long getHeapBytes()
+    {
+        long bytes = (long) rowStarts.length * Integer.BYTES + (long) rowTags.length * Short.BYTES;
+
+        if (precision == Precision.FLOAT)
+            return bytes + (long) (floatStart.length + floatTransitions.length + floatUnknown.length + floatRows.length)
+                    * Float.BYTES;
+
+        return bytes + (long) (shortStart.length + shortTransitions.length + shortUnknown.length + shortRows.length)
+                * Short.BYTES;
+    }
+
+    /**
+     * Tag Sentence - The Viterbi algorithm (as in CompiledModel.tagSentence) over the quantized scores.
+     *
+     * @param sentence The sentence to tag with parts of speech.
+     */
+    public List<String> tagSentence(List<String> sentence)
+    {
+        // An empty sentence has no tags (and nothing to decode).
+        if (sentence.isEmpty())
+            return List.of();
+
+        // The calling thread's buffers, shared with every other model of the same number of tags.
+        DecoderBuffers buffers = DecoderBuffers.forThread(tagCount);
+        short[] backPointers = buffers.backPointers(sentence.size());
+        int lastState = precision == Precision.FLOAT ? decodeFloats(sentence, buffers, backPointers)
+                : decodeShorts(sentence, buffers, backPointers);
+
+        String[] path = new String[sentence.size()];
+        for (int i = sentence.size() - 1; i >= 0; i -= 1)
+        {
+            path[i] = tags[lastState];
+            lastState = backPointers[i * tagCount + lastState];
+        }
+
+        return Arrays.asList(path);
+    }
+
+    /**
+     * Decode Floats - Helper function that fills in the back pointers with float scores, giving the best last state.
+     */
+    private int decodeFloats(List<String> sentence, DecoderBuffers buffers, short[] backPointers)
+    {
+        float[] currentScores = buffers.currentFloats;
+        float[] nextScores = buffers.nextFloats;
+        int[] currentStates = buffers.currentStates;
+        int[] nextStates = buffers.nextStates;
+
+        int word = vocabulary.getId(sentence.get(0));
+        int currentCount = fillStates(word, currentStates);
+
+        for (int c = 0; c < currentCount; c += 1)
+        {
+            int current = currentStates[c];
+            currentScores[current] = floatStart[current]
+                    + (word < 0 ? floatUnknown[current] : floatRows[rowStarts[word] + c]);
+        }
+
+        for (int i = 1; i < sentence.size(); i += 1)
+        {
+            word = vocabulary.getId(sentence.get(i));
+            int nextCount = fillStates(word, nextStates);
+            int offset = i * tagCount;
+
+            for (int x = 0; x < nextCount; x += 1)
+            {
+                int next = nextStates[x];
+                float bestScore = Float.NEGATIVE_INFINITY;
+                int bestState = currentStates[0];
+
+                for (int c = 0; c < currentCount; c += 1)
+                {
+                    int current = currentStates[c];
+                    float score = currentScores[current] + floatTransitions[current * tagCount + next];
+                    if (score > bestScore)
+                    {
+                        bestScore = score;
+                        bestState = current;
+                    }
+                }
+
+                nextScores[next] = bestScore + (word < 0 ? floatUnknown[next] : floatRows[rowStarts[word] + x]);
+                backPointers[offset + next] = (short) bestState;
+            }
+
+            float[] temp = currentScores;
+            currentScores = nextScores;
+            nextScores = temp;
+
+            int[] tempStates = currentStates;
+            currentStates = nextStates;
+            nextStates = tempStates;
+            currentCount = nextCount;
+        }
+
+        int lastState = currentStates[0];
+        for (int c = 0; c < currentCount; c += 1)
+        {
+            if (currentScores[currentStates[c]] > currentScores[lastState])
+                lastState = currentStates[c];
+        }
+
+        return lastState;
+    }
+
+    /**
+     * Decode Shorts - Helper function that fills in the back pointers with int (fixed-point) scores, giving the best
+     * last state. Each new score is held at or above NEGATIVE_INFINITY, so that adding to it can never wrap around.
+     */
+    private int decodeShorts(List<String> sentence, DecoderBuffers buffers, short[] backPointers)
+    {
+        int[] currentScores = buffers.currentInts;
+        int[] nextScores = buffers.nextInts;
+        int[] currentStates = buffers.currentStates;
+        int[] nextStates = buffers.nextStates;
+
+        int word = vocabulary.getId(sentence.get(0));
+        int currentCount = fillStates(word, currentStates);
+
+        for (int c = 0; c < currentCount; c += 1)
+        {
+            int current = currentStates[c];
+            int score = value(shortStart[current])
+                    + value(word < 0 ? shortUnknown[current] : shortRows[rowStarts[word] + c]);
+            currentScores[current] = Math.max(score, NEGATIVE_INFINITY);
+        }
+
+        for (int i = 1; i < sentence.size(); i += 1)
+        {
+            word = vocabulary.getId(sentence.get(i));
+            int nextCount = fillStates(word, nextStates);
+            int offset = i * tagCount;
+
+            for (int x = 0; x < nextCount; x += 1)
+            {
+                int next = nextStates[x];
+                int bestScore = Integer.MIN_VALUE;
+                int bestState = currentStates[0];
+
+                for (int c = 0; c < currentCount; c += 1)
+                {
+                    int current = currentStates[c];
+                    int score = currentScores[current] + value(shortTransitions[current * tagCount + next]);
+                    if (score > bestScore)
+                    {
+                        bestScore = score;
+                        bestState = current;
+                    }
+                }
+
+                int emission = value(word < 0 ? shortUnknown[next] : shortRows[rowStarts[word] + x]);
+                nextScores[next] = Math.max(bestScore + emission, NEGATIVE_INFINITY);
+                backPointers[offset + next] = (short) bestState;
+            }
+
+            int[] temp = currentScores;
+            currentScores = nextScores;
+            nextScores = temp;
+
+            int[] tempStates = currentStates;
+            currentStates = nextStates;
+            nextStates = tempStates;
+            currentCount = nextCount;
+        }
+
+        int lastState = currentStates[0];
+        for (int c = 0; c < currentCount; c += 1)
+        {
+            if (currentScores[currentStates[c]] > currentScores[lastState])
+                lastState = currentStates[c];
+        }
+
+        return lastState;
+    }
+
+    /**
+     * Fill States - Helper function that copies the candidate tags of a word ID (every tag for -1) into an array,
+     * returning how many.
+     */
+    private int fillStates(int word, int[] states)
+    {
+        if (word < 0)
+        {
+            for (int t = 0; t < tagCount; t += 1)
+                states[t] = t;
+
+            return tagCount;
+        }
+
+        int start = rowStarts[word];
+        int count = rowStarts[word + 1] - start;
+        for (int i = 0; i < count; i += 1)
+            states[i] = rowTags[start + i];
+
+        return count;
+    }
+
+    /**
+     * Value - Helper function that gives the int score of a stored short (NEGATIVE_INFINITY for Short.MIN_VALUE).
+     */
+    private static int value(short stored)
+    {
+        return stored == Short.MIN_VALUE ? NEGATIVE_INFINITY : stored;
+    }
+
+    /**
+     * To Floats - Helper function that rounds each score to a float.
+     */
+    private static float[] toFloats(double[] scores)
+    {
+        float[] floats = new float[scores.length];
+        for (int i = 0; i < scores.length; i += 1)
+            floats[i] = (float) scores[i];
+
+        return floats;
+    }
+
+    /**
+     * To Shorts - Helper function that rounds each score (times the scale) to a short, with Short.MIN_VALUE for negative
+     * infinity.
+     */
+    private static short[] toShorts(double[] scores, double scale)
+    {
+        short[] shorts = new short[scores.length];
+        for (int i = 0; i < scores.length; i += 1)
+        {
+            if (scores[i] == Double.NEGATIVE_INFINITY)
+                shorts[i] = Short.MIN_VALUE;
+            else
+                shorts[i] = (short) Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, Math.round(scores[i] * scale)));
+        }
+
+        return shorts;
+    }
+}
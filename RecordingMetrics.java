@@ -0,0 +1,214 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Recording Metrics
+ * TaggerMetrics that keep running totals (in LongAdders, so that many tagging threads can record at once without
+ * contending), and a histogram of sentence latencies from which the percentiles are read.
+ * <p>
+ * The histogram has eight buckets for each power of two of nanoseconds, so each percentile is within about 6% of the
+ * true value, using a fixed, small amount of memory however many sentences are recorded.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class RecordingMetrics implements TaggerMetrics, TaggerMetricsMXBean
+{
+    // The number of sub-buckets for each power of two (as a power of two), and the number of buckets in all.
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final LongAdder sentences = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder unknownWords = new LongAdder();
+    private final LongAdder statesExpanded = new LongAdder();
+    private final LongAdder taggingNanos = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+    private volatile long lastTrainingNanos;
+    private volatile long lastModelLoadNanos;
+
+    @Override
+    public boolean isEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public void recordSentence(int words, int unknown, long states, long nanos)
+    {
+        sentences.increment();
+        tokens.add(words);
+        unknownWords.add(unknown);
+        statesExpanded.add(states);
+        taggingNanos.add(nanos);
+        latencies.incrementAndGet(bucket(nanos));
+    }
+
+    @Override
+    public void recordTraining(long nanos)
+    {
+        lastTrainingNanos = nanos;
+    }
+
+    @Override
+    public void recordModelLoad(long nanos)
+    {
+        lastModelLoadNanos = nanos;
+    }
+
+    /**
+     * Register - Registers the metrics with the platform MBean server, so that they can be read over JMX.
+     *
+     * @param name The name of the tagger, used in the object name "TaggerMetrics:name=...".
+     */
+    public void register(String name) throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("TaggerMetrics:name=" + name));
+    }
+
+    @Override
+    public long getSentences()
+    {
+        return sentences.sum();
+    }
+
+    @Override
+    public long getTokens()
+    {
+        return tokens.sum();
+    }
+
+    /**
+     * Getter - Tokens Per Second, over the time spent tagging (summed over all threads).
+     */
+    @Override
+    public double getTokensPerSecond()
+    {
+        long nanos = taggingNanos.sum();
+        return nanos == 0 ? 0.0 : tokens.sum() / (nanos / 1e9);
+    }
+
+    @Override
+    public double getLatencyP50Micros()
+    {
+        return percentile(0.50) / 1e3;
+    }
+
+    @Override
+    public double getLatencyP99Micros()
+    {
+        return percentile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getStatesExpandedPerToken()
+    {
+        long count = tokens.sum();
+        return count == 0 ? 0.0 : (double) statesExpanded.sum() / count;
+    }
+
+    @Override
+    public double getUnknownWordRate()
+    {
+        long count = tokens.sum();
+        return count == 0 ? 0.0 : (double) unknownWords.sum() / count;
+    }
+
+    @Override
+    public double getLastTrainingMillis()
+    {
+        return lastTrainingNanos / 1e6;
+    }
+
+    @Override
+    public double getLastModelLoadMillis()
+    {
+        return lastModelLoadNanos / 1e6;
+    }
+
+    @Override
+    public void reset()
+    {
+        sentences.reset();
+        tokens.reset();
+        unknownWords.reset();
+        statesExpanded.reset();
+        taggingNanos.reset();
+
+        for (int i = 0; i < BUCKETS; i += 1)
+            latencies.set(i, 0);
+    }
+
+    /**
+     * To String - A summary of the metrics, one per line.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("Sentences: %d%nTokens: %d%nTokens/Sec: %.0f%nLatency p50 (us): %.2f%n"
+                        + "Latency p99 (us): %.2f%nStates Expanded/Token: %.2f%nUnknown Word Rate: %.4f%n"
+                        + "Training (ms): %.1f%nModel Load (ms): %.1f",
+                getSentences(), getTokens(), getTokensPerSecond(), getLatencyP50Micros(), getLatencyP99Micros(),
+                getStatesExpandedPerToken(), getUnknownWordRate(), getLastTrainingMillis(), getLastModelLoadMillis());
+    }
+
+    /**
+     * Percentile - Helper function that finds the latency (in nanoseconds) at a percentile (between 0 and 1), as the
+     * middle of the bucket it falls in.
+     */
+    private double percentile(double percentile)
+    {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i += 1)
+        {
+            counts[i] = latencies.get(i);
+            total += counts[i];
+        }
+
+        if (total == 0)
+            return 0.0;
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i += 1)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return (lowerBound(i) + lowerBound(i + 1)) / 2.0;
+        }
+
+        return lowerBound(BUCKETS);
+    }
+
+    /**
+     * Bucket - Helper function that gives the bucket of a value: the value itself below SUB_BUCKETS, and otherwise the
+     * power of two and the next SUB_BUCKET_BITS bits below it.
+     */
+    private static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int) Math.max(0, value);
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Lower Bound - Helper function that gives the smallest value in a bucket.
+     */
+    private static double lowerBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return (double) (SUB_BUCKETS + subBucket) * Math.pow(2, exponent - SUB_BUCKET_BITS);
+    }
+}
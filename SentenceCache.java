@@ -0,0 +1,93 @@
+import java.util.List;
+
+/**
+ * Sentence Cache
+ * A bounded cache from sentences (token sequences) to their tags, for text in which the same sentences come up again and
+ * again (headlines, boilerplate, templates). A cached sentence costs one lookup rather than a run of the Viterbi
+ * algorithm.
+ * <p>
+ * Each entry remembers the tagger that tagged it, and is only used by a tagger with the same compiled model and beam.
+ * So when the model is retrained, updated or loaded, the old entries are never returned (they are counted as misses and
+ * removed), even by a thread that is still tagging while the model is replaced. ViterbiAlgorithm also clears the cache
+ * when it replaces its model, to free the old entries at once.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class SentenceCache
+{
+    private final BoundedCache<List<String>, Entry> cache;
+
+    /**
+     * Entry - The tags of a sentence, and the tagger that tagged it.
+     */
+    private static final class Entry
+    {
+        private final ViterbiTagger tagger;
+        private final List<String> tags;
+
+        Entry(ViterbiTagger tagger, List<String> tags)
+        {
+            this.tagger = tagger;
+            this.tags = tags;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity The largest number of sentences kept.
+     * @param policy   The eviction policy (LRU, or TINY_LFU to favour sentences that come up often).
+     */
+    public SentenceCache(int capacity, BoundedCache.Policy policy)
+    {
+        cache = new BoundedCache<>(capacity, policy);
+    }
+
+    /**
+     * Get - The cached tags of a sentence, if they were tagged by a tagger that decodes the same way as this one.
+     *
+     * @return The (unmodifiable) tags, or null if they are not in the cache.
+     */
+    public List<String> get(List<String> sentence, ViterbiTagger tagger)
+    {
+        Entry entry = cache.get(sentence, cached -> cached.tagger.decodesLike(tagger));
+        return entry == null ? null : entry.tags;
+    }
+
+    /**
+     * Put - Caches the tags of a sentence (copying both, so that later changes to the lists do not affect the cache).
+     *
+     * @return The cached (unmodifiable) tags.
+     */
+    public List<String> put(List<String> sentence, ViterbiTagger tagger, List<String> tags)
+    {
+        List<String> cachedTags = List.copyOf(tags);
+        cache.put(List.copyOf(sentence), new Entry(tagger, cachedTags));
+        return cachedTags;
+    }
+
+    /**
+     * Invalidate - Removes every cached sentence (for example, when the model is replaced).
+     */
+    public void invalidate()
+    {
+        cache.clear();
+    }
+
+    /**
+     * Getter - Statistics (the underlying BoundedCache, for its size, hits, misses and evictions)
+     */
+    public BoundedCache<List<String>, ?> getStatistics()
+    {
+        return cache;
+    }
+
+    /**
+     * To String - A one-line summary of the statistics.
+     */
+    @Override
+    public String toString()
+    {
+        return cache.toString();
+    }
+}
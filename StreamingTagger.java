@@ -0,0 +1,304 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming Tagger
+ * An online version of the Viterbi algorithm, for input with no sentence boundaries that may never end (transcripts,
+ * logs). Words are pushed one at a time, and the tags of earlier words are given back as soon as they are certain: once
+ * the back pointers of every state at the latest word lead back to the same state at some earlier word,
+ * no later word can change the best path up to there, so those tags are final.
+ * <p>
+ * Only the back pointers of the words that are not yet final are kept, in a ring of at most window columns, so memory
+ * does not grow with the length of the input. If the window fills before the paths converge, it is flushed: the best
+ * path so far is given back for all but the latest word, and the states at the latest word that do not follow it are
+ * dropped, so that the later tags stay consistent with the ones given back.
+ * <p>
+ * Since no transitions out of the end of a sentence are seen in training, the lattice breaks where one sentence ends and
+ * the next begins: no state of the next word can be reached. The tagger then ends the stream there and starts again from
+ * the start state, so sentence boundaries are found on the way. Unless the window is flushed or the lattice breaks, the
+ * tags are exactly those of CompiledModel.tagSentence over the same words. A streaming tagger is not thread-safe: each
+ * stream needs its own.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class StreamingTagger
+{
+    // The default number of words that may be waiting for their tags.
+    public static final int DEFAULT_WINDOW = 256;
+
+    // How low the best score may get before every score is shifted back up to zero (to keep the doubles precise).
+    private static final double RESCALE_BELOW = -1e6;
+
+    private final CompiledModel model;
+    private final int window;
+    private final int tagCount;
+
+    // The back pointers of the words not yet final, the word at position p being in column p % window.
+    private final short[] backPointers;
+
+    private double[] currentScores;
+    private double[] nextScores;
+    private int[] currentStates;
+
+    // The position of the first word not yet final, and the position of the next word to be pushed.
+    private long first;
+    private long next;
+
+    // Whether the current words follow on from earlier ones (false at the start, and after end).
+    private boolean started;
+
+    // The sets of states traced back when checking for convergence, and the marks used to build them without repeats.
+    private int[] traced;
+    private int[] tracedNext;
+    private final long[] marks;
+    private long mark;
+
+    /**
+     * Constructor - Uses the default window.
+     */
+    public StreamingTagger(CompiledModel model)
+    {
+        this(model, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param model  The compiled model to tag with.
+     * @param window The largest number of words that may be waiting for their tags (at least 2).
+     */
+    public StreamingTagger(CompiledModel model, int window)
+    {
+        if (window < 2)
+            throw new IllegalArgumentException("Invalid Window: " + window);
+
+        this.model = model;
+        this.window = window;
+        tagCount = model.getTagCount();
+
+        backPointers = new short[window * tagCount];
+        currentScores = new double[tagCount];
+        nextScores = new double[tagCount];
+        traced = new int[tagCount];
+        tracedNext = new int[tagCount];
+        marks = new long[tagCount];
+    }
+
+    /**
+     * Getter - Pending (the number of words pushed whose tags have not been given back yet)
+     */
+    public int getPending()
+    {
+        return (int) (next - first);
+    }
+
+    /**
+     * Push - Adds the next word of the stream.
+     *
+     * @param word The word.
+     * @return The tags that became final (of the earliest words not given back yet, in order), often none.
+     */
+    public List<String> push(String word)
+    {
+        int wordId = model.getWordId(word);
+        int[] nextStates = model.candidateTags(wordId, word);
+        double[] column = model.emissionColumn(wordId, word);
+
+        List<String> tags = new ArrayList<>();
+
+        if (started)
+        {
+            if (next - first == window)
+                tags.addAll(flushWindow());
+
+            // If no state can be reached from the current ones, the lattice is broken there, so starting again.
+            if (!step(nextStates, column))
+                tags.addAll(end());
+        }
+
+        // Handling the first word, which can only come from the start state.
+        if (!started)
+        {
+            double[] startScores = model.startScores();
+            for (int t : nextStates)
+                currentScores[t] = startScores[t] + column[t];
+
+            currentStates = nextStates;
+            started = true;
+            next += 1;
+        }
+
+        tags.addAll(converge());
+        return tags;
+    }
+
+    /**
+     * End - Ends the current stream (for example, at the end of a sentence or a file), giving back the tags of every
+     * word still waiting along the best path. The next word pushed starts again from the start state.
+     *
+     * @return The tags that had not been given back yet, in order.
+     */
+    public List<String> end()
+    {
+        if (!started)
+            return Collections.emptyList();
+
+        List<String> tags = path(bestState(), next - 1);
+        first = next;
+        started = false;
+        return tags;
+    }
+
+    /**
+     * Step - Helper function that moves the lattice on by one word, finding the best previous state for each next state
+     * as in CompiledModel.tagSentence.
+     *
+     * @return Whether any next state can be reached (if not, nothing is changed but the unused back pointers).
+     */
+    private boolean step(int[] nextStates, double[] column)
+    {
+        double[][] transitions = model.transitions();
+        int offset = (int) (next % window) * tagCount;
+        double bestScore = Double.NEGATIVE_INFINITY;
+
+        for (int state : nextStates)
+        {
+            double score = Double.NEGATIVE_INFINITY;
+            int bestState = currentStates[0];
+
+            for (int current : currentStates)
+            {
+                double candidate = currentScores[current] + transitions[current][state];
+                if (candidate > score)
+                {
+                    score = candidate;
+                    bestState = current;
+                }
+            }
+
+            nextScores[state] = score + column[state];
+            backPointers[offset + state] = (short) bestState;
+            bestScore = Math.max(bestScore, nextScores[state]);
+        }
+
+        if (bestScore == Double.NEGATIVE_INFINITY)
+            return false;
+
+        // Shifting the scores back up now and then, since they only ever go down.
+        if (bestScore < RESCALE_BELOW)
+        {
+            for (int state : nextStates)
+                nextScores[state] -= bestScore;
+        }
+
+        double[] temp = currentScores;
+        currentScores = nextScores;
+        nextScores = temp;
+        currentStates = nextStates;
+        next += 1;
+        return true;
+    }
+
+    /**
+     * Converge - Helper function that traces the back pointers of the states at the latest word towards the first word
+     * not yet final, and gives back the tags up to the latest word at which they all meet (if any).
+     */
+    private List<String> converge()
+    {
+        /* Starting from every candidate state, even those that cannot be reached: if no state can be reached, the best
+        path ends in the first of them, as in CompiledModel.tagSentence.
+         */
+        int count = currentStates.length;
+        System.arraycopy(currentStates, 0, traced, 0, count);
+
+        // Stepping back one word at a time, keeping the set of distinct states the paths pass through.
+        for (long position = next - 1; ; position -= 1)
+        {
+            if (count == 1)
+                return path(traced[0], position);
+
+            if (position == first)
+                return Collections.emptyList();
+
+            int offset = (int) (position % window) * tagCount;
+            int nextCount = 0;
+            mark += 1;
+
+            for (int i = 0; i < count; i += 1)
+            {
+                int previous = backPointers[offset + traced[i]];
+                if (marks[previous] != mark)
+                {
+                    marks[previous] = mark;
+                    tracedNext[nextCount++] = previous;
+                }
+            }
+
+            int[] temp = traced;
+            traced = tracedNext;
+            tracedNext = temp;
+            count = nextCount;
+        }
+    }
+
+    /**
+     * Flush Window - Helper function that gives back the tags of every waiting word but the latest along the best path,
+     * and drops the states at the latest word that do not follow that path.
+     */
+    private List<String> flushWindow()
+    {
+        int best = bestState();
+        long last = next - 1;
+        int previous = backPointers[(int) (last % window) * tagCount + best];
+
+        List<String> tags = path(previous, last - 1);
+
+        int offset = (int) (last % window) * tagCount;
+        for (int state : currentStates)
+        {
+            if (backPointers[offset + state] != previous)
+                currentScores[state] = Double.NEGATIVE_INFINITY;
+        }
+
+        return tags;
+    }
+
+    /**
+     * Path - Helper function that follows the back pointers from a state at a position to the first word not yet final,
+     * giving back the tags of those words and marking them final.
+     */
+    private List<String> path(int state, long position)
+    {
+        int length = (int) (position - first + 1);
+        String[] path = new String[length];
+
+        for (int i = length - 1; i >= 0; i -= 1)
+        {
+            path[i] = model.getTag(state);
+            if (i > 0)
+                state = backPointers[(int) ((first + i) % window) * tagCount + state];
+        }
+
+        first = position + 1;
+
+        List<String> tags = new ArrayList<>(length);
+        Collections.addAll(tags, path);
+        return tags;
+    }
+
+    /**
+     * Best State - Helper function that finds the best state at the latest word (the first, among equals).
+     */
+    private int bestState()
+    {
+        int best = currentStates[0];
+        for (int state : currentStates)
+        {
+            if (currentScores[state] > currentScores[best])
+                best = state;
+        }
+
+        return best;
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.List;
+
+/**
+ * Tagged Sentence
+ * A sentence (the words) together with its parts of speech (the tags), one tag per word.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class TaggedSentence
+{
+    private final List<String> words;
+    private final List<String> tags;
+
+    /**
+     * Constructor - Pairs a list of words with the corresponding list of tags.
+     */
+    public TaggedSentence(List<String> words, List<String> tags)
+    {
+        this.words = words;
+        this.tags = tags;
+    }
+
+    /**
+     * Getter - Words
+     */
+    public List<String> getWords()
+    {
+        return words;
+    }
+
+    /**
+     * Getter - Tags
+     */
+    public List<String> getTags()
+    {
+        return tags;
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Tagger Benchmark
+ * Measures the hot paths of the tagger on the Brown files: loading the text with the InputLibrary, the CorpusReader and
+ * the EncodedCorpus, training the HiddenMarkovModel, loading a ModelSnapshot, and tagging sentences of different lengths.
+ * <p>
+ * Each benchmark is run for a number of warm-up iterations (so that the timing is of compiled code), and then for a
+ * number of measured iterations. For each benchmark we report the average, median (p50) and p99 time per operation, and
+ * the number of bytes allocated per operation by the measuring thread (from the HotSpot ThreadMXBean), so that changes to
+ * the garbage produced by the hot paths can be seen as well as changes to the time.
+ * <p>
+ * Usage: java TaggerBenchmark [texts directory] (by default, PS5/texts).
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class TaggerBenchmark
+{
+    // The number of warm-up and measured iterations for each benchmark.
+    private static final int WARM_UP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+
+    // The sentence lengths (in words) that the tagging benchmarks are grouped by: up to 10, up to 25, and so on.
+    private static final int[] LENGTH_LIMITS = {10, 25, 50, Integer.MAX_VALUE};
+
+    // A value computed from the result of every operation, so that the JIT compiler cannot skip the work.
+    private static long sink;
+
+    /**
+     * Operation - A single operation to measure.
+     */
+    interface Operation
+    {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String directory = args.length > 0 ? args[0] : "PS5/texts";
+        String trainSentences = directory + "/brown-train-sentences.txt";
+        String trainTags = directory + "/brown-train-tags.txt";
+        String testSentences = directory + "/brown-test-sentences.txt";
+
+        System.out.printf("%-28s %12s %12s %12s %14s%n", "Benchmark", "Avg (ms/op)", "p50 (ms/op)", "p99 (ms/op)",
+                "Alloc (B/op)");
+
+        // LOADING
+        measure("InputLibrary.loadSentences", () -> InputLibrary.loadSentences(trainSentences));
+        measure("CorpusReader (stream)", () ->
+        {
+            long count = 0;
+            try (CorpusReader corpus = new CorpusReader(trainSentences, trainTags))
+            {
+                for (TaggedSentence sentence : corpus)
+                    count += sentence.getWords().size();
+            }
+
+            return count;
+        });
+
+        // Encoding the corpus once, and then opening the encoded file and reading every sentence from it.
+        File encoded = File.createTempFile("benchmark", EncodedCorpus.EXTENSION);
+        encoded.deleteOnExit();
+        encoded.delete();
+        EncodedCorpus.open(trainSentences, trainTags, encoded.getPath());
+        measure("EncodedCorpus (open, read)", () ->
+        {
+            long count = 0;
+            for (TaggedSentence sentence : EncodedCorpus.open(trainSentences, trainTags, encoded.getPath()).sentences())
+                count += sentence.getWords().size();
+
+            return count;
+        });
+
+        // TRAINING
+        measure("HiddenMarkovModel.train", () -> ViterbiAlgorithm.trainMarkovModel(trainSentences, trainTags));
+        measure("HiddenMarkovModel (encoded)", () ->
+        {
+            HiddenMarkovModel model = new HiddenMarkovModel();
+            model.train(EncodedCorpus.open(trainSentences, trainTags, encoded.getPath()).sentences());
+            return model;
+        });
+
+        HiddenMarkovModel markovModel = ViterbiAlgorithm.trainMarkovModel(trainSentences, trainTags);
+        measure("CompiledModel (compile)", () -> new CompiledModel(markovModel, ViterbiAlgorithm.getUnseenPenalty()));
+
+        // SNAPSHOT LOADING
+        CompiledModel model = new CompiledModel(markovModel, ViterbiAlgorithm.getUnseenPenalty());
+        File snapshot = File.createTempFile("benchmark", ".hmm");
+        snapshot.deleteOnExit();
+        ModelSnapshot.save(model, snapshot.getPath());
+        measure("ModelSnapshot.load", () -> ModelSnapshot.load(snapshot.getPath()));
+
+        // TAGGING
+        List<List<String>> sentences = InputLibrary.loadSentences(testSentences);
+        ViterbiTagger tagger = new ViterbiTagger(model);
+
+        System.out.println();
+        System.out.printf("%-28s %12s %12s %12s %14s%n", "tagSentence (by length)", "Tokens/Sec", "p50 (us)",
+                "p99 (us)", "Alloc (B/tok)");
+
+        int lowerLimit = 0;
+        for (int upperLimit : LENGTH_LIMITS)
+        {
+            // Collecting the sentences with lengths in (lowerLimit, upperLimit].
+            List<List<String>> group = new ArrayList<>();
+            for (List<String> sentence : sentences)
+            {
+                if (sentence.size() > lowerLimit && sentence.size() <= upperLimit)
+                    group.add(sentence);
+            }
+
+            String name = upperLimit == Integer.MAX_VALUE ? "> " + lowerLimit + " words"
+                    : lowerLimit + 1 + "-" + upperLimit + " words";
+
+            measureTagging(name, tagger::tagSentence, group);
+            lowerLimit = upperLimit;
+        }
+
+        measureTagging("all sentences", tagger::tagSentence, sentences);
+
+        // MAX-PLUS KERNELS (checking that the dense decoders give exactly the same tags first)
+        DenseDecoder scalar = new DenseDecoder(model, MaxPlus.SCALAR);
+        DenseDecoder vector = new DenseDecoder(model);
+
+        for (List<String> sentence : sentences)
+        {
+            List<String> expected = model.tagSentence(sentence);
+            if (!expected.equals(scalar.tagSentence(sentence)) || !expected.equals(vector.tagSentence(sentence)))
+                throw new IllegalStateException("Dense Decoder Mismatch: " + sentence);
+        }
+
+        System.out.println();
+        System.out.printf("%-28s %12s %12s %12s %14s%n", "Max-plus step (all)", "Tokens/Sec", "p50 (us)", "p99 (us)",
+                "Alloc (B/tok)");
+
+        measureTagging("CompiledModel (candidates)", model::tagSentence, sentences);
+        measureTagging("DenseDecoder (scalar)", scalar::tagSentence, sentences);
+
+        if (vector.getMaxPlus() != MaxPlus.SCALAR)
+            measureTagging("DenseDecoder (vector)", vector::tagSentence, sentences);
+        else
+            System.out.println("DenseDecoder (vector)        unavailable (see MaxPlus)");
+
+        // Printing the sink, so that it is used.
+        System.out.println();
+        System.out.println("(" + sink + ")");
+    }
+
+    /**
+     * Measure - Runs an operation for the warm-up and measured iterations, printing the time and allocation per op.
+     */
+    static void measure(String name, Operation operation) throws Exception
+    {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i += 1)
+            consume(operation.run());
+
+        double[] times = new double[MEASURED_ITERATIONS];
+        long allocated = allocatedBytes();
+
+        for (int i = 0; i < MEASURED_ITERATIONS; i += 1)
+        {
+            long start = System.nanoTime();
+            consume(operation.run());
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+
+        allocated = allocatedBytes() - allocated;
+
+        Arrays.sort(times);
+        System.out.printf("%-28s %12.3f %12.3f %12.3f %14d%n", name, Arrays.stream(times).average().orElse(0),
+                percentile(times, 0.50), percentile(times, 0.99), allocated / MEASURED_ITERATIONS);
+    }
+
+    /**
+     * Measure Tagging
+     * Tags a group of sentences for the warm-up and measured iterations, timing each sentence on its own to find the
+     * latency percentiles, and printing the throughput and allocation per token.
+     */
+    static void measureTagging(String name, Function<List<String>, List<String>> tagger, List<List<String>> sentences)
+    {
+        if (sentences.isEmpty())
+            return;
+
+        for (int i = 0; i < WARM_UP_ITERATIONS; i += 1)
+        {
+            for (List<String> sentence : sentences)
+                consume(tagger.apply(sentence));
+        }
+
+        double[] latencies = new double[sentences.size() * MEASURED_ITERATIONS];
+        long tokens = 0;
+        long totalTime = 0;
+        long allocated = allocatedBytes();
+
+        for (int i = 0; i < MEASURED_ITERATIONS; i += 1)
+        {
+            for (int s = 0; s < sentences.size(); s += 1)
+            {
+                long start = System.nanoTime();
+                consume(tagger.apply(sentences.get(s)));
+                long time = System.nanoTime() - start;
+
+                latencies[i * sentences.size() + s] = time / 1e3;
+                totalTime += time;
+                tokens += sentences.get(s).size();
+            }
+        }
+
+        allocated = allocatedBytes() - allocated;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-28s %12.0f %12.2f %12.2f %14d%n", name, tokens / (totalTime / 1e9),
+                percentile(latencies, 0.50), percentile(latencies, 0.99), allocated / tokens);
+    }
+
+    /**
+     * Allocated Bytes - Helper function that gives the total number of bytes allocated so far by the current thread
+     * (or zero if the JVM cannot measure it).
+     */
+    static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return 0;
+    }
+
+    /**
+     * Percentile - Helper function that gives the value at a percentile (between 0 and 1) of a sorted array.
+     */
+    static double percentile(double[] sorted, double percentile)
+    {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Consume - Helper function that folds a result into the sink.
+     */
+    private static void consume(Object result)
+    {
+        sink += System.identityHashCode(result);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Tagger Metrics
+ * The interface through which the tagger reports what it is doing: each sentence tagged (with its number of words, how
+ * many of them were never seen in training, how many lattice states were expanded, and how long it took), and how long
+ * each model took to train or load.
+ * <p>
+ * The tagger only measures anything if isEnabled is true, so with the NONE metrics (the default) the cost is a single
+ * check per sentence. RecordingMetrics keeps the numbers (and exposes them through JMX), and other implementations can
+ * forward them to whatever metrics system is in use.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public interface TaggerMetrics
+{
+    // The metrics that record nothing, and are never enabled.
+    TaggerMetrics NONE = new TaggerMetrics()
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return false;
+        }
+
+        @Override
+        public void recordSentence(int words, int unknownWords, long statesExpanded, long nanos)
+        {
+        }
+
+        @Override
+        public void recordTraining(long nanos)
+        {
+        }
+
+        @Override
+        public void recordModelLoad(long nanos)
+        {
+        }
+    };
+
+    /**
+     * Is Enabled - Whether the tagger should measure and record anything at all.
+     */
+    boolean isEnabled();
+
+    /**
+     * Record Sentence - Records one tagged sentence.
+     *
+     * @param words          The number of words in the sentence.
+     * @param unknownWords   The number of words never seen in training.
+     * @param statesExpanded The number of lattice states expanded (followed through their transitions).
+     * @param nanos          The time taken to tag the sentence, in nanoseconds.
+     */
+    void recordSentence(int words, int unknownWords, long statesExpanded, long nanos);
+
+    /**
+     * Record Training - Records the time taken to train a model, in nanoseconds.
+     */
+    void recordTraining(long nanos);
+
+    /**
+     * Record Model Load - Records the time taken to load a model from a snapshot, in nanoseconds.
+     */
+    void recordModelLoad(long nanos);
+}
@@ -0,0 +1,29 @@
+/**
+ * Tagger Metrics MXBean
+ * The management interface of RecordingMetrics, through which the metrics can be read over JMX (for example, in
+ * JConsole, under the name the metrics were registered with).
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public interface TaggerMetricsMXBean
+{
+    long getSentences();
+
+    long getTokens();
+
+    double getTokensPerSecond();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP99Micros();
+
+    double getStatesExpandedPerToken();
+
+    double getUnknownWordRate();
+
+    double getLastTrainingMillis();
+
+    double getLastModelLoadMillis();
+
+    void reset();
+}
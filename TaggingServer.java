@@ -0,0 +1,447 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Tagging Server
+ * A long-running tagging service on a loopback socket, so that other programs can tag sentences without starting a JVM
+ * and training a model each time. Each client connection is served by its own thread, and speaks a line protocol (in
+ * UTF-8): the client sends a sentence as a line of words separated by spaces, and the server answers with one line,
+ * <p>
+ * OK [latency in microseconds] word/TAG word/TAG ...
+ * <p>
+ * or "ERROR [message]" if the sentence could not be tagged. The line "#STATS" is answered with the request metrics of the
+ * server on one line, and "#QUIT" closes the connection.
+ * <p>
+ * Sentences that arrive at about the same time (from any connections) are tagged together: a batching thread takes the
+ * first waiting sentence, collects any more that arrive within a short delay (up to a batch size), and tags them in one
+ * pass with ViterbiTagger.tagAll, which spreads the batch across the processors. The latency reported for a sentence is
+ * from when its line was read to when its answer was ready, so it includes the wait for the batch. Every answered
+ * sentence is recorded in the server's own RecordingMetrics, from which the latency percentiles are read.
+ * <p>
+ * The tagger is asked for again for each batch, so a server given ViterbiAlgorithm::getTagger tags with whichever version
+ * of the model is current.
+ * <p>
+ * Usage: java TaggingServer [port] [snapshot file or texts directory] (by default, 7077 and PS5/texts).
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class TaggingServer implements AutoCloseable
+{
+    // The default port, largest batch, and longest wait for a batch to fill.
+    public static final int DEFAULT_PORT = 7077;
+    public static final int DEFAULT_MAX_BATCH = 64;
+    public static final long DEFAULT_MAX_DELAY_MICROS = 200;
+
+    // The largest number of sentences that may wait to be batched (beyond which the connections wait to add more).
+    private static final int MAX_WAITING = 4096;
+
+    private final Supplier<ViterbiTagger> taggers;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<Request> waiting = new LinkedBlockingQueue<>(MAX_WAITING);
+    private final RecordingMetrics requestMetrics = new RecordingMetrics();
+
+    // The number of batches, and of the sentences in them (an empty line is answered at once, without being batched).
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedSentences = new LongAdder();
+
+    // The open connections (closed with the server, since a thread reading from a socket cannot be interrupted).
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket serverSocket;
+    private ExecutorService connections;
+    private Thread acceptor;
+    private Thread batcher;
+    private volatile boolean running;
+
+    /**
+     * Request - One sentence waiting to be tagged, with the time its line was read and the tags to come.
+     */
+    private static final class Request
+    {
+        private final List<String> sentence;
+        private final long arrivalNanos;
+        private final CompletableFuture<List<String>> tags = new CompletableFuture<>();
+
+        Request(List<String> sentence, long arrivalNanos)
+        {
+            this.sentence = sentence;
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+
+    /**
+     * Constructor - Uses the default batch size and delay.
+     *
+     * @param taggers Gives the tagger for each batch (for example, ViterbiAlgorithm::getTagger).
+     */
+    public TaggingServer(Supplier<ViterbiTagger> taggers)
+    {
+        this(taggers, DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY_MICROS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param taggers        Gives the tagger for each batch.
+     * @param maxBatch       The largest number of sentences tagged together.
+     * @param maxDelayMicros The longest time the first sentence of a batch waits for others to join it.
+     */
+    public TaggingServer(Supplier<ViterbiTagger> taggers, int maxBatch, long maxDelayMicros)
+    {
+        if (maxBatch < 1 || maxDelayMicros < 0)
+            throw new IllegalArgumentException("Invalid Batching: " + maxBatch + " Sentences, " + maxDelayMicros
+                    + " us");
+
+        this.taggers = taggers;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String source = args.length > 1 ? args[1] : "PS5/texts";
+
+        // Loading the model from a snapshot, or otherwise training it on the Brown files in the texts directory.
+        if (new File(source).isFile())
+            ViterbiAlgorithm.loadModel(source);
+        else
+            ViterbiAlgorithm.trainModel(source + "/brown-train-sentences.txt", source + "/brown-train-tags.txt");
+
+        TaggingServer server = new TaggingServer(ViterbiAlgorithm::getTagger);
+        server.start(port);
+        System.out.println("Listening On " + server.getAddress());
+
+        // Printing the request metrics when the server is stopped.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            System.out.printf("Sentences: %d, Latency p50 (us): %.1f, Latency p99 (us): %.1f%n",
+                    server.getRequestMetrics().getSentences(), server.getRequestMetrics().getLatencyP50Micros(),
+                    server.getRequestMetrics().getLatencyP99Micros());
+        }));
+
+        try
+        {
+            server.join();
+        }
+
+        catch (InterruptedException e)
+        {
+            server.close();
+        }
+    }
+
+    /**
+     * Start - Starts listening on the loopback address, and starts the batching thread.
+     *
+     * @param port The port to listen on (0 for any free port).
+     * @return The port listened on.
+     */
+    public synchronized int start(int port) throws IOException
+    {
+        if (running)
+            throw new IllegalStateException("Server Already Started");
+
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        connections = Executors.newCachedThreadPool(runnable -> daemon(runnable, "TaggingServer Connection"));
+        running = true;
+
+        batcher = daemon(this::batch, "TaggingServer Batcher");
+        acceptor = daemon(this::accept, "TaggingServer Acceptor");
+        batcher.start();
+        acceptor.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Join - Waits until the server is closed.
+     */
+    public void join() throws InterruptedException
+    {
+        acceptor.join();
+    }
+
+    /**
+     * Close - Stops listening, closes every connection, and fails the sentences still waiting.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (!running)
+            return;
+
+        running = false;
+
+        try
+        {
+            serverSocket.close();
+        }
+
+        // Catching any IOException (there is nothing more to do with the socket).
+        catch (IOException e)
+        {
+            System.err.println("Error: " + e.getMessage());
+        }
+
+        for (Socket socket : sockets)
+        {
+            try
+            {
+                socket.close();
+            }
+
+            catch (IOException e)
+            {
+                System.err.println("Error: " + e.getMessage());
+            }
+        }
+
+        connections.shutdownNow();
+        batcher.interrupt();
+
+        Request request;
+        while ((request = waiting.poll()) != null)
+            request.tags.completeExceptionally(new IllegalStateException("Server Closed"));
+    }
+
+    /**
+     * Getter - Address (the host and port listened on)
+     */
+    public String getAddress()
+    {
+        return serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Getter - Request Metrics (each answered sentence, timed from when its line was read to when its answer was ready)
+     */
+    public RecordingMetrics getRequestMetrics()
+    {
+        return requestMetrics;
+    }
+
+    /**
+     * Getter - Average Batch Size (the number of sentences tagged per batch, on average, not counting empty lines)
+     */
+    public double getAverageBatchSize()
+    {
+        long count = batches.sum();
+        return count == 0 ? 0.0 : (double) batchedSentences.sum() / count;
+    }
+
+    /**
+     * Accept - The acceptor thread, which hands each new connection to a thread of its own.
+     */
+    private void accept()
+    {
+        while (running)
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                connections.execute(() -> serve(socket));
+            }
+
+            // Catching any IOException (including the socket being closed, when the server stops).
+            catch (IOException e)
+            {
+                if (running)
+                    System.err.println("Error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Serve - A connection thread, which answers the lines sent on one connection, in order, until it is closed.
+     */
+    private void serve(Socket socket)
+    {
+        try (socket;
+             BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                     StandardCharsets.UTF_8));
+             BufferedWriter output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                     StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = input.readLine()) != null)
+            {
+                long arrivalNanos = System.nanoTime();
+                String command = line.trim();
+
+                if (command.equalsIgnoreCase("#QUIT"))
+                    break;
+
+                if (command.equalsIgnoreCase("#STATS"))
+                    output.write(String.format("STATS Sentences: %d, Tokens: %d, Latency p50 (us): %.1f, "
+                                    + "Latency p99 (us): %.1f, Average Batch Size: %.2f", requestMetrics.getSentences(),
+                            requestMetrics.getTokens(), requestMetrics.getLatencyP50Micros(),
+                            requestMetrics.getLatencyP99Micros(), getAverageBatchSize()));
+                else
+                    output.write(answer(command, arrivalNanos));
+
+                output.newLine();
+                output.flush();
+            }
+        }
+
+        // Catching any IOException (the client has gone, or the server is stopping), which only ends this connection.
+        catch (SocketException e)
+        {
+            return;
+        }
+
+        catch (IOException e)
+        {
+            if (running)
+                System.err.println("Error: " + e.getMessage());
+        }
+
+        // Stopping when the server is closed while waiting for a batch.
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        finally
+        {
+            sockets.remove(socket);
+        }
+    }
+
+    /**
+     * Answer - Helper function that tags one sentence through the batching thread, giving back the line to send.
+     */
+    private String answer(String line, long arrivalNanos) throws InterruptedException
+    {
+        List<String> sentence = TokenReader.splitLine(line);
+
+        List<String> tags;
+        if (sentence.isEmpty())
+            tags = List.of();
+        else
+        {
+            Request request = new Request(sentence, arrivalNanos);
+            waiting.put(request);
+
+            try
+            {
+                tags = request.tags.get();
+            }
+
+            catch (ExecutionException e)
+            {
+                return "ERROR " + e.getCause();
+            }
+        }
+
+        long nanos = System.nanoTime() - arrivalNanos;
+        requestMetrics.recordSentence(sentence.size(), 0, 0, nanos);
+
+        StringBuilder answer = new StringBuilder("OK ").append(TimeUnit.NANOSECONDS.toMicros(nanos));
+        for (int i = 0; i < sentence.size(); i += 1)
+            answer.append(' ').append(sentence.get(i)).append('/').append(tags.get(i));
+
+        return answer.toString();
+    }
+
+    /**
+     * Batch - The batching thread, which collects the waiting sentences into batches and tags each batch in one pass.
+     */
+    private void batch()
+    {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        List<List<String>> sentences = new ArrayList<>(maxBatch);
+
+        while (running)
+        {
+            try
+            {
+                // Waiting for a first sentence, and then up to the delay for others to join it.
+                batch.add(waiting.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+
+                while (batch.size() < maxBatch)
+                {
+                    waiting.drainTo(batch, maxBatch - batch.size());
+
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() == maxBatch || remaining <= 0)
+                        break;
+
+                    Request request = waiting.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (request == null)
+                        break;
+
+                    batch.add(request);
+                }
+            }
+
+            // Stopping when the server is closed.
+            catch (InterruptedException e)
+            {
+                for (Request request : batch)
+                    request.tags.completeExceptionally(new IllegalStateException("Server Closed"));
+
+                return;
+            }
+
+            for (Request request : batch)
+                sentences.add(request.sentence);
+
+            try
+            {
+                List<List<String>> tags = taggers.get().tagAll(sentences);
+                for (int i = 0; i < batch.size(); i += 1)
+                    batch.get(i).tags.complete(tags.get(i));
+            }
+
+            // Failing the whole batch (for example, if no model has been trained or loaded).
+            catch (RuntimeException e)
+            {
+                for (Request request : batch)
+                    request.tags.completeExceptionally(e);
+            }
+
+            batches.increment();
+            batchedSentences.add(batch.size());
+            batch.clear();
+            sentences.clear();
+        }
+    }
+
+    /**
+     * Daemon - Helper function that makes a daemon thread (so that the server never keeps the JVM alive by itself).
+     */
+    private static Thread daemon(Runnable runnable, String name)
+    {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -1,8 +1,22 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * Testing Viterbi
@@ -21,17 +35,74 @@ import java.util.Scanner;
  */
 public class TestingViterbi
 {
-    public static void main(String[] args) throws IOException
+    public static void main(String[] args) throws IOException, InterruptedException
     {
+        // Recording metrics for the training, loading and tagging, which testFromFiles prints with the accuracy.
+        ViterbiAlgorithm.setMetrics(new RecordingMetrics());
+
         // BROWN CORPUS
         // Loading in the testing sentences and tags as "testInput" and "testCompare", respectively.
         List<List<String>> brownTestInput = InputLibrary.loadSentences("PS5/texts/brown-test-sentences.txt");
         List<List<String>> brownTestCompare = InputLibrary.loadTags("PS5/texts/brown-test-tags.txt");
 
-        // Training the HMM model for the Viterbi Algorithm based on the Brown corpus.
-        ViterbiAlgorithm.trainModel("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tags.txt");
+        // Loading the HMM model for the Viterbi Algorithm from a snapshot, if one has been saved (and can be read).
+        if (new File("PS5/brown.hmm").exists())
+        {
+            try
+            {
+                ViterbiAlgorithm.loadModel("PS5/brown.hmm");
+            }
+
+            // Treating a snapshot that cannot be read (for example, a corrupt or truncated one) as stale.
+            catch (IOException e)
+            {
+                System.err.println("Error: Cannot Load The Snapshot (" + e.getMessage() + "), Retraining");
+            }
+        }
+
+        // Otherwise (or if the snapshot is from before the UnknownWordModel), training the HMM model based on the Brown
+        // corpus and saving a snapshot for the next run.
+        if (ViterbiAlgorithm.getModelVersion() == 0
+                || ViterbiAlgorithm.getCompiledModel().getUnknownWordModel() == null)
+        {
+            ViterbiAlgorithm.trainModel("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tags.txt");
+            ViterbiAlgorithm.saveModel("PS5/brown.hmm");
+        }
+
         testFromFiles(brownTestInput, brownTestCompare);
 
+        // Checking the snapshots, the decoders, the registry and the caches (each check prints whether it passed).
+        boolean passed = checkSnapshot(brownTestInput);
+        passed &= checkKBest();
+        passed &= checkStreaming(brownTestInput);
+        passed &= checkRegistryRollback(brownTestInput);
+        passed &= checkCacheEviction();
+        passed &= checkBaumWelchMemory("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tags.txt");
+
+        if (!passed)
+            System.err.println("Error: A Check Failed");
+
+        // The comparisons and benchmarks take minutes, so they only run when asked for ("benchmarks" as an argument).
+        if (Arrays.asList(args).contains("benchmarks"))
+        {
+            testBeam(brownTestInput, brownTestCompare);
+            testCache(brownTestInput);
+            testPosteriors(brownTestInput, brownTestCompare);
+            testStreaming(brownTestInput, brownTestCompare);
+            testMemory("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tags.txt", brownTestInput);
+            testQuantized(brownTestInput, brownTestCompare);
+            testBaumWelch("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tags.txt", brownTestInput,
+                    brownTestCompare);
+            testHotSwap("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tags.txt", brownTestInput);
+            testBulk("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tagged.txt");
+            testServer(brownTestInput, 8);
+            testEvaluation(brownTestInput, brownTestCompare);
+            testCrossValidation("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tags.txt", 5);
+            testUnknownWords(brownTestInput, brownTestCompare);
+            testTrigram("PS5/texts/brown-train-sentences.txt", "PS5/texts/brown-train-tags.txt", brownTestInput,
+                    brownTestCompare);
+        }
+
         // SIMPLE FILES
 
         // List<List<String>> testInput = InputLibrary.loadSentences("PS5/texts/simple-test-sentences.txt");
@@ -79,37 +150,1182 @@ public class TestingViterbi
      */
     public static void testFromFiles(List<List<String>> observations, List<List<String>> testTags)
     {
-        double total = 0.0;
-        double matches = 0.0;
+        // Tagging and scoring all the sentences at once, which spreads the work across the available cores.
+        Evaluation evaluation = Evaluation.evaluate(ViterbiAlgorithm.getCompiledModel(), ViterbiAlgorithm::tagSentence,
+                observations, testTags);
+
+        // Printing out the results to the console.
+        System.out.println("Correct: " + evaluation.getCorrect());
+        System.out.println("Incorrect: " + (evaluation.getWords() - evaluation.getCorrect()));
+        System.out.println("Percentage: " + evaluation.getAccuracy());
+        System.out.printf("Known Words: %d (%.3f%% Correct), Unknown Words: %d (%.3f%% Correct)%n",
+                evaluation.getKnownWords(), evaluation.getKnownAccuracy(), evaluation.getUnknownWords(),
+                evaluation.getUnknownAccuracy());
+
+        // Printing out the metrics (if they are being recorded).
+        if (ViterbiAlgorithm.getMetrics().isEnabled())
+            System.out.println(ViterbiAlgorithm.getMetrics());
+    }
+
+    /**
+     * Check Snapshot
+     * Saves the model in use to a temporary snapshot file and loads it back, checking that the loaded model has the
+     * same tags and unknown word model, and tags every test sentence the same way.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @return Whether the check passed.
+     */
+    public static boolean checkSnapshot(List<List<String>> observations) throws IOException
+    {
+        CompiledModel model = ViterbiAlgorithm.getCompiledModel();
+        File file = File.createTempFile("snapshot", ".hmm");
+
+        try
+        {
+            ModelSnapshot.save(model, file.getPath());
+            CompiledModel loaded = ModelSnapshot.load(file.getPath());
+
+            int differences = 0;
+            for (List<String> sentence : observations)
+            {
+                if (!loaded.tagSentence(sentence).equals(model.tagSentence(sentence)))
+                    differences += 1;
+            }
+
+            boolean passed = differences == 0 && loaded.getTagCount() == model.getTagCount()
+                    && (loaded.getUnknownWordModel() == null) == (model.getUnknownWordModel() == null);
+
+            return check("Snapshot Round Trip", passed, differences + " Of " + observations.size()
+                    + " Sentences Tagged Differently After Loading, " + file.length() + " Bytes");
+        }
+
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test Evaluation
+     * Prints the full evaluation of the model on the test sentences: the accuracies, the precision and recall of each
+     * tag, and the most frequent mistakes.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param testTags     The List tag groups (containing a List of Strings) of the tags from a given input.
+     */
+    public static void testEvaluation(List<List<String>> observations, List<List<String>> testTags)
+    {
+        Evaluation evaluation = Evaluation.evaluate(ViterbiAlgorithm.getCompiledModel(), observations, testTags);
+
+        System.out.println(evaluation);
+        System.out.println();
+        System.out.println(evaluation.tagTable());
+        System.out.println();
+        System.out.println(evaluation.confusionTable(10));
+    }
+
+    /**
+     * Test Cross Validation
+     * Cross-validates models on the training files with k folds, for each of several prune thresholds of the
+     * UnknownWordModel (training each fold once, with the folds run concurrently), and times this against training and
+     * evaluating every fold for every threshold one at a time.
+     *
+     * @param folds The number of folds.
+     */
+    public static void testCrossValidation(String trainSentencesFile, String trainTagsFile, int folds)
+            throws IOException
+    {
+        // Reading the sentences from the encoded corpus (encoded on the first run, and whenever the files change).
+        List<TaggedSentence> corpus = EncodedCorpus.open(trainSentencesFile, trainTagsFile).sentences();
+        double[] pruneThresholds = {Double.POSITIVE_INFINITY, Math.log(1000), Math.log(100), Math.log(10)};
+        double unseenPenalty = ViterbiAlgorithm.getUnseenPenalty();
+
+        long start = System.nanoTime();
+        List<Evaluation> evaluations = CrossValidation.crossValidatePruneThresholds(corpus, folds, unseenPenalty,
+                pruneThresholds, true);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-20s %-10s %-16s %-16s%n", "Prune Threshold", "Accuracy", "Known Accuracy",
+                "Unknown Accuracy");
+        for (int i = 0; i < pruneThresholds.length; i += 1)
+        {
+            Evaluation evaluation = evaluations.get(i);
+            String name = pruneThresholds[i] == Double.POSITIVE_INFINITY ? "No Pruning"
+                    : String.format("1/%.0f", Math.exp(pruneThresholds[i]));
+            System.out.printf("%-20s %-10.3f %-16.3f %-16.3f%n", name, evaluation.getAccuracy(),
+                    evaluation.getKnownAccuracy(), evaluation.getUnknownAccuracy());
+        }
+
+        // Retraining and evaluating every fold for every threshold, one after another (as a sweep did before).
+        start = System.nanoTime();
+        boolean same = true;
+        for (int i = 0; i < pruneThresholds.length; i += 1)
+        {
+            Evaluation evaluation = CrossValidation.crossValidatePruneThresholds(corpus, folds, unseenPenalty,
+                    new double[]{pruneThresholds[i]}, false).get(0);
+            same &= evaluation.getCorrect() == evaluations.get(i).getCorrect();
+        }
+        double serialSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d Folds, %d Thresholds: %.2f s (One At A Time: %.2f s, Same Results: %b)%n", folds,
+                pruneThresholds.length, seconds, serialSeconds, same);
+    }
 
-        // Cycling through the List of observations.
+    /**
+     * Test Cache
+     * Tags skewed, repeating traffic (drawn from the given sentences so that a few sentences come up very often and most
+     * rarely) with a SentenceCache of each policy, checking that every cached result matches the uncached tagger, and
+     * printing the hit rate and speed of each.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     */
+    public static void testCache(List<List<String>> observations)
+    {
+        ViterbiTagger uncached = ViterbiAlgorithm.getTagger().withCache(null);
+        Random random = new Random(10);
+
+        // Drawing the requests, with the chance of each sentence falling off steeply with its index.
+        List<List<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 20 * observations.size(); i += 1)
+        {
+            double r = random.nextDouble();
+            requests.add(observations.get((int) (observations.size() * r * r * r)));
+        }
+
+        for (BoundedCache.Policy policy : BoundedCache.Policy.values())
+        {
+            SentenceCache cache = new SentenceCache(observations.size() / 20, policy);
+            ViterbiTagger tagger = uncached.withCache(cache);
+
+            long tokens = 0;
+            long start = System.nanoTime();
+            for (List<String> sentence : requests)
+                tokens += tagger.tagSentence(sentence).size();
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double hitRate = cache.getStatistics().getHitRate();
+
+            for (List<String> sentence : requests)
+            {
+                if (!tagger.tagSentence(sentence).equals(uncached.tagSentence(sentence)))
+                    throw new IllegalStateException("Cached Tags Differ: " + sentence);
+            }
+
+            System.out.printf("%-10s hit rate %.3f, %.0f tokens/sec%n", policy, hitRate, tokens / seconds);
+        }
+    }
+
+    /**
+     * Check Cache Eviction
+     * Fills a small BoundedCache of each policy and then floods it with keys that are only used once. The LRU cache
+     * must evict exactly the least recently used entry when it first overflows; the TinyLFU cache must keep the
+     * frequently used entries in its protected area through the flood. Neither may ever hold more than its capacity.
+     *
+     * @return Whether the check passed.
+     */
+    public static boolean checkCacheEviction()
+    {
+        int capacity = 8;
+        boolean passed = true;
+
+        for (BoundedCache.Policy policy : BoundedCache.Policy.values())
+        {
+            BoundedCache<Integer, Integer> cache = new BoundedCache<>(capacity, policy);
+
+            // Filling the cache, using each entry a few times (a miss and a put, then hits).
+            for (int key = 0; key < capacity; key += 1)
+            {
+                if (cache.get(key) == null)
+                    cache.put(key, key);
+            }
+
+            for (int use = 0; use < 3; use += 1)
+            {
+                for (int key = 0; key < capacity; key += 1)
+                    cache.get(key);
+            }
+
+            // Overflowing the cache by one new entry, after using the first entry again.
+            cache.get(0);
+            cache.get(capacity);
+            cache.put(capacity, capacity);
+
+            boolean evicted = cache.size() <= capacity && cache.getEvictions() == 1;
+            if (policy == BoundedCache.Policy.LRU)
+                evicted &= cache.get(1) == null && cache.get(0) != null;
+
+            // Flooding the cache with keys that are only used once.
+            int largest = cache.size();
+            for (int key = 100; key < 1100; key += 1)
+            {
+                if (cache.get(key) == null)
+                    cache.put(key, key);
+
+                largest = Math.max(largest, cache.size());
+            }
+
+            int kept = 0;
+            for (int key = 0; key < capacity; key += 1)
+            {
+                if (cache.get(key) != null)
+                    kept += 1;
+            }
+
+            /* The LRU cache loses every frequent entry to the flood, while the TinyLFU cache keeps at least those in its
+            protected area (80% of the main area, after a window of one entry), as the flood only displaces probation.
+             */
+            boolean flooded = largest <= capacity;
+            flooded &= policy == BoundedCache.Policy.LRU ? kept == 0 : kept >= (capacity - 1) * 4 / 5;
+
+            passed &= check("Cache Eviction " + policy, evicted && flooded, kept + " Of " + capacity
+                    + " Frequent Entries Kept Through The Flood, At Most " + largest + " Entries, "
+                    + cache.getEvictions() + " Evictions");
+        }
+
+        return passed;
+    }
+
+    /**
+     * Check K-Best
+     * Checks the KBestDecoder on a small model in which some tag sequences are impossible (their transitions were never
+     * seen): asking for five paths gives back only the one possible path for a sentence with one, nothing for a sentence
+     * with none, and for a sentence with two, those two alone, best first, the first being the Viterbi path.
+     *
+     * @return Whether the check passed.
+     */
+    public static boolean checkKBest()
+    {
+        HiddenMarkovModel markovModel = new HiddenMarkovModel();
+        markovModel.train(List.of(
+                new TaggedSentence(List.of("a", "b"), List.of("X", "Y")),
+                new TaggedSentence(List.of("b", "c"), List.of("Y", "Z")),
+                new TaggedSentence(List.of("d", "b"), List.of("X", "Y")),
+                new TaggedSentence(List.of("d", "c"), List.of("Y", "Z")),
+                new TaggedSentence(List.of("a", "d"), List.of("X", "X"))));
+
+        CompiledModel model = new CompiledModel(markovModel, ViterbiAlgorithm.getUnseenPenalty());
+        KBestDecoder decoder = new KBestDecoder(model);
+
+        // "a b c" has one possible path (X Y Z), "c a" has none (nothing starts with Z), and "a d" has two.
+        List<KBestDecoder.ScoredPath> one = decoder.bestPaths(List.of("a", "b", "c"), 5);
+        List<KBestDecoder.ScoredPath> none = decoder.bestPaths(List.of("c", "a"), 5);
+        List<KBestDecoder.ScoredPath> several = decoder.bestPaths(List.of("a", "d"), 5);
+
+        boolean passed = one.size() == 1 && one.get(0).getTags().equals(List.of("X", "Y", "Z")) && none.isEmpty()
+                && several.size() == 2 && several.get(0).getTags().equals(model.tagSentence(List.of("a", "d")));
+
+        for (int p = 0; p < several.size(); p += 1)
+        {
+            passed &= several.get(p).getScore() > Double.NEGATIVE_INFINITY;
+            if (p > 0)
+                passed &= several.get(p).getScore() <= several.get(p - 1).getScore();
+        }
+
+        return check("K-Best Paths", passed, one.size() + ", " + none.size() + " And " + several.size()
+                + " Paths Of 5 (Expected 1, 0 And 2, Best First)");
+    }
+
+    /**
+     * Test Posteriors
+     * Compares tagging each word with its most probable tag (from the ForwardBackward posteriors) and tagging with the
+     * best of the k best paths (from the KBestDecoder) against the Viterbi algorithm, and checks how well the posterior
+     * confidence of each word matches how often its tag is correct.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param testTags     The List tag groups (containing a List of Strings) of the tags from a given input.
+     */
+    public static void testPosteriors(List<List<String>> observations, List<List<String>> testTags)
+    {
+        CompiledModel model = ViterbiAlgorithm.getCompiledModel();
+        ForwardBackward forwardBackward = new ForwardBackward(model);
+        KBestDecoder kBest = new KBestDecoder(model);
+
+        System.out.printf("%-18s %-10s %-12s%n", "Decoder", "Accuracy", "Tokens/Sec");
+
+        double[] results = benchmark(model::tagSentence, observations, testTags);
+        System.out.printf("%-18s %-10.3f %-12.0f%n", "viterbi", results[0], results[1]);
+
+        results = benchmark(sentence ->
+        {
+            ForwardBackward.Posteriors posteriors = forwardBackward.posteriors(sentence);
+            List<String> tags = new ArrayList<>();
+            for (int i = 0; i < posteriors.size(); i += 1)
+                tags.add(posteriors.getBestTag(i));
+
+            return tags;
+        }, observations, testTags);
+        System.out.printf("%-18s %-10.3f %-12.0f%n", "posterior", results[0], results[1]);
+
+        for (int k : new int[]{1, 5, 20})
+        {
+            // A sentence with no possible path has no k best paths, so it keeps the Viterbi tags.
+            results = benchmark(sentence ->
+            {
+                List<KBestDecoder.ScoredPath> paths = kBest.bestPaths(sentence, k);
+                return paths.isEmpty() ? model.tagSentence(sentence) : paths.get(0).getTags();
+            }, observations, testTags);
+            System.out.printf("%-18s %-10.3f %-12.0f%n", "k-best (k = " + k + ")", results[0], results[1]);
+        }
+
+        // Grouping the words by their confidence (in tenths), and finding the accuracy of each group.
+        int[] words = new int[10];
+        int[] correct = new int[10];
+
+        for (int s = 0; s < observations.size(); s += 1)
+        {
+            ForwardBackward.Posteriors posteriors = forwardBackward.posteriors(observations.get(s));
+            for (int i = 0; i < posteriors.size(); i += 1)
+            {
+                int group = Math.min(9, (int) (posteriors.getConfidence(i) * 10));
+                words[group] += 1;
+                if (posteriors.getBestTag(i).equals(testTags.get(s).get(i)))
+                    correct[group] += 1;
+            }
+        }
+
+        System.out.printf("%n%-12s %-10s %-10s%n", "Confidence", "Words", "Accuracy");
+        for (int group = 0; group < 10; group += 1)
+        {
+            if (words[group] > 0)
+                System.out.printf("%.1f - %.1f    %-10d %-10.3f%n", group / 10.0, (group + 1) / 10.0, words[group],
+                        correct[group] * 100.0 / words[group]);
+        }
+    }
+
+    /**
+     * Test Streaming
+     * Counts the sentences that the StreamingTagger tags differently from tagSentence when each sentence is ended, and
+     * then tags all the sentences as a single stream (with no boundaries between them), at several window sizes,
+     * printing the accuracy, the speed, and how many words had to wait for their tags on average.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param testTags     The List tag groups (containing a List of Strings) of the tags from a given input.
+     */
+    public static void testStreaming(List<List<String>> observations, List<List<String>> testTags)
+    {
+        CompiledModel model = ViterbiAlgorithm.getCompiledModel();
+        StreamingTagger sentenceTagger = new StreamingTagger(model);
+        int differences = 0;
+
+        for (List<String> sentence : observations)
+        {
+            List<String> tags = new ArrayList<>();
+            for (String word : sentence)
+                tags.addAll(sentenceTagger.push(word));
+
+            tags.addAll(sentenceTagger.end());
+
+            if (!tags.equals(model.tagSentence(sentence)))
+                differences += 1;
+        }
+
+        // Only a sentence in which the lattice breaks (and the streaming tagger starts again) can differ.
+        System.out.println("Sentences tagged differently when streamed: " + differences);
+
+        List<String> words = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
         for (int i = 0; i < observations.size(); i += 1)
         {
-            // Extracting the List of Strings representing the words in a given sentence.
-            List<String> sentence = observations.get(i);
+            words.addAll(observations.get(i));
+            expected.addAll(testTags.get(i));
+        }
+
+        System.out.printf("%-10s %-10s %-12s %-12s%n", "Window", "Accuracy", "Tokens/Sec", "Avg Pending");
+
+        for (int window : new int[]{StreamingTagger.DEFAULT_WINDOW, 16, 4, 2})
+        {
+            StreamingTagger tagger = new StreamingTagger(model, window);
+            List<String> tags = new ArrayList<>(words.size());
+            long pending = 0;
+
+            long start = System.nanoTime();
+            for (String word : words)
+            {
+                tags.addAll(tagger.push(word));
+                pending += tagger.getPending();
+            }
+
+            tags.addAll(tagger.end());
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            int correct = 0;
+            for (int i = 0; i < tags.size(); i += 1)
+            {
+                if (tags.get(i).equals(expected.get(i)))
+                    correct += 1;
+            }
+
+            System.out.printf("%-10d %-10.3f %-12.0f %-12.2f%n", window, correct * 100.0 / tags.size(),
+                    words.size() / seconds, (double) pending / words.size());
+        }
+    }
+
+    /**
+     * Check Streaming
+     * Streams each test sentence through a StreamingTagger on its own, checking that the tags are exactly those of
+     * CompiledModel.tagSentence, unless the sentence has no possible path at all (so that the lattice breaks, and the
+     * streaming tagger starts again from the start state partway through).
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @return Whether the check passed.
+     */
+    public static boolean checkStreaming(List<List<String>> observations)
+    {
+        CompiledModel model = ViterbiAlgorithm.getCompiledModel();
+        StreamingTagger tagger = new StreamingTagger(model);
+        KBestDecoder decoder = new KBestDecoder(model);
+        int broken = 0;
+        int differences = 0;
+
+        for (List<String> sentence : observations)
+        {
+            List<String> tags = new ArrayList<>();
+            for (String word : sentence)
+                tags.addAll(tagger.push(word));
+
+            tags.addAll(tagger.end());
+
+            if (decoder.bestPaths(sentence, 1).isEmpty())
+                broken += 1;
+            else if (!tags.equals(model.tagSentence(sentence)))
+                differences += 1;
+        }
+
+        return check("Streaming Matches Batch", differences == 0, differences + " Of " + observations.size()
+                + " Sentences Tagged Differently (" + broken + " With No Possible Path Skipped)");
+    }
+
+    /**
+     * Test Baum Welch
+     * Trains a supervised model on the first 2000 tagged sentences of the training set, and then re-estimates it with
+     * BaumWelch from every training sentence (without the tags), printing the log likelihood, the time taken and the test
+     * accuracy after each iteration.
+     *
+     * @param trainSentencesFile The file path for the training sentences.
+     * @param trainTagsFile      The file path for the training tags.
+     * @param observations       The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param testTags           The List tag groups (containing a List of Strings) of the tags from a given input.
+     */
+    public static void testBaumWelch(String trainSentencesFile, String trainTagsFile, List<List<String>> observations,
+                                     List<List<String>> testTags) throws IOException
+    {
+        List<TaggedSentence> tagged = new ArrayList<>();
+        try (CorpusReader corpus = new CorpusReader(trainSentencesFile, trainTagsFile))
+        {
+            for (TaggedSentence sentence : corpus)
+            {
+                if (tagged.size() == 2000)
+                    break;
+
+                tagged.add(sentence);
+            }
+        }
+
+        HiddenMarkovModel supervised = new HiddenMarkovModel(true);
+        supervised.train(tagged);
+
+        BaumWelch baumWelch = new BaumWelch(supervised, ViterbiAlgorithm.getUnseenPenalty(), 1.0);
+
+        System.out.printf("%-10s %-16s %-10s %-10s%n", "Iteration", "Log Likelihood", "Time (s)", "Accuracy");
+        System.out.printf("%-10d %-16s %-10s %-10.3f%n", 0, "-", "-",
+                benchmark(baumWelch.getModel()::tagSentence, observations, testTags)[0]);
+
+        for (int iteration = 1; iteration <= 5; iteration += 1)
+        {
+            long start = System.nanoTime();
+            CompiledModel model = baumWelch.iterate(trainSentencesFile);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%-10d %-16.0f %-10.2f %-10.3f%n", iteration, baumWelch.getLogLikelihood(), seconds,
+                    benchmark(model::tagSentence, observations, testTags)[0]);
+        }
+    }
+
+    /**
+     * Check Baum Welch Memory
+     * Runs one BaumWelch iteration over the training sentences (many more shards than the pool has workers), checking
+     * that it used no more accumulators of expected counts than the pool has workers (one, with a parallelism of 1), so
+     * that the memory of the expectation step does not grow with the length of the text.
+     *
+     * @param trainSentencesFile The file path for the training sentences.
+     * @param trainTagsFile      The file path for the training tags.
+     * @return Whether the check passed.
+     */
+    public static boolean checkBaumWelchMemory(String trainSentencesFile, String trainTagsFile) throws IOException
+    {
+        List<TaggedSentence> tagged = new ArrayList<>();
+        long lines = 0;
+        try (CorpusReader corpus = new CorpusReader(trainSentencesFile, trainTagsFile))
+        {
+            for (TaggedSentence sentence : corpus)
+            {
+                if (tagged.size() < 500)
+                    tagged.add(sentence);
+
+                lines += 1;
+            }
+        }
+
+        HiddenMarkovModel supervised = new HiddenMarkovModel(true);
+        supervised.train(tagged);
+
+        BaumWelch baumWelch = new BaumWelch(supervised, ViterbiAlgorithm.getUnseenPenalty(), 1.0);
+        baumWelch.iterate(trainSentencesFile);
+
+        long shards = (lines + BaumWelch.SHARD_SIZE - 1) / BaumWelch.SHARD_SIZE;
+        int workers = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+
+        return check("Baum Welch Memory", baumWelch.getAccumulatorCount() <= workers,
+                baumWelch.getAccumulatorCount() + " Accumulators For " + shards + " Shards, " + workers + " Workers");
+    }
+
+    /**
+     * Check - Helper function that prints whether a check passed (with what it found), and returns it.
+     */
+    private static boolean check(String name, boolean passed, String detail)
+    {
+        System.out.printf("%-24s %-8s %s%n", name, passed ? "Passed" : "FAILED", detail);
+        return passed;
+    }
+
+    /**
+     * Test Bulk
+     * Tags a file into another file with ViterbiAlgorithm.tagFile, timing it against loading the file with InputLibrary
+     * and tagging it in a loop, and checks that the lines written are the same tags.
+     *
+     * @param inputFile  The file path of the sentences to tag.
+     * @param outputFile The file path to write the tagged sentences to.
+     */
+    public static void testBulk(String inputFile, String outputFile) throws IOException
+    {
+        long start = System.nanoTime();
+        List<List<String>> sentences = InputLibrary.loadSentences(inputFile);
+        List<List<String>> loopTags = new ArrayList<>(sentences.size());
+        for (List<String> sentence : sentences)
+            loopTags.add(ViterbiAlgorithm.tagSentence(sentence));
+        double loopSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        long lines = ViterbiAlgorithm.tagFile(inputFile, outputFile);
+        double bulkSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Reading the tags back from the output, skipping the empty lines (as InputLibrary does).
+        int differ = 0;
+        int index = 0;
+        try (TokenReader output = new TokenReader(outputFile))
+        {
+            for (List<String> line : output)
+            {
+                List<String> tags = new ArrayList<>(line.size());
+                for (String token : line)
+                    tags.add(token.substring(token.lastIndexOf('/') + 1));
+
+                if (index >= loopTags.size() || !tags.equals(loopTags.get(index)))
+                    differ += 1;
+
+                index += 1;
+            }
+        }
+
+        differ += Math.abs(loopTags.size() - index);
+
+        System.out.printf("Lines: %d, Loop: %.2f s, Bulk: %.2f s, Lines Differ: %d%n", lines, loopSeconds, bulkSeconds,
+                differ);
+    }
+
+    /**
+     * Test Server
+     * Starts a TaggingServer on a free loopback port, and sends it the test sentences from several clients at once (each
+     * on its own connection, with its share of the sentences), checking every answer against ViterbiAlgorithm.tagSentence.
+     * Prints the request latencies and the average number of sentences tagged per batch.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param clients      The number of clients.
+     */
+    public static void testServer(List<List<String>> observations, int clients)
+            throws IOException, InterruptedException
+    {
+        AtomicLong answers = new AtomicLong();
+        AtomicLong wrong = new AtomicLong();
+
+        try (TaggingServer server = new TaggingServer(ViterbiAlgorithm::getTagger))
+        {
+            int port = server.start(0);
+
+            List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < clients; c += 1)
+            {
+                int client = c;
+                threads.add(new Thread(() -> {
+                    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                         BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                 StandardCharsets.UTF_8));
+                         BufferedWriter output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                                 StandardCharsets.UTF_8)))
+                    {
+                        for (int i = client; i < observations.size(); i += clients)
+                        {
+                            List<String> sentence = observations.get(i);
+                            output.write(String.join(" ", sentence));
+                            output.newLine();
+                            output.flush();
+
+                            // Expecting "OK [latency] word/TAG ...".
+                            String[] answer = input.readLine().split(" ");
+                            List<String> tags = new ArrayList<>(sentence.size());
+                            for (int j = 2; j < answer.length; j += 1)
+                                tags.add(answer[j].substring(answer[j].lastIndexOf('/') + 1));
+
+                            if (!answer[0].equals("OK") || !tags.equals(ViterbiAlgorithm.tagSentence(sentence)))
+                                wrong.incrementAndGet();
+
+                            answers.incrementAndGet();
+                        }
+
+                        output.write("#QUIT");
+                        output.newLine();
+                        output.flush();
+                    }
+
+                    catch (IOException e)
+                    {
+                        System.err.println("Error: " + e.getMessage());
+                    }
+                }));
+            }
+
+            long start = System.nanoTime();
+            for (Thread thread : threads)
+                thread.start();
+            for (Thread thread : threads)
+                thread.join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            RecordingMetrics metrics = server.getRequestMetrics();
+            System.out.printf("Clients: %d, Sentences: %d, Wrong: %d, Sentences/Sec: %.0f%n", clients, answers.get(),
+                    wrong.get(), answers.get() / seconds);
+            System.out.printf("Latency p50 (us): %.1f, Latency p99 (us): %.1f, Average Batch Size: %.2f%n",
+                    metrics.getLatencyP50Micros(), metrics.getLatencyP99Micros(), server.getAverageBatchSize());
+        }
+    }
+
+    /**
+     * Test Unknown Words
+     * Compares the model with its UnknownWordModel, pruning the candidate tags of unknown words at several thresholds,
+     * against the same model giving unknown words the unseen penalty for every tag: the accuracy (over every word and
+     * over the unknown words), the average number of candidate tags of an unknown word, and the speed.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param testTags     The List tag groups (containing a List of Strings) of the tags from a given input.
+     */
+    public static void testUnknownWords(List<List<String>> observations, List<List<String>> testTags)
+    {
+        CompiledModel model = ViterbiAlgorithm.getCompiledModel();
+        UnknownWordModel unknownWordModel = model.getUnknownWordModel();
+
+        // A model loaded from a snapshot saved before the UnknownWordModel has none to compare.
+        if (unknownWordModel == null)
+        {
+            System.err.println("Error: The Model Has No Unknown Word Model");
+            return;
+        }
+
+        System.out.printf("%-20s %-10s %-18s %-12s %-12s%n", "Unknown Words", "Accuracy", "Unknown Accuracy",
+                "Candidates", "Tokens/Sec");
+
+        CompiledModel flat = model.withUnknownWordModel(null);
+        Evaluation evaluation = Evaluation.evaluate(flat, observations, testTags);
+        System.out.printf("%-20s %-10.3f %-18.3f %-12d %-12.0f%n", "Unseen Penalty", evaluation.getAccuracy(),
+                evaluation.getUnknownAccuracy(), flat.getTagCount(), benchmark(flat::tagSentence, observations,
+                        testTags)[1]);
+
+        double[] thresholds = {Double.POSITIVE_INFINITY, Math.log(1000), Math.log(100), Math.log(10)};
+        for (double threshold : thresholds)
+        {
+            UnknownWordModel thresholded = unknownWordModel.withPruneThreshold(threshold);
+            CompiledModel pruned = model.withUnknownWordModel(thresholded);
+            evaluation = Evaluation.evaluate(pruned, observations, testTags);
+
+            // The average number of candidate tags of the unknown words in the sentences.
+            long candidates = 0;
+            for (List<String> sentence : observations)
+            {
+                for (String word : sentence)
+                {
+                    if (pruned.getWordId(word) < 0)
+                        candidates += thresholded.estimate(word).getCandidates().length;
+                }
+            }
+
+            String name = threshold == Double.POSITIVE_INFINITY ? "Suffix (No Pruning)"
+                    : String.format("Suffix (1/%.0f)", Math.exp(threshold));
+            System.out.printf("%-20s %-10.3f %-18.3f %-12.2f %-12.0f%n", name, evaluation.getAccuracy(),
+                    evaluation.getUnknownAccuracy(), (double) candidates / evaluation.getUnknownWords(),
+                    benchmark(pruned::tagSentence, observations, testTags)[1]);
+        }
+    }
+
+    /**
+     * Test Hot Swap
+     * Tags the test sentences on several threads while another thread keeps publishing two different models (one trained
+     * on the first 2000 training sentences, one on all of them) and rolling back, and checks that the tags of every
+     * sentence are exactly the tags of one of the two models, and always the same model for the same version.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     */
+    public static void testHotSwap(String trainSentencesFile, String trainTagsFile, List<List<String>> observations)
+            throws IOException, InterruptedException
+    {
+        List<TaggedSentence> tagged = new ArrayList<>();
+        try (CorpusReader corpus = new CorpusReader(trainSentencesFile, trainTagsFile))
+        {
+            for (TaggedSentence sentence : corpus)
+            {
+                if (tagged.size() == 2000)
+                    break;
 
-            // Creating a new List of Strings of the tags, based on the sentence.
-            List<String> tags = ViterbiAlgorithm.tagSentence(sentence);
+                tagged.add(sentence);
+            }
+        }
+
+        HiddenMarkovModel small = new HiddenMarkovModel(true);
+        small.train(tagged);
+
+        double unseenPenalty = ViterbiAlgorithm.getUnseenPenalty();
+        ViterbiTagger[] taggers = {
+                new ViterbiTagger(new CompiledModel(small, unseenPenalty)),
+                new ViterbiTagger(ViterbiAlgorithm.getCompiledModel())
+        };
+
+        // The tags each model gives each sentence, worked out beforehand.
+        List<List<List<String>>> expected = new ArrayList<>();
+        for (ViterbiTagger tagger : taggers)
+            expected.add(tagger.tagAll(observations));
 
-            // Extracting the List of Strings representing the appropriate tags for a given sentence.
-            List<String> givenTags = testTags.get(i);
+        ModelRegistry registry = new ModelRegistry();
+        registry.publish(taggers[0], small, "Small");
 
-            // Cycling through the words/tags.
-            for (int j = 0; j < observations.get(i).size(); j += 1)
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong sentences = new AtomicLong();
+        AtomicLong mixed = new AtomicLong();
+        AtomicLong inconsistent = new AtomicLong();
+
+        // The model seen for each version, from the sentences the two models tag differently.
+        ConcurrentHashMap<Integer, Integer> versionModels = new ConcurrentHashMap<>();
+
+        int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t += 1)
+        {
+            int offset = t * observations.size() / threadCount;
+            threads.add(new Thread(() -> {
+                for (int i = offset; running.get(); i = (i + 1) % observations.size())
+                {
+                    ModelRegistry.VersionedTags result = registry.tagSentence(observations.get(i));
+                    sentences.incrementAndGet();
+
+                    boolean first = result.getTags().equals(expected.get(0).get(i));
+                    boolean second = result.getTags().equals(expected.get(1).get(i));
+
+                    if (!first && !second)
+                        mixed.incrementAndGet();
+                    else if (first != second)
+                    {
+                        Integer seen = versionModels.putIfAbsent(result.getVersion(), first ? 0 : 1);
+                        if (seen != null && seen != (first ? 0 : 1))
+                            inconsistent.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+
+        // Publishing the two models in turn, and rolling back every third time.
+        int publishes = 0;
+        int rollbacks = 0;
+        long end = System.nanoTime() + 3_000_000_000L;
+        while (System.nanoTime() < end)
+        {
+            Thread.sleep(5);
+            if (publishes % 3 == 2 && !registry.history().isEmpty())
             {
-                // If the tag we found using the Viterbi algorithm matches the given tag, we increase the number of matches.
-                if (tags.get(j).equals(givenTags.get(j)))
+                registry.rollback();
+                rollbacks += 1;
+            }
+
+            int model = (publishes + 1) % 2;
+            registry.publish(taggers[model], null, model == 0 ? "Small" : "Full");
+            publishes += 1;
+        }
+
+        running.set(false);
+        for (Thread thread : threads)
+            thread.join();
+
+        System.out.printf("Threads: %d, Sentences Tagged: %d, Versions Published: %d, Rollbacks: %d%n", threadCount,
+                sentences.get(), publishes, rollbacks);
+        System.out.printf("Tagged By Neither Model: %d, Tagged By Both Models In One Version: %d%n", mixed.get(),
+                inconsistent.get());
+    }
+
+    /**
+     * Check Registry Rollback
+     * Publishes three versions to a ModelRegistry and rolls back through them, checking the number and tagger of the
+     * current version after each step, that tagging reports the version that tagged, that rolling back past the first
+     * version fails, and that the Hidden Markov Model handed out is a copy of the published one.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @return Whether the check passed.
+     */
+    public static boolean checkRegistryRollback(List<List<String>> observations)
+    {
+        CompiledModel model = ViterbiAlgorithm.getCompiledModel();
+        ViterbiTagger[] taggers = {
+                new ViterbiTagger(model),
+                new ViterbiTagger(model, 4, Double.POSITIVE_INFINITY),
+                new ViterbiTagger(model, 1, Double.POSITIVE_INFINITY)
+        };
+
+        HiddenMarkovModel markovModel = new HiddenMarkovModel(true);
+        markovModel.addSentence(new TaggedSentence(List.of("the", "dog"), List.of("DET", "N")));
+
+        ModelRegistry registry = new ModelRegistry();
+        for (int v = 0; v < taggers.length; v += 1)
+            registry.publish(taggers[v], v == taggers.length - 1 ? markovModel : null, "Version " + (v + 1));
+
+        // The Hidden Markov Model of the current version is handed out as a copy.
+        HiddenMarkovModel copy = registry.current().getMarkovModel();
+        List<String> sentence = observations.get(0);
+
+        boolean passed = registry.current().getNumber() == 3 && registry.history().size() == 2 && copy != markovModel
+                && copy.getTransitionMap().equals(markovModel.getTransitionMap());
+
+        // Rolling back to version 2, and then to version 1.
+        for (int expected = 2; expected >= 1; expected -= 1)
+        {
+            ModelRegistry.Version version = registry.rollback();
+            ModelRegistry.VersionedTags tags = registry.tagSentence(sentence);
+
+            passed &= version.getNumber() == expected && registry.current() == version
+                    && version.getTagger() == taggers[expected - 1] && tags.getVersion() == expected
+                    && tags.getTags().equals(taggers[expected - 1].tagSentence(sentence));
+        }
+
+        // Rolling back past the first version.
+        boolean failed = false;
+        try
+        {
+            registry.rollback();
+        }
+
+        catch (IllegalStateException e)
+        {
+            failed = true;
+        }
+
+        passed &= failed;
+
+        return check("Registry Rollback", passed, "Rolled Back From Version 3 To " + registry.current().getNumber()
+                + (failed ? ", Then Refused" : ", Then Rolled Back Again"));
+    }
+
+    /**
+     * Test Quantized
+     * Compares the QuantizedModel at each precision against the full-precision model: the accuracy, the number of tags
+     * that differ from the full-precision tags, the speed, and the size of the score arrays (the full-precision size being
+     * that of the same sparse layout with doubles).
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param testTags     The List tag groups (containing a List of Strings) of the tags from a given input.
+     */
+    public static void testQuantized(List<List<String>> observations, List<List<String>> testTags)
+    {
+        CompiledModel model = ViterbiAlgorithm.getCompiledModel();
+        CompactModel compactModel = new CompactModel(model);
+
+        int tagCount = model.getTagCount();
+        long fullBytes = (long) (compactModel.getVocabulary().size() + 1) * Integer.BYTES
+                + (long) compactModel.getObservationCount() * (Short.BYTES + Double.BYTES)
+                + (long) (tagCount * tagCount + 2 * tagCount) * Double.BYTES;
+
+        System.out.printf("%-10s %-10s %-12s %-12s %-12s%n", "Precision", "Accuracy", "Tags Differ", "Tokens/Sec",
+                "Size (KB)");
+
+        double[] results = benchmark(model::tagSentence, observations, testTags);
+        System.out.printf("%-10s %-10.3f %-12d %-12.0f %-12.1f%n", "DOUBLE", results[0], 0, results[1],
+                fullBytes / 1e3);
+
+        for (QuantizedModel.Precision precision : QuantizedModel.Precision.values())
+        {
+            QuantizedModel quantizedModel = new QuantizedModel(model, precision);
+            results = benchmark(quantizedModel::tagSentence, observations, testTags);
+
+            int differ = 0;
+            for (List<String> sentence : observations)
+            {
+                List<String> full = model.tagSentence(sentence);
+                List<String> quantized = quantizedModel.tagSentence(sentence);
+
+                for (int i = 0; i < full.size(); i += 1)
+                {
+                    if (!full.get(i).equals(quantized.get(i)))
+                        differ += 1;
+                }
+            }
+
+            System.out.printf("%-10s %-10.3f %-12d %-12.0f %-12.1f%n", precision, results[0], differ, results[1],
+                    quantizedModel.getHeapBytes() / 1e3);
+        }
+    }
+
+    /**
+     * Test Memory
+     * Measures the heap used by each form of the model (the maps of the Hidden Markov Model, the arrays of the
+     * CompiledModel, and the CompactModel, with the off-heap size of its Vocabulary), first for the Brown training set
+     * and then for a synthetic vocabulary of half a million words. The CompactModel is checked to tag the given
+     * sentences exactly as the CompiledModel does.
+     *
+     * @param trainSentencesFile The file path for the training sentences.
+     * @param trainTagsFile      The file path for the training tags.
+     * @param observations       The List of sentences (containing a List of Strings) to check the tags of.
+     */
+    public static void testMemory(String trainSentencesFile, String trainTagsFile, List<List<String>> observations)
+            throws IOException
+    {
+        HiddenMarkovModel brown = new HiddenMarkovModel();
+        try (CorpusReader corpus = new CorpusReader(trainSentencesFile, trainTagsFile))
+        {
+            brown.train(corpus);
+        }
+
+        CompiledModel brownCompiled = new CompiledModel(brown, ViterbiAlgorithm.getUnseenPenalty());
+        CompactModel brownCompact = new CompactModel(brownCompiled);
+
+        for (List<String> sentence : observations)
+        {
+            if (!brownCompact.tagSentence(sentence).equals(brownCompiled.tagSentence(sentence)))
+                throw new IllegalStateException("Compact Tags Differ: " + sentence);
+        }
+
+        brown = null;
+        brownCompiled = null;
+        brownCompact = null;
+
+        System.out.printf("%-10s %-10s %-14s %-16s %-16s %-14s%n", "Corpus", "Words", "HMM Maps (MB)",
+                "CompiledModel (MB)", "CompactModel (MB)", "Off-Heap (MB)");
+
+        reportMemory("brown", () ->
+        {
+            HiddenMarkovModel model = new HiddenMarkovModel();
+            try (CorpusReader corpus = new CorpusReader(trainSentencesFile, trainTagsFile))
+            {
+                model.train(corpus);
+            }
+
+            return model;
+        });
+
+        // A synthetic corpus, where each of 500,000 words is seen once or twice, with one or two of twelve tags.
+        int wordCount = 500_000;
+        reportMemory("synthetic", () ->
+        {
+            List<TaggedSentence> sentences = new ArrayList<>();
+            for (int start = 0; start < 2 * wordCount; start += 20)
+            {
+                List<String> words = new ArrayList<>();
+                List<String> tags = new ArrayList<>();
+
+                for (int i = start; i < start + 20; i += 1)
+                {
+                    int word = i % wordCount;
+                    words.add("word" + word);
+                    tags.add("T" + (i < wordCount ? word % 12 : word * 7 % 12));
+                }
+
+                sentences.add(new TaggedSentence(words, tags));
+            }
+
+            HiddenMarkovModel model = new HiddenMarkovModel();
+            model.train(sentences);
+            return model;
+        });
+    }
+
+    /**
+     * Model Source - Builds a Hidden Markov Model to measure.
+     */
+    private interface ModelSource
+    {
+        HiddenMarkovModel build() throws IOException;
+    }
+
+    /**
+     * Report Memory - Helper function that builds each form of a model in turn, printing the heap each one adds.
+     */
+    private static void reportMemory(String name, ModelSource source) throws IOException
+    {
+        long base = usedHeap();
+        HiddenMarkovModel markovModel = source.build();
+        long maps = usedHeap() - base;
+
+        CompiledModel compiledModel = new CompiledModel(markovModel, ViterbiAlgorithm.getUnseenPenalty());
+        markovModel = null;
+        long compiled = usedHeap() - base;
+
+        // The compact model shares its (small) transition arrays with the compiled model, which are counted with it.
+        CompactModel compactModel = new CompactModel(compiledModel);
+        long both = usedHeap() - base;
+        int words = compiledModel.getWordCount();
+        compiledModel = null;
+        long compact = usedHeap() - base;
+
+        System.out.printf("%-10s %-10d %-14.1f %-16.1f %-16.1f %-14.1f%n", name, words, maps / 1e6, compiled / 1e6,
+                compact / 1e6, compactModel.getVocabulary().getOffHeapBytes() / 1e6);
+
+        // Keeping both models reachable until they have been measured.
+        if (both < 0)
+            System.out.println(compactModel.getObservationCount());
+    }
+
+    /**
+     * Used Heap - Helper function that gives the heap in use after collecting the garbage (as far as it will go).
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+
+        for (int i = 0; i < 5; i += 1)
+        {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        return used;
+    }
+
+    /**
+     * Test Beam - Compares the speed and accuracy of beam pruning (at several beam widths) against the exact Viterbi
+     * algorithm, using the model trained most recently.
+     *
+     * @param observations The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param testTags     The List tag groups (containing a List of Strings) of the tags from a given input.
+     */
+    public static void testBeam(List<List<String>> observations, List<List<String>> testTags)
+    {
+        CompiledModel model = ViterbiAlgorithm.getCompiledModel();
+        int[] beamWidths = {0, 10, 5, 3, 2, 1};
+
+        int tagCount = model.getTagCount();
+
+        System.out.printf("%-8s %-10s %-12s %-12s%n", "Beam", "Accuracy", "Tokens/Sec", "Edges/Token");
+
+        for (int beamWidth : beamWidths)
+        {
+            ViterbiTagger tagger = new ViterbiTagger(model, beamWidth, Double.POSITIVE_INFINITY);
+            double[] results = benchmark(tagger::tagSentence, observations, testTags);
+
+            // The edges scored for each word: every kept state to every tag (before the tag dictionary narrows them).
+            int edges = (beamWidth <= 0 ? tagCount : Math.min(beamWidth, tagCount)) * tagCount;
+
+            System.out.printf("%-8s %-10.3f %-12.0f %-12d%n", beamWidth <= 0 ? "exact" : String.valueOf(beamWidth),
+                    results[0], results[1], edges);
+        }
+    }
+
+    /**
+     * Test Trigram - Compares the speed and accuracy of the trigram model (at several beam widths) against the bigram
+     * model, both trained on the same files, with the trigram weight chosen on sentences held out of the training files.
+     *
+     * @param trainSentencesFile The file path for the training sentences.
+     * @param trainTagsFile      The file path for the training tags.
+     * @param observations       The List of sentences (containing a List of Strings) of the words from a given input.
+     * @param testTags           The List tag groups (containing a List of Strings) of the tags from a given input.
+     */
+    public static void testTrigram(String trainSentencesFile, String trainTagsFile, List<List<String>> observations,
+                                   List<List<String>> testTags) throws IOException
+    {
+        List<TaggedSentence> sentences = new ArrayList<>();
+        try (CorpusReader corpus = new CorpusReader(trainSentencesFile, trainTagsFile))
+        {
+            for (TaggedSentence sentence : corpus)
+                sentences.add(sentence);
+        }
+
+        HiddenMarkovModel markovModel = new HiddenMarkovModel();
+        markovModel.train(sentences);
+        CompiledModel model = new CompiledModel(markovModel, ViterbiAlgorithm.getUnseenPenalty());
+
+        // Choosing the trigram weight on the training sentences alone (the test sentences are only used to score it).
+        double trigramWeight = TrigramModel.selectTrigramWeight(sentences, ViterbiAlgorithm.getUnseenPenalty());
+        TrigramModel interpolated = new TrigramModel(model, sentences);
+
+        System.out.printf("Trigram Weight: %.2f (Deleted Interpolation: %.2f)%n", trigramWeight,
+                interpolated.getTrigramWeight());
+        System.out.printf("%-18s %-10s %-12s%n", "Model", "Accuracy", "Tokens/Sec");
+
+        double[] results = benchmark(model::tagSentence, observations, testTags);
+        System.out.printf("%-18s %-10.3f %-12.0f%n", "bigram (exact)", results[0], results[1]);
+
+        for (int beamWidth : new int[]{256, 64, 16, 4})
+        {
+            TrigramModel trigramModel = new TrigramModel(model, sentences, trigramWeight, beamWidth,
+                    Double.POSITIVE_INFINITY);
+
+            results = benchmark(trigramModel::tagSentence, observations, testTags);
+            System.out.printf("%-18s %-10.3f %-12.0f%n", "trigram (beam " + beamWidth + ")", results[0], results[1]);
+        }
+    }
+
+    /**
+     * Benchmark - Helper function that times a tagger over the sentences (after warming up, keeping the fastest of
+     * several single-threaded passes) and scores its tags.
+     *
+     * @return The percentage of tags that were correct, and the number of words tagged per second.
+     */
+    private static double[] benchmark(Function<List<String>, List<String>> tagger, List<List<String>> observations,
+                                      List<List<String>> testTags)
+    {
+        // Tagging the sentences a few times first, so that the timing is of compiled code.
+        for (int warmUp = 0; warmUp < 3; warmUp += 1)
+        {
+            for (List<String> sentence : observations)
+                tagger.apply(sentence);
+        }
+
+        // Timing several passes over the sentences, keeping the fastest.
+        double seconds = Double.POSITIVE_INFINITY;
+        List<List<String>> allTags = null;
+
+        for (int pass = 0; pass < 5; pass += 1)
+        {
+            long start = System.nanoTime();
+            allTags = new ArrayList<>();
+            for (List<String> sentence : observations)
+                allTags.add(tagger.apply(sentence));
+
+            seconds = Math.min(seconds, (System.nanoTime() - start) / 1e9);
+        }
+
+        double total = 0.0;
+        double matches = 0.0;
+
+        for (int i = 0; i < observations.size(); i += 1)
+        {
+            List<String> tags = allTags.get(i);
+
+            for (int j = 0; j < tags.size(); j += 1)
+            {
+                if (tags.get(j).equals(testTags.get(i).get(j)))
                     matches += 1;
 
-                // Regardless, we increase the total number of cases considered.
                 total += 1;
             }
         }
 
-        // Printing out the results to the console.
-        System.out.println("Correct: " + matches);
-        System.out.println("Incorrect: " + (total - matches));
-        System.out.println("Percentage: " + (matches * 100 / total));
+        return new double[]{matches * 100 / total, total / seconds};
     }
 
     /**
@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Token Reader
+ * Reads a text file one line at a time, splitting each line into its tokens (words or tags). The file is memory-mapped
+ * a window at a time, so only the window currently being read is mapped, however large the file is.
+ * <p>
+ * Lines are split on spaces and tabs by scanning the bytes directly, rather than with a regular expression, and each
+ * token is decoded from UTF-8 into its own String. A trailing carriage return is ignored. Lines read some other way
+ * (such as the TaggingServer's, from a socket) are split by the same rules with splitLine.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class TokenReader implements Iterable<List<String>>, AutoCloseable
+{
+    // The size of each mapped window of the file (a window grows if a single line is any longer).
+    private static final int WINDOW_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+    private final long fileSize;
+
+    // The currently mapped window, and the position in the file at which it starts.
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    // A scratch buffer for the bytes of the token being decoded.
+    private byte[] tokenBytes = new byte[64];
+
+    // The number of lines read so far.
+    private long lineNumber;
+
+    /**
+     * Constructor - Opens the file and maps the first window.
+     *
+     * @param filename The file path to read.
+     */
+    public TokenReader(String filename) throws IOException
+    {
+        channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+        fileSize = channel.size();
+        map(0, WINDOW_SIZE);
+    }
+
+    /**
+     * Getter - Line Number (the number of lines read so far)
+     */
+    public long getLineNumber()
+    {
+        return lineNumber;
+    }
+
+    /**
+     * Next Line - Reads the tokens of the next line, which is an empty list for an empty line.
+     *
+     * @return The List of tokens, or null at the end of the file.
+     */
+    public List<String> nextLine() throws IOException
+    {
+        // Finding the end of the line, mapping the next window (starting at this line) if the line runs past this one.
+        int start = window.position();
+        int end = findLineEnd(start);
+
+        while (end < 0)
+        {
+            long lineStart = windowStart + start;
+
+            // If there is nothing left in the file, we are done.
+            if (lineStart >= fileSize)
+                return null;
+
+            // If the window already reaches the end of the file, the last line has no newline.
+            if (windowStart + window.limit() >= fileSize)
+            {
+                end = window.limit();
+                break;
+            }
+
+            // Otherwise, mapping from the start of the line (doubling the window if the line fills the whole window).
+            int size = start == 0 ? (int) Math.min(Integer.MAX_VALUE - 8L, 2L * window.limit()) : WINDOW_SIZE;
+            map(lineStart, size);
+            start = 0;
+            end = findLineEnd(start);
+        }
+
+        lineNumber += 1;
+        window.position(Math.min(end + 1, window.limit()));
+
+        return tokenize(start, end);
+    }
+
+    /**
+     * Iterator - Iterates over the non-empty lines, from the current position to the end of the file.
+     */
+    @Override
+    public Iterator<List<String>> iterator()
+    {
+        return new Iterator<>()
+        {
+            private List<String> next = advance();
+
+            private List<String> advance()
+            {
+                try
+                {
+                    List<String> line;
+                    while ((line = nextLine()) != null && line.isEmpty())
+                        continue;
+
+                    return line;
+                }
+
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            @Override
+            public List<String> next()
+            {
+                if (next == null)
+                    throw new NoSuchElementException();
+
+                List<String> line = next;
+                next = advance();
+                return line;
+            }
+        };
+    }
+
+    /**
+     * Split Line
+     * Splits a line that has already been read (for example, from a socket) into its tokens, by the same rules as the
+     * lines of a file: on spaces and tabs, scanning the characters rather than with a regular expression, and ignoring a
+     * trailing carriage return.
+     *
+     * @param line The line, without its newline.
+     * @return The List of tokens, which is empty for an empty (or blank) line.
+     */
+    public static List<String> splitLine(String line)
+    {
+        List<String> tokens = new ArrayList<>();
+
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\r')
+            end -= 1;
+
+        int tokenStart = -1;
+        for (int i = 0; i <= end; i += 1)
+        {
+            char c = i < end ? line.charAt(i) : ' ';
+
+            // A space or tab ends the current token (if there is one), and any other character starts one.
+            if (c == ' ' || c == '\t')
+            {
+                if (tokenStart >= 0)
+                    tokens.add(line.substring(tokenStart, i));
+
+                tokenStart = -1;
+            }
+            else if (tokenStart < 0)
+                tokenStart = i;
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Close - Closes the file (the mapped window is released once it is no longer referenced).
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Map - Helper function that maps a window of the file, starting at a given position.
+     */
+    private void map(long start, int size) throws IOException
+    {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, fileSize - start));
+    }
+
+    /**
+     * Find Line End - Helper function that finds the index of the next newline in the window, or -1 if there is none.
+     */
+    private int findLineEnd(int start)
+    {
+        for (int i = start; i < window.limit(); i += 1)
+        {
+            if (window.get(i) == '\n')
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Tokenize - Helper function that splits the bytes in [start, end) of the window on spaces and tabs.
+     */
+    private List<String> tokenize(int start, int end)
+    {
+        List<String> tokens = new ArrayList<>();
+
+        // Ignoring a carriage return at the end of the line.
+        if (end > start && window.get(end - 1) == '\r')
+            end -= 1;
+
+        int length = 0;
+        for (int i = start; i <= end; i += 1)
+        {
+            byte b = i < end ? window.get(i) : (byte) ' ';
+
+            // A space or tab ends the current token (if there is one).
+            if (b == ' ' || b == '\t')
+            {
+                if (length > 0)
+                    tokens.add(new String(tokenBytes, 0, length, StandardCharsets.UTF_8));
+
+                length = 0;
+                continue;
+            }
+
+            // Otherwise, adding the byte to the current token, growing the scratch buffer if needed.
+            if (length == tokenBytes.length)
+                tokenBytes = Arrays.copyOf(tokenBytes, 2 * length);
+
+            tokenBytes[length] = b;
+            length += 1;
+        }
+
+        return tokens;
+    }
+}
@@ -0,0 +1,599 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trigram Model
+ * A "trigram" (second-order) version of the model, in which each tag depends on the two tags before it rather than just
+ * one. The observations are the same as in the bigram model, so they are taken from a CompiledModel, and the transitions
+ * are counted from the training sentences, with two "#" tags before the start of each sentence.
+ * <p>
+ * Most (tag, tag, tag) triples are seen rarely or never, so the transition scores are interpolated: the probability of a
+ * tag given the two before it is a weighted sum of the trigram and bigram probabilities (or just the bigram probability,
+ * if the two tags before it were never seen together). There is no unigram term, so a transition never seen as a bigram
+ * is still ruled out, as it is in the bigram model, and with a trigram weight of 0 the model is exactly the bigram model.
+ * The trigram weight is found by deleted interpolation, counting (for each triple seen in training) whether the trigram
+ * or the bigram estimate would have been better with that triple left out, or chosen by selectTrigramWeight, which
+ * compares weights (including 0) by the accuracy on sentences held out of training.
+ * <p>
+ * The Viterbi algorithm then runs over pairs of tags (previous, current) instead of single tags. Rather than all T x T
+ * pairs, only the pairs made of the candidate tags of the previous and current words (from the tag dictionary) are
+ * created, and only the best beamWidth pairs are kept after each observation, so the work per word stays far below T^3
+ * even for unknown words. As in CompiledModel, the arrays are the calling thread's DecoderBuffers, so nothing is
+ * allocated for each word.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class TrigramModel
+{
+    // The number of pair states kept after each observation, unless another beam width is given.
+    public static final int DEFAULT_BEAM_WIDTH = 64;
+
+    // The trigram weights compared by selectTrigramWeight, and the share of the sentences it holds out (one in ten).
+    private static final double[] CANDIDATE_WEIGHTS = {0.0, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9};
+    private static final int HELD_OUT = 10;
+
+    private final CompiledModel compiledModel;
+
+    // The number of tags (T), and the number of tags including the start tag (T + 1), which has ID T here.
+    private final int tagCount;
+    private final int contextCount;
+
+    // The number of pair states, (previous, current), numbered previous * T + current (the previous tag may be the start).
+    private final int pairCount;
+
+    /* The bigram probabilities, indexed by [second * T + next], and the trigram probabilities, indexed by
+    [(first * (T + 1) + second) * T + next], with whether each pair (first, second) was seen before a tag at all.
+     */
+    private final double[] bigramProbabilities;
+    private final double[] trigramProbabilities;
+    private final boolean[] seenContexts;
+
+    // The interpolated transition scores, indexed by [(first * (T + 1) + second) * T + next].
+    private final double[] transitions;
+
+    // The interpolation weight of the trigram probabilities (the bigram probabilities having the rest).
+    private final double trigramWeight;
+
+    // The number of pair states kept after each observation, and how far below the best a kept state may be.
+    private final int beamWidth;
+    private final double beamThreshold;
+
+    // The arrays used by the Viterbi algorithm, one set for each thread tagging with this model.
+    private final ThreadLocal<Buffers> buffers;
+
+    /**
+     * Constructor - Counts the tag trigrams in the training sentences, with the default beam.
+     *
+     * @param compiledModel The compiled bigram model (for its tags and observations).
+     * @param sentences     The tagged training sentences.
+     */
+    public TrigramModel(CompiledModel compiledModel, Iterable<TaggedSentence> sentences)
+    {
+        this(compiledModel, sentences, DEFAULT_BEAM_WIDTH, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Constructor - Counts the tag trigrams in the training sentences, finding the trigram weight by deleted
+     * interpolation.
+     *
+     * @param compiledModel The compiled bigram model (for its tags and observations).
+     * @param sentences     The tagged training sentences.
+     * @param beamWidth     The number of pair states kept after each observation.
+     * @param beamThreshold How far below the best pair state a pair state may be and still be kept.
+     */
+    public TrigramModel(CompiledModel compiledModel, Iterable<TaggedSentence> sentences, int beamWidth,
+                        double beamThreshold)
+    {
+        this(compiledModel, sentences, Double.NaN, beamWidth, beamThreshold);
+    }
+
+    /**
+     * Constructor - Counts the tag trigrams in the training sentences.
+     *
+     * @param compiledModel The compiled bigram model (for its tags and observations).
+     * @param sentences     The tagged training sentences.
+     * @param trigramWeight The interpolation weight of the trigram probabilities, from 0 to 1 (NaN to find it by deleted
+     *                      interpolation).
+     * @param beamWidth     The number of pair states kept after each observation.
+     * @param beamThreshold How far below the best pair state a pair state may be and still be kept.
+     */
+    public TrigramModel(CompiledModel compiledModel, Iterable<TaggedSentence> sentences, double trigramWeight,
+                        int beamWidth, double beamThreshold)
+    {
+        if (trigramWeight < 0 || trigramWeight > 1)
+            throw new IllegalArgumentException("Invalid Trigram Weight: " + trigramWeight);
+
+        this.compiledModel = compiledModel;
+        this.beamWidth = Math.max(1, beamWidth);
+        this.beamThreshold = beamThreshold;
+
+        tagCount = compiledModel.getTagCount();
+        contextCount = tagCount + 1;
+        pairCount = contextCount * tagCount;
+        int start = tagCount;
+
+        // Counting the bigrams and trigrams of the tags (with two start tags before each sentence).
+        long[] bigrams = new long[contextCount * tagCount];
+        long[] trigrams = new long[contextCount * contextCount * tagCount];
+
+        for (TaggedSentence sentence : sentences)
+        {
+            int[] ids = new int[sentence.getTags().size()];
+            boolean known = true;
+
+            for (int i = 0; i < ids.length && known; i += 1)
+            {
+                ids[i] = compiledModel.getTagId(sentence.getTags().get(i));
+                known = ids[i] >= 0;
+            }
+
+            // Skipping any sentence with a tag the compiled model does not have.
+            if (!known)
+                continue;
+
+            int first = start;
+            int second = start;
+
+            for (int next : ids)
+            {
+                bigrams[second * tagCount + next] += 1;
+                trigrams[(first * contextCount + second) * tagCount + next] += 1;
+
+                first = second;
+                second = next;
+            }
+        }
+
+        /* Totalling the counts for each context (the tag, or pair of tags, that comes before). These are the counts of
+        each context followed by a tag, so the last tag of a sentence is not counted as a context.
+         */
+        long[] bigramContexts = new long[contextCount];
+        long[] trigramContexts = new long[contextCount * contextCount];
+
+        for (int context = 0; context < contextCount; context += 1)
+        {
+            for (int next = 0; next < tagCount; next += 1)
+                bigramContexts[context] += bigrams[context * tagCount + next];
+        }
+
+        for (int context = 0; context < contextCount * contextCount; context += 1)
+        {
+            for (int next = 0; next < tagCount; next += 1)
+                trigramContexts[context] += trigrams[context * tagCount + next];
+        }
+
+        // Converting the counts to probabilities.
+        bigramProbabilities = new double[contextCount * tagCount];
+        for (int i = 0; i < bigramProbabilities.length; i += 1)
+            bigramProbabilities[i] = ratio(bigrams[i], bigramContexts[i / tagCount]);
+
+        trigramProbabilities = new double[contextCount * contextCount * tagCount];
+        for (int i = 0; i < trigramProbabilities.length; i += 1)
+            trigramProbabilities[i] = ratio(trigrams[i], trigramContexts[i / tagCount]);
+
+        seenContexts = new boolean[contextCount * contextCount];
+        for (int context = 0; context < seenContexts.length; context += 1)
+            seenContexts[context] = trigramContexts[context] > 0;
+
+        // Finding the trigram weight by deleted interpolation, unless it was given.
+        if (Double.isNaN(trigramWeight))
+        {
+            long trigramWins = 0;
+            long bigramWins = 0;
+
+            for (int pair = 0; pair < contextCount * contextCount; pair += 1)
+            {
+                int second = pair % contextCount;
+
+                for (int next = 0; next < tagCount; next += 1)
+                {
+                    long count = trigrams[pair * tagCount + next];
+                    if (count == 0)
+                        continue;
+
+                    double trigram = ratio(count - 1, trigramContexts[pair] - 1);
+                    double bigram = ratio(bigrams[second * tagCount + next] - 1, bigramContexts[second] - 1);
+
+                    // Giving the count to whichever estimate is better without this triple.
+                    if (trigram >= bigram)
+                        trigramWins += count;
+                    else
+                        bigramWins += count;
+                }
+            }
+
+            trigramWeight = trigramWins + bigramWins == 0 ? 0.0 : (double) trigramWins / (trigramWins + bigramWins);
+        }
+
+        this.trigramWeight = trigramWeight;
+        transitions = interpolate(trigramWeight);
+        buffers = ThreadLocal.withInitial(() -> new Buffers(pairCount));
+    }
+
+    /**
+     * Constructor - Helper constructor that shares the probabilities of another model, with a different trigram weight.
+     */
+    private TrigramModel(TrigramModel model, double trigramWeight)
+    {
+        if (trigramWeight < 0 || trigramWeight > 1)
+            throw new IllegalArgumentException("Invalid Trigram Weight: " + trigramWeight);
+
+        compiledModel = model.compiledModel;
+        tagCount = model.tagCount;
+        contextCount = model.contextCount;
+        pairCount = model.pairCount;
+        bigramProbabilities = model.bigramProbabilities;
+        trigramProbabilities = model.trigramProbabilities;
+        seenContexts = model.seenContexts;
+        beamWidth = model.beamWidth;
+        beamThreshold = model.beamThreshold;
+
+        this.trigramWeight = trigramWeight;
+        transitions = interpolate(trigramWeight);
+        buffers = ThreadLocal.withInitial(() -> new Buffers(pairCount));
+    }
+
+    /**
+     * With Trigram Weight - A model with the same counts and beam as this one, but a different trigram weight.
+     *
+     * @param trigramWeight The interpolation weight of the trigram probabilities, from 0 to 1.
+     */
+    public TrigramModel withTrigramWeight(double trigramWeight)
+    {
+        return new TrigramModel(this, trigramWeight);
+    }
+
+    /**
+     * Select Trigram Weight
+     * Chooses the trigram weight by holding out one in ten of the sentences, training a bigram and a trigram model on the
+     * rest, and tagging the held-out sentences with each candidate weight (from 0, the bigram model, up to 0.9). The
+     * weight with the most tags right is chosen, the smaller weight among equals, so the chosen weight is never worse on
+     * the held-out sentences than the bigram model alone.
+     *
+     * @param sentences     The tagged training sentences.
+     * @param unseenPenalty The log probability given to an observation never seen in training.
+     * @return The chosen trigram weight.
+     */
+    public static double selectTrigramWeight(List<TaggedSentence> sentences, double unseenPenalty)
+    {
+        List<TaggedSentence> training = new ArrayList<>(sentences.size());
+        List<List<String>> observations = new ArrayList<>();
+        List<List<String>> testTags = new ArrayList<>();
+
+        for (int i = 0; i < sentences.size(); i += 1)
+        {
+            TaggedSentence sentence = sentences.get(i);
+            if (i % HELD_OUT == HELD_OUT - 1)
+            {
+                observations.add(sentence.getWords());
+                testTags.add(sentence.getTags());
+            }
+
+            else
+                training.add(sentence);
+        }
+
+        HiddenMarkovModel markovModel = new HiddenMarkovModel();
+        markovModel.train(training);
+        CompiledModel compiledModel = new CompiledModel(markovModel, unseenPenalty);
+        TrigramModel trigramModel = new TrigramModel(compiledModel, training);
+
+        double bestWeight = 0.0;
+        long bestCorrect = -1;
+
+        for (double weight : CANDIDATE_WEIGHTS)
+        {
+            TrigramModel model = trigramModel.withTrigramWeight(weight);
+            long correct = Evaluation.evaluate(compiledModel, model::tagSentence, observations, testTags).getCorrect();
+
+            if (correct > bestCorrect)
+            {
+                bestCorrect = correct;
+                bestWeight = weight;
+            }
+        }
+
+        return bestWeight;
+    }
+
+    /**
+     * Getter - Compiled Model (the bigram model the observations come from)
+     */
+    public CompiledModel getCompiledModel()
+    {
+        return compiledModel;
+    }
+
+    /**
+     * Getter - Trigram Weight (the interpolation weight of the trigram probabilities, the bigram ones having the rest)
+     */
+    public double getTrigramWeight()
+    {
+        return trigramWeight;
+    }
+
+    /**
+     * Interpolate - Helper function that mixes the bigram and trigram probabilities with a given trigram weight,
+     * converting to log probabilities.
+     */
+    private double[] interpolate(double weight)
+    {
+        double[] scores = new double[contextCount * contextCount * tagCount];
+
+        for (int pair = 0; pair < contextCount * contextCount; pair += 1)
+        {
+            int second = pair % contextCount;
+
+            for (int next = 0; next < tagCount; next += 1)
+            {
+                double bigram = bigramProbabilities[second * tagCount + next];
+                double probability = seenContexts[pair]
+                        ? (1 - weight) * bigram + weight * trigramProbabilities[pair * tagCount + next] : bigram;
+
+                scores[pair * tagCount + next] = Math.log(probability);
+            }
+        }
+
+        return scores;
+    }
+
+    /**
+     * Tag Sentence
+     * The Viterbi algorithm over pair states. A pair state (previous, current) at observation i is reached from a pair
+     * state (first, previous) at observation i-1, scoring the transition from (first, previous) to current and the
+     * observation of word i in current. The back pointer of a pair state is the first tag, which together with the
+     * previous tag identifies the pair state it came from.
+     *
+     * @param sentence The sentence to tag with parts of speech (an empty sentence gives an empty list of tags).
+     */
+    public List<String> tagSentence(List<String> sentence)
+    {
+        // An empty sentence has no tags (and nothing to decode).
+        if (sentence.isEmpty())
+            return List.of();
+
+        int n = sentence.size();
+        int start = tagCount;
+
+        Buffers buffers = this.buffers.get();
+        short[] backPointers = buffers.backPointers(n);
+        double[] currentScores = buffers.currentScores;
+        double[] nextScores = buffers.nextScores;
+
+        // The kept pair states after the current observation, and the pair states reached at the next one.
+        int[] keptStates = buffers.currentStates;
+        int[] nextStates = buffers.nextStates;
+
+        // Handling the first observation, where every pair state comes from the two start tags.
+        int word = compiledModel.getWordId(sentence.get(0));
+        int[] candidates = compiledModel.candidateTags(word, sentence.get(0));
+        double[] column = compiledModel.emissionColumn(word, sentence.get(0));
+
+        int count = 0;
+        for (int next : candidates)
+        {
+            int key = start * tagCount + next;
+            nextStates[count] = key;
+            nextScores[key] = transitions[(start * contextCount + start) * tagCount + next] + column[next];
+            count += 1;
+        }
+
+        int kept = select(nextScores, nextStates, count, keptStates, buffers.selection);
+
+        double[] temp = currentScores;
+        currentScores = nextScores;
+        nextScores = temp;
+
+        // Cycling through the rest of the words in the sentence.
+        for (int i = 1; i < n; i += 1)
+        {
+            word = compiledModel.getWordId(sentence.get(i));
+            candidates = compiledModel.candidateTags(word, sentence.get(i));
+            column = compiledModel.emissionColumn(word, sentence.get(i));
+
+            int offset = i * pairCount;
+            int stamp = buffers.nextStamp();
+            count = 0;
+
+            // Following each kept pair state through the transition to each candidate tag.
+            for (int s = 0; s < kept; s += 1)
+            {
+                int key = keptStates[s];
+                int first = key / tagCount;
+                int previous = key - first * tagCount;
+                int context = (first * contextCount + previous) * tagCount;
+
+                for (int next : candidates)
+                {
+                    double score = currentScores[key] + transitions[context + next];
+                    int nextKey = previous * tagCount + next;
+
+                    // Creating the pair state if this is the first way to reach it, otherwise keeping the better way.
+                    if (buffers.stamps[nextKey] != stamp)
+                    {
+                        buffers.stamps[nextKey] = stamp;
+                        nextStates[count] = nextKey;
+                        nextScores[nextKey] = score;
+                        backPointers[offset + nextKey] = (short) first;
+                        count += 1;
+                    }
+
+                    else if (score > nextScores[nextKey])
+                    {
+                        nextScores[nextKey] = score;
+                        backPointers[offset + nextKey] = (short) first;
+                    }
+                }
+            }
+
+            // Adding the observation scores.
+            for (int s = 0; s < count; s += 1)
+            {
+                int nextKey = nextStates[s];
+                nextScores[nextKey] += column[nextKey % tagCount];
+            }
+
+            kept = select(nextScores, nextStates, count, keptStates, buffers.selection);
+
+            temp = currentScores;
+            currentScores = nextScores;
+            nextScores = temp;
+        }
+
+        // Finding the best last pair state, according to the final scores.
+        int key = keptStates[0];
+        for (int s = 1; s < kept; s += 1)
+        {
+            if (currentScores[keptStates[s]] > currentScores[key])
+                key = keptStates[s];
+        }
+
+        // Following the back pointers, from each pair state to the one before it.
+        String[] path = new String[n];
+        for (int i = n - 1; i >= 0; i -= 1)
+        {
+            int previous = key / tagCount;
+            path[i] = compiledModel.getTag(key - previous * tagCount);
+
+            if (i > 0)
+                key = backPointers[i * pairCount + key] * tagCount + previous;
+        }
+
+        return Arrays.asList(path);
+    }
+
+    /**
+     * Select
+     * Helper function that finds the pair states to keep: the best beamWidth of them, and only those within the beam
+     * threshold of the best, in the order they were reached (or the best one alone, if none is within the threshold).
+     *
+     * @return The number of pair states kept.
+     */
+    private int select(double[] scores, int[] states, int count, int[] kept, double[] selection)
+    {
+        int best = states[0];
+        for (int s = 1; s < count; s += 1)
+        {
+            if (scores[states[s]] > scores[best])
+                best = states[s];
+        }
+
+        // The cutoff is the threshold below the best score, or the score of the last state in the beam if that is higher.
+        double cutoff = scores[best] - beamThreshold;
+        if (count > beamWidth)
+        {
+            for (int s = 0; s < count; s += 1)
+                selection[s] = scores[states[s]];
+
+            cutoff = Math.max(cutoff, largest(selection, count, beamWidth));
+        }
+
+        int k = 0;
+        for (int s = 0; s < count && k < beamWidth; s += 1)
+        {
+            if (scores[states[s]] >= cutoff)
+            {
+                kept[k] = states[s];
+                k += 1;
+            }
+        }
+
+        if (k == 0)
+        {
+            kept[0] = best;
+            k = 1;
+        }
+
+        return k;
+    }
+
+    /**
+     * Largest - Helper function that finds the rank-th largest of the first count values (rearranging them), by
+     * quickselect.
+     */
+    private static double largest(double[] values, int count, int rank)
+    {
+        int target = count - rank;
+        int low = 0;
+        int high = count - 1;
+
+        while (low < high)
+        {
+            double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+
+            // Partitioning around the pivot, smaller values to the left.
+            while (i <= j)
+            {
+                while (values[i] < pivot)
+                    i += 1;
+                while (values[j] > pivot)
+                    j -= 1;
+
+                if (i <= j)
+                {
+                    double swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    i += 1;
+                    j -= 1;
+                }
+            }
+
+            // Continuing in whichever side holds the target (or stopping, if it lies between them).
+            if (target <= j)
+                high = j;
+            else if (target >= i)
+                low = i;
+            else
+                break;
+        }
+
+        return values[target];
+    }
+
+    /**
+     * Ratio - Helper function that divides two counts, giving zero when the denominator is not positive.
+     */
+    private static double ratio(long numerator, long denominator)
+    {
+        return denominator <= 0 ? 0.0 : (double) numerator / denominator;
+    }
+
+    /**
+     * Buffers - The DecoderBuffers of one thread (over the pair states), with the stamps that mark which pair states have
+     * been reached at the current observation, and room to select the beam.
+     */
+    private static final class Buffers extends DecoderBuffers
+    {
+        // The pair state with a given key has been reached at the current observation if its stamp is the current one.
+        private final int[] stamps;
+        private int stamp;
+
+        private final double[] selection;
+
+        Buffers(int pairCount)
+        {
+            super(pairCount);
+            stamps = new int[pairCount];
+            selection = new double[pairCount];
+        }
+
+        /**
+         * Next Stamp - A stamp not yet given to any pair state (clearing the stamps once every int has been used).
+         */
+        int nextStamp()
+        {
+            stamp += 1;
+            if (stamp == 0)
+            {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+
+            return stamp;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Unknown Word Model
+ * Estimates the observation scores of a word never seen in training from its suffix and its shape (capitalization,
+ * digits, hyphens), rather than giving it the same unseen penalty for every tag. Words seen only rarely in training
+ * behave most like unknown words, so the model is built from the tags of the words seen at most RARE_COUNT times:
+ * for each shape, and for each suffix of up to MAX_SUFFIX letters within a shape, how often each tag was seen.
+ * <p>
+ * The probability of each tag given a word is found by successive abstraction (as in the TnT tagger): starting from the
+ * tags of all rare words (add-one smoothed), then of rare words with the same shape, then of rare words with the same
+ * last letter, the same last two letters, and so on, each estimate is mixed with the one before it with weight theta
+ * (the standard deviation of the tag probabilities), stopping at the longest suffix seen in training. By Bayes' rule, the
+ * observation score of tag t is then log P(t | word) - log P(t) + log P(word), taking an unknown word to be as likely as a
+ * word seen once.
+ * <p>
+ * Each estimate also ranks the tags, and keeps as candidates only the tags within the prune threshold of the best one, so
+ * that the lattice for an unknown word is restricted (as it is for a known word by the tag dictionary) rather than trying
+ * every tag. Estimates are kept in a BoundedCache, so a word that comes up again costs one lookup.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class UnknownWordModel
+{
+    // The most times a word may be seen in training and still count as rare, and the longest suffix used.
+    public static final int RARE_COUNT = 10;
+    public static final int MAX_SUFFIX = 3;
+
+    // The default prune threshold (tags less than a thousandth as likely as the best are not candidates).
+    public static final double DEFAULT_PRUNE_THRESHOLD = Math.log(1000);
+
+    // The default number of estimates cached.
+    public static final int DEFAULT_CACHE_CAPACITY = 4096;
+
+    private final int tagCount;
+
+    // The log probability of each tag over every word, and of an unknown word.
+    private final double[] logTagPriors;
+    private final double logWordProbability;
+    private final boolean[] impossible;
+
+    // The tag probabilities of the rare words of each shape (already smoothed), and the weight of each abstraction.
+    private final double[][] shapeProbabilities;
+    private final double theta;
+
+    // The tag counts of the rare words, keyed by shape and suffix (see key).
+    private final Map<String, int[]> suffixCounts = new HashMap<>();
+
+    private final double pruneThreshold;
+    private final BoundedCache<String, Estimate> cache;
+
+    /**
+     * Shape - The kind of characters in a word.
+     */
+    public enum Shape
+    {
+        LOWER, CAPITALIZED, UPPER, NUMBER, HYPHENATED, SYMBOL;
+
+        /**
+         * Of - The shape of a word: any digit makes a number, any hyphen (but no digit) a hyphenated word, and no letter
+         * at all a symbol; otherwise, the case of the letters decides.
+         */
+        public static Shape of(String word)
+        {
+            boolean letter = false;
+            boolean hyphen = false;
+            boolean allUpper = true;
+
+            for (int i = 0; i < word.length(); i += 1)
+            {
+                char c = word.charAt(i);
+                if (Character.isDigit(c))
+                    return NUMBER;
+
+                if (c == '-')
+                    hyphen = true;
+                else if (Character.isLetter(c))
+                {
+                    letter = true;
+                    allUpper &= Character.isUpperCase(c);
+                }
+            }
+
+            if (hyphen)
+                return HYPHENATED;
+            if (!letter)
+                return SYMBOL;
+            if (allUpper && word.length() > 1)
+                return UPPER;
+
+            return Character.isUpperCase(word.charAt(0)) ? CAPITALIZED : LOWER;
+        }
+    }
+
+    /**
+     * Estimate - The observation scores of one unknown word, with its tags ranked and its candidate tags.
+     */
+    public static final class Estimate
+    {
+        private final double[] scores;
+        private final int[] ranked;
+        private final int[] candidates;
+
+        Estimate(double[] scores, int[] ranked, int[] candidates)
+        {
+            this.scores = scores;
+            this.ranked = ranked;
+            this.candidates = candidates;
+        }
+
+        /**
+         * Getter - Score of a tag (by tag ID).
+         */
+        public double getScore(int tag)
+        {
+            return scores[tag];
+        }
+
+        /**
+         * Getter - Ranked (every tag ID, best first)
+         */
+        public int[] getRanked()
+        {
+            return ranked.clone();
+        }
+
+        /**
+         * Getter - Candidates (the tag IDs within the prune threshold of the best, in increasing order)
+         */
+        public int[] getCandidates()
+        {
+            return candidates.clone();
+        }
+
+        /**
+         * Getter - Scores (indexed by tag ID, shared rather than copied for the decoders)
+         */
+        double[] scores()
+        {
+            return scores;
+        }
+
+        /**
+         * Getter - Candidates (shared rather than copied for the decoders)
+         */
+        int[] candidates()
+        {
+            return candidates;
+        }
+    }
+
+    /**
+     * Constructor - Uses the default prune threshold and cache capacity.
+     *
+     * @param model  The compiled model whose tag IDs the estimates use.
+     * @param counts The counts the model was trained from (for example, HiddenMarkovModel.getCounts).
+     */
+    public UnknownWordModel(CompiledModel model, CountTable counts)
+    {
+        this(model, counts, DEFAULT_PRUNE_THRESHOLD, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Constructor - Builds the suffix and shape statistics from the counts of the rare words.
+     *
+     * @param model          The compiled model whose tag IDs the estimates use.
+     * @param counts         The counts the model was trained from.
+     * @param pruneThreshold How far (in log probability) below the best tag a tag may be and still be a candidate
+     *                       (infinite to keep every tag).
+     * @param cacheCapacity  The largest number of estimates cached.
+     */
+    public UnknownWordModel(CompiledModel model, CountTable counts, double pruneThreshold, int cacheCapacity)
+    {
+        this.pruneThreshold = pruneThreshold;
+        tagCount = model.getTagCount();
+        cache = new BoundedCache<>(cacheCapacity, BoundedCache.Policy.TINY_LFU);
+
+        // Gathering the tag counts of each word (in the model's tag IDs), and of each tag over every word.
+        Map<String, int[]> wordCounts = new HashMap<>();
+        long[] tagTotals = new long[tagCount];
+
+        counts.forEachObservation((tag, word, count) ->
+        {
+            int id = model.getTagId(tag);
+            if (id < 0)
+                return;
+
+            wordCounts.computeIfAbsent(word, key -> new int[tagCount])[id] += count;
+            tagTotals[id] += count;
+        });
+
+        long tokens = 0;
+        for (long total : tagTotals)
+            tokens += total;
+
+        logTagPriors = new double[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            logTagPriors[t] = Math.log((double) tagTotals[t] / tokens);
+
+        // A tag never seen with any word cannot be the tag of an unknown word either.
+        impossible = new boolean[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            impossible[t] = tagTotals[t] == 0;
+
+        logWordProbability = -Math.log(tokens);
+
+        // Counting the tags of the rare words, by shape and by shape and suffix.
+        int[] rareCounts = new int[tagCount];
+        int[][] shapeCounts = new int[Shape.values().length][tagCount];
+
+        for (Map.Entry<String, int[]> entry : wordCounts.entrySet())
+        {
+            int[] tags = entry.getValue();
+            int total = 0;
+            for (int count : tags)
+                total += count;
+
+            if (total > RARE_COUNT)
+                continue;
+
+            String word = entry.getKey();
+            Shape shape = Shape.of(word);
+            String lower = word.toLowerCase(Locale.ROOT);
+
+            for (int t = 0; t < tagCount; t += 1)
+            {
+                rareCounts[t] += tags[t];
+                shapeCounts[shape.ordinal()][t] += tags[t];
+            }
+
+            for (int length = 1; length <= Math.min(MAX_SUFFIX, lower.length()); length += 1)
+            {
+                int[] suffix = suffixCounts.computeIfAbsent(key(shape, lower, length), key -> new int[tagCount]);
+                for (int t = 0; t < tagCount; t += 1)
+                    suffix[t] += tags[t];
+            }
+        }
+
+        // The tags of all rare words (add-one smoothed, so that no tag is impossible), and theta.
+        long rareTotal = 0;
+        for (int count : rareCounts)
+            rareTotal += count;
+
+        double[] rareProbabilities = new double[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            rareProbabilities[t] = (rareCounts[t] + 1.0) / (rareTotal + tagCount);
+
+        double variance = 0.0;
+        for (double probability : rareProbabilities)
+            variance += (probability - 1.0 / tagCount) * (probability - 1.0 / tagCount);
+        theta = Math.sqrt(variance / Math.max(1, tagCount - 1));
+
+        // The tags of the rare words of each shape, abstracted from the tags of all rare words.
+        shapeProbabilities = new double[Shape.values().length][];
+        for (Shape shape : Shape.values())
+        {
+            double[] probabilities = rareProbabilities.clone();
+            abstractFrom(probabilities, shapeCounts[shape.ordinal()]);
+            shapeProbabilities[shape.ordinal()] = probabilities;
+        }
+    }
+
+    /**
+     * Constructor - Builds a model directly from its statistics (for example, when loading a ModelSnapshot).
+     *
+     * @param logTagPriors       The log probability of each tag over every word (negative infinity for a tag never seen
+     *                           with a word).
+     * @param logWordProbability The log probability of an unknown word.
+     * @param shapeProbabilities The tag probabilities of the rare words of each shape, indexed by [shape][tag].
+     * @param theta              The weight of each abstraction.
+     * @param suffixCounts       The tag counts of the rare words, keyed by shape and suffix.
+     * @param pruneThreshold     How far below the best tag a tag may be and still be a candidate.
+     * @param cacheCapacity      The largest number of estimates cached.
+     */
+    UnknownWordModel(double[] logTagPriors, double logWordProbability, double[][] shapeProbabilities, double theta,
+                     Map<String, int[]> suffixCounts, double pruneThreshold, int cacheCapacity)
+    {
+        if (shapeProbabilities.length != Shape.values().length)
+            throw new IllegalArgumentException("Invalid Number Of Shapes: " + shapeProbabilities.length);
+
+        tagCount = logTagPriors.length;
+        this.logTagPriors = logTagPriors;
+        this.logWordProbability = logWordProbability;
+        this.shapeProbabilities = shapeProbabilities;
+        this.theta = theta;
+        this.suffixCounts.putAll(suffixCounts);
+        this.pruneThreshold = pruneThreshold;
+        cache = new BoundedCache<>(cacheCapacity, BoundedCache.Policy.TINY_LFU);
+
+        impossible = new boolean[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            impossible[t] = logTagPriors[t] == Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * With Prune Threshold
+     * A model with the same statistics as this one (shared rather than built again), but a different prune threshold, and
+     * so a cache of its own.
+     *
+     * @param pruneThreshold How far below the best tag a tag may be and still be a candidate (infinite to keep every tag).
+     */
+    public UnknownWordModel withPruneThreshold(double pruneThreshold)
+    {
+        return new UnknownWordModel(logTagPriors, logWordProbability, shapeProbabilities, theta, suffixCounts,
+                pruneThreshold, cache.getCapacity());
+    }
+
+    /**
+     * Getter - Cache (of the estimates, with its statistics)
+     */
+    public BoundedCache<String, Estimate> getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Getter - Prune Threshold
+     */
+    public double getPruneThreshold()
+    {
+        return pruneThreshold;
+    }
+
+    /**
+     * Getter - Log Tag Priors (shared rather than copied for ModelSnapshot)
+     */
+    double[] logTagPriors()
+    {
+        return logTagPriors;
+    }
+
+    /**
+     * Getter - Log Word Probability
+     */
+    double logWordProbability()
+    {
+        return logWordProbability;
+    }
+
+    /**
+     * Getter - Shape Probabilities (shared rather than copied for ModelSnapshot)
+     */
+    double[][] shapeProbabilities()
+    {
+        return shapeProbabilities;
+    }
+
+    /**
+     * Getter - Theta
+     */
+    double theta()
+    {
+        return theta;
+    }
+
+    /**
+     * Getter - Suffix Counts (shared rather than copied for ModelSnapshot)
+     */
+    Map<String, int[]> suffixCounts()
+    {
+        return suffixCounts;
+    }
+
+    /**
+     * Estimate - The observation scores and candidate tags of an unknown word (looked up in the cache, if it is there).
+     */
+    public Estimate estimate(String word)
+    {
+        Estimate estimate = cache.get(word);
+        if (estimate == null)
+        {
+            estimate = compute(word);
+            cache.put(word, estimate);
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Compute - Helper function that works out the estimate of a word, abstracting from its shape to its longest suffix.
+     */
+    private Estimate compute(String word)
+    {
+        Shape shape = Shape.of(word);
+        String lower = word.toLowerCase(Locale.ROOT);
+        double[] probabilities = shapeProbabilities[shape.ordinal()].clone();
+
+        for (int length = 1; length <= Math.min(MAX_SUFFIX, lower.length()); length += 1)
+        {
+            int[] counts = suffixCounts.get(key(shape, lower, length));
+            if (counts == null)
+                break;
+
+            abstractFrom(probabilities, counts);
+        }
+
+        // Turning the tag probabilities into observation scores, by Bayes' rule.
+        double[] scores = new double[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            scores[t] = impossible[t] ? Double.NEGATIVE_INFINITY
+                    : Math.log(probabilities[t]) - logTagPriors[t] + logWordProbability;
+
+        // Ranking the tags, best first (the lower ID first, among equals).
+        Integer[] order = new Integer[tagCount];
+        for (int t = 0; t < tagCount; t += 1)
+            order[t] = t;
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        int[] ranked = new int[tagCount];
+        for (int i = 0; i < tagCount; i += 1)
+            ranked[i] = order[i];
+
+        // Keeping the tags within the prune threshold of the best, in increasing order of ID (as the decoders expect).
+        double cutoff = scores[ranked[0]] - pruneThreshold;
+        int[] candidates = new int[tagCount];
+        int count = 0;
+        for (int t = 0; t < tagCount; t += 1)
+        {
+            if (scores[t] >= cutoff && scores[t] > Double.NEGATIVE_INFINITY)
+            {
+                candidates[count] = t;
+                count += 1;
+            }
+        }
+
+        return new Estimate(scores, ranked, Arrays.copyOf(candidates, count));
+    }
+
+    /**
+     * Abstract From - Helper function that mixes a more specific set of counts into the current estimate, with weight
+     * theta on the estimate (leaving the estimate as it is if there are no counts).
+     */
+    private void abstractFrom(double[] probabilities, int[] counts)
+    {
+        long total = 0;
+        for (int count : counts)
+            total += count;
+
+        if (total == 0)
+            return;
+
+        for (int t = 0; t < tagCount; t += 1)
+            probabilities[t] = ((double) counts[t] / total + theta * probabilities[t]) / (1 + theta);
+    }
+
+    /**
+     * Key - Helper function that gives the key of a shape and the suffix of a given length of a (lower case) word.
+     */
+    private static String key(Shape shape, String lower, int length)
+    {
+        return shape.ordinal() + lower.substring(lower.length() - length);
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -17,7 +19,18 @@ import java.util.Map;
  */
 public class ViterbiAlgorithm
 {
-    private static HiddenMarkovModel markovModel;
+    /* The registry holds the model used by tagSentence, as numbered versions: each a tagger (with an array-based copy of
+    the Hidden Markov Model, which is what tagSentence actually decodes with) and the Hidden Markov Model it came from.
+    A version never changes once published, so training again publishes a new version, and a sentence being tagged
+    while that happens is tagged entirely by the old one.
+     */
+    private static final ModelRegistry registry = new ModelRegistry();
+
+    // Where the training, loading and tagging are recorded (TaggerMetrics.NONE to record nothing).
+    private static volatile TaggerMetrics metrics = TaggerMetrics.NONE;
+
+    // The cache of tagged sentences (null for no cache), cleared whenever the model is replaced.
+    private static SentenceCache cache;
 
     /* In the case where we do not want to completely rule out something that we have never seen, we give it a low log
     probability, which is a negative number that is worse than the observed ones, but not totally out of the realm.
@@ -30,33 +43,244 @@ public class ViterbiAlgorithm
      *
      * @param trainSentencesFile The file path for the training sentences.
      * @param trainTagsFile      The file path for the training tags.
+     * @throws IOException If the files cannot be read (in which case the model in use is left as it was).
+     */
+    public static synchronized void trainModel(String trainSentencesFile, String trainTagsFile) throws IOException
+    {
+        long start = System.nanoTime();
+        HiddenMarkovModel markovModel = trainMarkovModel(trainSentencesFile, trainTagsFile);
+
+        // Freezing the trained model into arrays for tagging.
+        publish(compile(markovModel), markovModel, "Trained From " + trainSentencesFile);
+        metrics.recordTraining(System.nanoTime() - start);
+    }
+
+    /**
+     * Setter - Metrics, which record the training, loading and tagging from now on.
+     */
+    public static synchronized void setMetrics(TaggerMetrics newMetrics)
+    {
+        metrics = newMetrics;
+        registry.reconfigure(tagger -> tagger.withMetrics(newMetrics));
+    }
+
+    /**
+     * Setter - Cache, which tagSentence and tagAll look sentences up in from now on (null for no cache).
+     */
+    public static synchronized void setCache(SentenceCache newCache)
+    {
+        cache = newCache;
+        registry.reconfigure(tagger -> tagger.withCache(newCache));
+    }
+
+    /**
+     * Getter - Cache
      */
-    public static void trainModel(String trainSentencesFile, String trainTagsFile)
+    public static SentenceCache getCache()
     {
-        // Initializing new ArrayLists which serve to hold all the contents of the training files.
-        List<String> words = new ArrayList<>();
-        List<String> partsOfSpeech = new ArrayList<>();
+        return cache;
+    }
 
-        // Using the InputLibrary methods to load the sentences and tags.
-        List<List<String>> wordsArray = InputLibrary.loadSentences(trainSentencesFile);
-        List<List<String>> partsOfSpeechArray = InputLibrary.loadTags(trainTagsFile);
+    /**
+     * Getter - Metrics
+     */
+    public static TaggerMetrics getMetrics()
+    {
+        return metrics;
+    }
 
-        // Cycling through the wordsArray to add the Strings to the ArrayList.
-        for (List<String> item : wordsArray)
+    /**
+     * Update Model
+     * Adds more training data to the current model, without retraining on the data it has already seen, and replaces the
+     * model used by tagSentence.
+     *
+     * @param sentencesFile The file path for the additional training sentences.
+     * @param tagsFile      The file path for the additional training tags.
+     * @throws IOException If the files cannot be read (in which case the model in use is left as it was, rather than
+     *                     replaced by one with only part of the update).
+     */
+    public static synchronized void updateModel(String sentencesFile, String tagsFile) throws IOException
+    {
+        // A model loaded from a snapshot has no counts to add to.
+        ModelRegistry.Version current = registry.current();
+        if (current == null || !current.hasMarkovModel())
+        {
+            System.err.println("Error: No Trained Model To Update");
+            return;
+        }
+
+        // Streaming the new sentences and tags into a copy of the counts, leaving the published model as it was.
+        HiddenMarkovModel markovModel = current.getMarkovModel();
+        try (CorpusReader corpus = new CorpusReader(sentencesFile, tagsFile))
         {
-            words.addAll(item);
+            markovModel.train(corpus);
         }
 
-        // Cycling through the partsOfSpeechArray to add the Strings to the ArrayList.
-        for (List<String> item : partsOfSpeechArray)
+        // An error partway through the files is reported as the IOException it came from.
+        catch (UncheckedIOException e)
         {
-            partsOfSpeech.addAll(item);
+            throw e.getCause();
         }
 
-        // Creating a new Hidden Markov Model and going through the training.
-        markovModel = new HiddenMarkovModel();
-        markovModel.trainObservations(partsOfSpeech, words);
-        markovModel.trainTransitions(partsOfSpeechArray);
+        // Freezing the updated model into arrays for tagging.
+        publish(compile(markovModel), markovModel, "Updated From " + sentencesFile);
+    }
+
+    /**
+     * Save Model - Writes the model used by tagSentence to a binary snapshot file.
+     *
+     * @param filename The file path for the snapshot.
+     */
+    public static void saveModel(String filename) throws IOException
+    {
+        ModelSnapshot.save(getCompiledModel(), filename);
+    }
+
+    /**
+     * Load Model
+     * Replaces the model used by tagSentence with one loaded from a binary snapshot file. Only the compiled model (with
+     * its UnknownWordModel) is stored in a snapshot, so there is no Hidden Markov Model afterwards (for updateModel or
+     * tagSentenceFromMaps).
+     *
+     * @param filename The file path for the snapshot.
+     */
+    public static synchronized void loadModel(String filename) throws IOException
+    {
+        long start = System.nanoTime();
+        publish(ModelSnapshot.load(filename), null, "Loaded From " + filename);
+        metrics.recordModelLoad(System.nanoTime() - start);
+    }
+
+    /**
+     * Rollback
+     * Makes the model used by tagSentence the one before the current one again (for example, after an update that made
+     * the tagging worse), clearing the cached sentences.
+     *
+     * @return The number of the version now in use.
+     * @throws IllegalStateException If there is no earlier version.
+     */
+    public static synchronized int rollback()
+    {
+        ModelRegistry.Version version = registry.rollback();
+
+        if (cache != null)
+            cache.invalidate();
+
+        return version.getNumber();
+    }
+
+    /**
+     * Getter - Model Version (the number of the version used by tagSentence, or 0 if there is no model yet)
+     */
+    public static int getModelVersion()
+    {
+        ModelRegistry.Version version = registry.current();
+        return version == null ? 0 : version.getNumber();
+    }
+
+    /**
+     * Getter - Registry (the versions of the model)
+     */
+    public static ModelRegistry getRegistry()
+    {
+        return registry;
+    }
+
+    /**
+     * Compile - Helper function that freezes a trained model into arrays, with an UnknownWordModel built from its counts
+     * for the words never seen in training.
+     */
+    private static CompiledModel compile(HiddenMarkovModel markovModel)
+    {
+        CompiledModel compiledModel = new CompiledModel(markovModel, unseenPenalty);
+        return compiledModel.withUnknownWordModel(new UnknownWordModel(compiledModel, markovModel.getCounts()));
+    }
+
+    /**
+     * Publish - Helper function that publishes a new version of the model, with a tagger using the current metrics and
+     * cache, and clears the sentences cached for the old version.
+     *
+     * @throws IllegalArgumentException If the model has no tags (for example, if it was trained on empty files), since it
+     *                                  could not tag anything.
+     */
+    private static void publish(CompiledModel compiledModel, HiddenMarkovModel markovModel, String description)
+    {
+        if (compiledModel.getTagCount() == 0)
+            throw new IllegalArgumentException("Cannot Publish A Model With No Tags: " + description);
+
+        ViterbiTagger tagger = new ViterbiTagger(compiledModel, 0, Double.POSITIVE_INFINITY, metrics, cache);
+        registry.publish(tagger, markovModel, description);
+
+        if (cache != null)
+            cache.invalidate();
+    }
+
+    /**
+     * Train Markov Model
+     * Trains a new Hidden Markov Model from a pair of files, without changing the model used by tagSentence.
+     *
+     * @param trainSentencesFile The file path for the training sentences.
+     * @param trainTagsFile      The file path for the training tags.
+     * @throws IOException If the files cannot be read (rather than returning a model trained on only part of them).
+     */
+    public static HiddenMarkovModel trainMarkovModel(String trainSentencesFile, String trainTagsFile) throws IOException
+    {
+        // Creating a new Hidden Markov Model, which keeps its counts so that it can be updated later.
+        HiddenMarkovModel model = new HiddenMarkovModel(true);
+
+        // Streaming the sentences and tags through the training, one sentence at a time.
+        try (CorpusReader corpus = new CorpusReader(trainSentencesFile, trainTagsFile))
+        {
+            model.train(corpus);
+        }
+
+        // An error partway through the files is reported as the IOException it came from.
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+
+        return model;
+    }
+
+    /**
+     * Getter - Tagger (of the version of the model in use)
+     *
+     * @throws IllegalStateException If no model has been trained or loaded.
+     */
+    public static ViterbiTagger getTagger()
+    {
+        return currentVersion().getTagger();
+    }
+
+    /**
+     * Current Version - Helper function that gives the version of the model in use.
+     *
+     * @throws IllegalStateException If no model has been trained or loaded.
+     */
+    private static ModelRegistry.Version currentVersion()
+    {
+        ModelRegistry.Version version = registry.current();
+        if (version == null)
+            throw new IllegalStateException("No Model Trained Or Loaded");
+
+        return version;
+    }
+
+    /**
+     * Getter - Compiled Model
+     */
+    public static CompiledModel getCompiledModel()
+    {
+        return getTagger().getCompiledModel();
+    }
+
+    /**
+     * Getter - Unseen Penalty
+     */
+    public static int getUnseenPenalty()
+    {
+        return unseenPenalty;
     }
 
     /**
@@ -64,11 +288,53 @@ public class ViterbiAlgorithm
      * A part of speech (POS) tagger labels each word in a sentence with its part of speech (noun, verb, etc.). The goal
      * of POS tagging is to take a sequence of words and produce the corresponding sequence of tags.
      * <p>
-     * We only need to keep the current and next scores, which simplifies the representation we use in code.
+     * The tagging is done by the tagger, which runs the same algorithm as tagSentenceFromMaps over arrays.
      *
      * @param sentence The sentence to tag with parts of speech.
      */
     public static List<String> tagSentence(List<String> sentence)
+    {
+        return getTagger().tagSentence(sentence);
+    }
+
+    /**
+     * Tag All - Labels every sentence in a list, in parallel, returning the tags in the same order as the sentences.
+     *
+     * @param sentences The List of sentences (containing a List of Strings) to tag.
+     */
+    public static List<List<String>> tagAll(List<List<String>> sentences)
+    {
+        return getTagger().tagAll(sentences);
+    }
+
+    /**
+     * Tag File
+     * Labels every line of a file of sentences, writing "word/TAG word/TAG ..." for each line to another file, through a
+     * BulkTagger with a worker for each processor. The whole file is tagged by the version of the model in use when it
+     * starts, even if another is published meanwhile.
+     *
+     * @param inputFile  The file path of the sentences, one a line.
+     * @param outputFile The file path to write the tagged sentences to.
+     * @return The number of lines tagged.
+     */
+    public static long tagFile(String inputFile, String outputFile) throws IOException
+    {
+        return new BulkTagger(getTagger()::tagSentence).tagFile(inputFile, outputFile);
+    }
+
+    /**
+     * Tag Sentence (From Maps)
+     * The original tagger, which runs the Viterbi algorithm directly over the transitionMap and observationMap of the
+     * Hidden Markov Model. It is kept as a reference for the CompiledModel, and reads a copy of the model in use (from
+     * ModelRegistry.Version.getMarkovModel), so it is much slower than tagSentence.
+     * <p>
+     * We only need to keep the current and next scores, which simplifies the representation we use in code.
+     *
+     * @param sentence The sentence to tag with parts of speech.
+     * @throws IllegalStateException If the model in use has no maps (it was loaded from a snapshot, or it is an old
+     *                               version that was rolled back to, past the ModelRegistry's MARKOV_HISTORY).
+     */
+    public static List<String> tagSentenceFromMaps(List<String> sentence)
     {
         // Checking to ensure that the sentence is not empty or null.
         if (sentence == null || sentence.isEmpty())
@@ -91,6 +357,10 @@ public class ViterbiAlgorithm
         List<Map<String, String>> backTraceList = new ArrayList<>();
 
         // Extracting the transitionMap and observationMap from the Hidden Markov Model.
+        HiddenMarkovModel markovModel = currentVersion().getMarkovModel();
+        if (markovModel == null)
+            throw new IllegalStateException("No Hidden Markov Model (The Model Was Loaded From A Snapshot)");
+
         Map<String, Map<String, Double>> transitionMap = markovModel.getTransitionMap();
         Map<String, Map<String, Double>> observationMap = markovModel.getObservationMap();
 
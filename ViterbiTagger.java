@@ -0,0 +1,270 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Viterbi Tagger
+ * An immutable tagger for a single trained model. The model is compiled when the tagger is created, so later changes to
+ * the HiddenMarkovModel do not affect the tagger, and any number of threads may tag with the same tagger at once.
+ * <p>
+ * Whole corpora can be tagged with tagAll, which splits the sentences into ranges and tags the ranges in parallel on the
+ * fork-join pool, writing each result into its own slot so that the results come back in the same order as the input.
+ * <p>
+ * A tagger may also be given a beam, in which case it keeps only the best states after each observation (see the beam
+ * version of CompiledModel.tagSentence), trading a little accuracy for much less work per word.
+ * <p>
+ * If the tagger is given enabled TaggerMetrics, each sentence is timed, and its number of unknown words and of lattice
+ * states expanded (after any beam pruning) are counted by the decoder as it runs, and recorded. Otherwise, nothing is
+ * measured.
+ * <p>
+ * A tagger may also be given a SentenceCache, in which case a sentence that has been tagged before (by a tagger with the
+ * same model and beam) is looked up rather than decoded again. Only the sentences that are decoded are recorded in the
+ * metrics; the cache keeps its own hits and misses.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class ViterbiTagger
+{
+    // The number of sentences below which a range is tagged directly, rather than split further.
+    private static final int SPLIT_THRESHOLD = 64;
+
+    private final CompiledModel compiledModel;
+
+    // The beam width (0 for the exact algorithm) and the beam threshold (infinite for no threshold).
+    private final int beamWidth;
+    private final double beamThreshold;
+
+    // Where each tagged sentence is recorded (TaggerMetrics.NONE to record nothing).
+    private final TaggerMetrics metrics;
+
+    // The cache of tagged sentences (null for no cache).
+    private final SentenceCache cache;
+
+    /**
+     * Constructor - Compiles the trained model for tagging.
+     *
+     * @param markovModel   The trained Hidden Markov Model.
+     * @param unseenPenalty The log probability given to an observation never seen in training.
+     */
+    public ViterbiTagger(HiddenMarkovModel markovModel, double unseenPenalty)
+    {
+        this(new CompiledModel(markovModel, unseenPenalty));
+    }
+
+    /**
+     * Constructor - Uses an already compiled model for tagging.
+     *
+     * @param compiledModel The compiled model.
+     */
+    public ViterbiTagger(CompiledModel compiledModel)
+    {
+        this(compiledModel, 0, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Constructor - Uses an already compiled model for tagging, with beam pruning.
+     *
+     * @param compiledModel The compiled model.
+     * @param beamWidth     The number of states kept after each observation (0 for every state).
+     * @param beamThreshold How far below the best state a state may be and still be kept (infinite for no threshold).
+     */
+    public ViterbiTagger(CompiledModel compiledModel, int beamWidth, double beamThreshold)
+    {
+        this(compiledModel, beamWidth, beamThreshold, TaggerMetrics.NONE);
+    }
+
+    /**
+     * Constructor - Uses an already compiled model for tagging, with beam pruning, recording each sentence tagged.
+     *
+     * @param compiledModel The compiled model.
+     * @param beamWidth     The number of states kept after each observation (0 for every state).
+     * @param beamThreshold How far below the best state a state may be and still be kept (infinite for no threshold).
+     * @param metrics       Where each tagged sentence is recorded.
+     */
+    public ViterbiTagger(CompiledModel compiledModel, int beamWidth, double beamThreshold, TaggerMetrics metrics)
+    {
+        this(compiledModel, beamWidth, beamThreshold, metrics, null);
+    }
+
+    /**
+     * Constructor - Uses an already compiled model for tagging, with beam pruning, recording each sentence tagged, and
+     * caching the tags of each sentence.
+     *
+     * @param compiledModel The compiled model.
+     * @param beamWidth     The number of states kept after each observation (0 for every state).
+     * @param beamThreshold How far below the best state a state may be and still be kept (infinite for no threshold).
+     * @param metrics       Where each tagged sentence is recorded.
+     * @param cache         The cache of tagged sentences (null for no cache).
+     */
+    public ViterbiTagger(CompiledModel compiledModel, int beamWidth, double beamThreshold, TaggerMetrics metrics,
+                         SentenceCache cache)
+    {
+        this.compiledModel = compiledModel;
+        this.beamWidth = beamWidth;
+        this.beamThreshold = beamThreshold;
+        this.metrics = metrics;
+        this.cache = cache;
+    }
+
+    /**
+     * With Metrics - A copy of this tagger (with the same model and beam) that records to the given metrics.
+     */
+    public ViterbiTagger withMetrics(TaggerMetrics metrics)
+    {
+        return new ViterbiTagger(compiledModel, beamWidth, beamThreshold, metrics, cache);
+    }
+
+    /**
+     * With Cache - A copy of this tagger (with the same model, beam and metrics) that uses the given cache (or none).
+     */
+    public ViterbiTagger withCache(SentenceCache cache)
+    {
+        return new ViterbiTagger(compiledModel, beamWidth, beamThreshold, metrics, cache);
+    }
+
+    /**
+     * Getter - Metrics
+     */
+    public TaggerMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Getter - Cache (null if there is none)
+     */
+    public SentenceCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Getter - Compiled Model
+     */
+    public CompiledModel getCompiledModel()
+    {
+        return compiledModel;
+    }
+
+    /**
+     * Decodes Like - Whether another tagger gives the same tags as this one (the same model and the same beam).
+     */
+    boolean decodesLike(ViterbiTagger other)
+    {
+        return compiledModel == other.compiledModel && beamWidth == other.beamWidth
+                && Double.compare(beamThreshold, other.beamThreshold) == 0;
+    }
+
+    /**
+     * Tag Sentence - Labels each word in a sentence with its part of speech.
+     *
+     * @param sentence The sentence to tag with parts of speech.
+     */
+    public List<String> tagSentence(List<String> sentence)
+    {
+        // Checking to ensure that the sentence is not empty or null.
+        if (sentence == null || sentence.isEmpty())
+        {
+            System.err.println("Error: Invalid Input");
+            return null;
+        }
+
+        if (cache == null)
+            return measure(sentence);
+
+        List<String> tags = cache.get(sentence, this);
+        return tags != null ? tags : cache.put(sentence, this, measure(sentence));
+    }
+
+    /**
+     * Measure - Helper function that decodes a sentence, recording it in the metrics if they are enabled.
+     */
+    private List<String> measure(List<String> sentence)
+    {
+        if (!metrics.isEnabled())
+            return decode(sentence);
+
+        // Timing the tagging, then reading what the decoder counted as it tagged the sentence (on this thread).
+        long start = System.nanoTime();
+        List<String> tags = decode(sentence);
+        long nanos = System.nanoTime() - start;
+
+        int unknownWords = compiledModel.lastUnknownWords();
+        long statesExpanded = compiledModel.lastStatesExpanded();
+
+        metrics.recordSentence(sentence.size(), unknownWords, statesExpanded, nanos);
+        return tags;
+    }
+
+    /**
+     * Decode - Helper function that runs the Viterbi algorithm: exact, unless there is a beam.
+     */
+    private List<String> decode(List<String> sentence)
+    {
+        if (beamWidth <= 0 && beamThreshold == Double.POSITIVE_INFINITY)
+            return compiledModel.tagSentence(sentence);
+
+        return compiledModel.tagSentence(sentence, beamWidth, beamThreshold);
+    }
+
+    /**
+     * Tag All - Labels every sentence in a list, in parallel across the available cores.
+     *
+     * @param sentences The List of sentences (containing a List of Strings) to tag.
+     * @return The List of tags for each sentence, in the same order as the sentences.
+     */
+    public List<List<String>> tagAll(List<List<String>> sentences)
+    {
+        @SuppressWarnings("unchecked")
+        List<String>[] results = (List<String>[]) new List<?>[sentences.size()];
+
+        // Random access is needed to split the work into ranges, so copying the input if it does not have it.
+        List<List<String>> input = sentences instanceof RandomAccess ? sentences : new ArrayList<>(sentences);
+
+        ForkJoinPool.commonPool().invoke(new TagRange(input, results, 0, results.length));
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Tag Range - A fork-join task that tags the sentences in [start, end), splitting the range in half until it is
+     * small enough to tag directly.
+     */
+    private class TagRange extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<String>> sentences;
+        private final List<String>[] results;
+        private final int start;
+        private final int end;
+
+        TagRange(List<List<String>> sentences, List<String>[] results, int start, int end)
+        {
+            this.sentences = sentences;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            // If the range is small enough, tagging each sentence in the range.
+            if (end - start <= SPLIT_THRESHOLD)
+            {
+                for (int i = start; i < end; i += 1)
+                    results[i] = tagSentence(sentences.get(i));
+
+                return;
+            }
+
+            // Otherwise, splitting the range in half and tagging both halves.
+            int middle = (start + end) >>> 1;
+            invokeAll(new TagRange(sentences, results, start, middle), new TagRange(sentences, results, middle, end));
+        }
+    }
+}
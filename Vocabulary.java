@@ -0,0 +1,171 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Vocabulary
+ * A compact, immutable table from words to integer IDs, kept off the Java heap. The words are sorted by their UTF-8
+ * bytes and stored one after another in a direct ByteBuffer, with the offset of each word in a direct IntBuffer, so the
+ * whole table costs the bytes of the words plus four bytes a word, with no String, HashMap node or boxed Integer for each
+ * word. The ID of a word is its position in the sorted order, and is found by binary search.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class Vocabulary
+{
+    // The UTF-8 bytes of every word, in sorted order.
+    private final ByteBuffer bytes;
+
+    // The offset of each word in bytes, with one extra offset at the end (so word i is in [offsets[i], offsets[i + 1])).
+    private final IntBuffer offsets;
+
+    private final int size;
+
+    /**
+     * Constructor - Builds the table from a set of distinct words (in any order).
+     */
+    public Vocabulary(String[] words)
+    {
+        size = words.length;
+
+        byte[][] encoded = new byte[size][];
+        long total = 0;
+        for (int i = 0; i < size; i += 1)
+        {
+            encoded[i] = words[i].getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+        }
+
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Vocabulary Too Large: " + total + " Bytes");
+
+        Arrays.sort(encoded, Arrays::compareUnsigned);
+
+        bytes = ByteBuffer.allocateDirect((int) total);
+        offsets = ByteBuffer.allocateDirect((size + 1) * Integer.BYTES).asIntBuffer();
+
+        for (int i = 0; i < size; i += 1)
+        {
+            if (i > 0 && Arrays.equals(encoded[i], encoded[i - 1]))
+                throw new IllegalArgumentException("Duplicate Word: " + new String(encoded[i], StandardCharsets.UTF_8));
+
+            offsets.put(i, bytes.position());
+            bytes.put(encoded[i]);
+        }
+
+        offsets.put(size, bytes.position());
+    }
+
+    /**
+     * Getter - Size (the number of words)
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Getter - Off-Heap Bytes (the size of the direct buffers holding the table)
+     */
+    public long getOffHeapBytes()
+    {
+        return bytes.capacity() + (long) (size + 1) * Integer.BYTES;
+    }
+
+    /**
+     * Getter - ID of a word, or -1 if the word is not in the vocabulary.
+     */
+    public int getId(String word)
+    {
+        int low = 0;
+        int high = size - 1;
+
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, word);
+
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Getter - Word with a given ID.
+     */
+    public String getWord(int id)
+    {
+        int start = offsets.get(id);
+        byte[] word = new byte[offsets.get(id + 1) - start];
+        bytes.get(start, word);
+        return new String(word, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare - Helper function that compares the stored word with a given ID to another word, byte by byte (as unsigned
+     * values) in UTF-8. The other word is encoded one character at a time as it is compared, rather than into a new
+     * array, so a lookup allocates nothing. As in String.getBytes, a lone surrogate is encoded as '?'.
+     */
+    private int compare(int id, String word)
+    {
+        int position = offsets.get(id);
+        int end = offsets.get(id + 1);
+        int length = word.length();
+
+        for (int i = 0; i < length; i += 1)
+        {
+            int codePoint = word.charAt(i);
+
+            if (Character.isHighSurrogate((char) codePoint) && i + 1 < length
+                    && Character.isLowSurrogate(word.charAt(i + 1)))
+            {
+                codePoint = Character.toCodePoint((char) codePoint, word.charAt(i + 1));
+                i += 1;
+            }
+
+            else if (Character.isSurrogate((char) codePoint))
+                codePoint = '?';
+
+            // The number of UTF-8 bytes of the character, which are compared from the first to the last.
+            int count = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+
+            for (int k = 0; k < count; k += 1)
+            {
+                // The stored word is a prefix of the other word (so it comes first).
+                if (position == end)
+                    return -1;
+
+                int comparison = Integer.compare(bytes.get(position) & 0xFF, utf8Byte(codePoint, count, k));
+                if (comparison != 0)
+                    return comparison;
+
+                position += 1;
+            }
+        }
+
+        return position == end ? 0 : 1;
+    }
+
+    /**
+     * UTF-8 Byte - Helper function that gives byte k (of count) of the UTF-8 encoding of a code point, as an unsigned value.
+     */
+    private static int utf8Byte(int codePoint, int count, int k)
+    {
+        if (count == 1)
+            return codePoint;
+
+        // The first byte holds the length and the highest bits, and each later byte holds six bits after 10.
+        int shift = 6 * (count - 1 - k);
+        if (k == 0)
+            return (0xFF00 >> count & 0xFF) | codePoint >> shift;
+
+        return 0x80 | (codePoint >> shift & 0x3F);
+    }
+}
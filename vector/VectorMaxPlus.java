@@ -0,0 +1,63 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector Max Plus
+ * The max-plus step of the Viterbi algorithm using the (incubating) Java Vector API, which compiles to SIMD instructions
+ * where the hardware has them. The sums are added lane by lane and the largest found with a vector max, and then the
+ * first index whose sum equals the largest is found with a vector comparison. Since addition and max are exact in every
+ * lane, this finds exactly the same index as the scalar loop.
+ * <p>
+ * This class is kept apart from the other sources because it needs the jdk.incubator.vector module to compile and to
+ * run. MaxPlus.best() falls back to the scalar loop when it is not available.
+ *
+ * @author Carter Kruse & John DeForest, Dartmouth CS 10, Spring 2022
+ */
+public class VectorMaxPlus implements MaxPlus
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public int argMax(double[] scores, double[] transitions, int length)
+    {
+        int upperBound = SPECIES.loopBound(length);
+
+        // Finding the largest sum, a vector of lanes at a time and then one at a time for the rest.
+        DoubleVector best = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length())
+        {
+            DoubleVector sum = DoubleVector.fromArray(SPECIES, scores, i)
+                    .add(DoubleVector.fromArray(SPECIES, transitions, i));
+            best = best.max(sum);
+        }
+
+        double bestScore = best.reduceLanes(VectorOperators.MAX);
+        for (; i < length; i += 1)
+            bestScore = Math.max(bestScore, scores[i] + transitions[i]);
+
+        if (bestScore == Double.NEGATIVE_INFINITY)
+            return -1;
+
+        // Finding the first index with the largest sum.
+        for (i = 0; i < upperBound; i += SPECIES.length())
+        {
+            DoubleVector sum = DoubleVector.fromArray(SPECIES, scores, i)
+                    .add(DoubleVector.fromArray(SPECIES, transitions, i));
+            VectorMask<Double> equal = sum.eq(bestScore);
+
+            if (equal.anyTrue())
+                return i + equal.firstTrue();
+        }
+
+        for (; i < length; i += 1)
+        {
+            if (scores[i] + transitions[i] == bestScore)
+                return i;
+        }
+
+        return -1;
+    }
+}